@@ -1,8 +1,16 @@
 package org.robolectric.annotation;
 
+/**
+ * Indicates that the annotated method restores the static state of a shadow class. Robolectric calls it between
+ * tests.
+ */
 @java.lang.annotation.Documented
 @java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)
 @java.lang.annotation.Target({java.lang.annotation.ElementType.METHOD})
 public @interface Resetter {
-
+  /**
+   * If true, Robolectric only calls the resetter if some code of the shadow class has run since it was last reset.
+   * Only use this if everything the resetter restores is held in the shadow's private static fields.
+   */
+  boolean onlyIfTouched() default false;
 }
@@ -8,6 +8,7 @@ import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
 
 public class ResetterValidator extends FoundOnImplementsValidator {
   public ResetterValidator(RoboModel model, ProcessingEnvironment env) {
@@ -32,10 +33,29 @@ public class ResetterValidator extends FoundOnImplementsValidator {
         error("@Resetter methods must not have parameters");
         error = true;
       }
+      if (model.getBooleanValue(getCurrentAnnotation(), "onlyIfTouched")) {
+        if (hasNonPrivateStaticState(parent)) {
+          error("@Resetter(onlyIfTouched = true) shadows must keep their static state in private fields");
+          error = true;
+        } else if (!error) {
+          model.touchTrackedShadows.add(parent);
+        }
+      }
       if (!error) {
         model.resetterMap.put(parent, elem);
       }
     }
     return null;
   }
-}
\ No newline at end of file
+
+  // Code outside the shadow could change these without running any of the shadow's code.
+  private static boolean hasNonPrivateStaticState(TypeElement type) {
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      final Set<Modifier> modifiers = field.getModifiers();
+      if (modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.PRIVATE) && field.getConstantValue() == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -21,6 +21,10 @@ import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.SimpleAnnotationValueVisitor6;
@@ -57,6 +61,8 @@ public class RoboModel {
   TreeMap<TypeElement,TypeElement> shadowTypes = newTreeMap(fqComparator);
   TreeSet<String> imports = newTreeSet();
   TreeMap<TypeElement,ExecutableElement> resetterMap = newTreeMap(comparator);
+  /** Shadows whose resetter only needs to run if the shadow has been touched since it was last reset. */
+  Set<TypeElement> touchTrackedShadows = newHashSet();
   
   private static class FQComparator implements Comparator<TypeElement> {
     @Override
@@ -230,6 +236,9 @@ public class RoboModel {
     // Other imports that the generated class needs
     imports.add("javax.annotation.Generated");
     imports.add("org.robolectric.util.ShadowExtractor");
+    if (!touchTrackedShadows.isEmpty()) {
+      imports.add("org.robolectric.util.StaticStateTracker");
+    }
   }
 
   public NavigableMap<TypeElement, TypeElement> getShadowMap() {
@@ -241,6 +250,60 @@ public class RoboModel {
     });
   }
   
+  /**
+   * Returns the value of a boolean attribute of the given annotation, falling back to its declared default.
+   */
+  public boolean getBooleanValue(AnnotationMirror annotationMirror, String key) {
+    for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(annotationMirror).entrySet()) {
+      if (entry.getKey().getSimpleName().toString().equals(key)) {
+        return Boolean.TRUE.equals(entry.getValue().getValue());
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the name the runtime uses for the erasure of the given type: binary names for classes
+   * (e.g. {@code android.view.View$OnClickListener}), {@code []} suffixes for arrays, and keywords
+   * for primitives. Returns null if the type can't be resolved.
+   */
+  public String getRuntimeName(TypeMirror type) {
+    TypeKind kind = type.getKind();
+    if (kind.isPrimitive() || kind == TypeKind.VOID) {
+      return type.toString();
+    } else if (kind == TypeKind.ARRAY) {
+      String componentName = getRuntimeName(((ArrayType) type).getComponentType());
+      return componentName == null ? null : componentName + "[]";
+    } else if (kind == TypeKind.DECLARED) {
+      return elements.getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+    } else if (kind == TypeKind.TYPEVAR) {
+      return getRuntimeName(types.erasure(type));
+    }
+    return null;
+  }
+
+  /**
+   * Returns a method's name and erased parameter types, in the form {@code name(type1,type2)},
+   * or null if any parameter type can't be resolved.
+   */
+  public String getMethodKey(ExecutableElement method) {
+    StringBuilder buf = new StringBuilder();
+    buf.append(method.getSimpleName()).append('(');
+    boolean first = true;
+    for (VariableElement parameter : method.getParameters()) {
+      String parameterName = getRuntimeName(parameter.asType());
+      if (parameterName == null) {
+        return null;
+      }
+      if (!first) {
+        buf.append(',');
+      }
+      buf.append(parameterName);
+      first = false;
+    }
+    return buf.append(')').toString();
+  }
+
   /**
    * Returns a plain string to be used in the generated source
    * to identify the given type. The returned string will have 
@@ -2,7 +2,9 @@ package org.robolectric.annotation.processing;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -14,13 +16,17 @@ import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.SourceVersion;
+import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
 /**
  * Annotation processor entry point for Robolectric annotations.
@@ -68,6 +74,7 @@ public class RoboProcessor extends AbstractProcessor {
     if (!generated) {
       model.prepare();
       render();
+      renderShadowIndex();
       generated = true;
     }
     return true;
@@ -76,6 +83,8 @@ public class RoboProcessor extends AbstractProcessor {
   private static final String GEN_PACKAGE = "org.robolectric";
   private static final String GEN_CLASS   = "Shadows";
   private static final String GEN_FQ      = GEN_PACKAGE + '.' + GEN_CLASS;
+  // keep in sync with org.robolectric.bytecode.ShadowIndex
+  private static final String GEN_INDEX   = "META-INF/robolectric/shadows.index";
   
   private void render() {
     // TODO: Because this was fairly simple to begin with I haven't
@@ -142,7 +151,16 @@ public class RoboProcessor extends AbstractProcessor {
       }
       writer.println("  public static void reset() {");
       for (Entry<TypeElement,ExecutableElement> entry: model.resetterMap.entrySet()) {
-        writer.println("    " + model.getReferentFor(entry.getKey()) + "." + entry.getValue().getSimpleName() + "();");
+        final String shadow = model.getReferentFor(entry.getKey());
+        final String resetterCall = shadow + "." + entry.getValue().getSimpleName() + "();";
+        if (model.touchTrackedShadows.contains(entry.getKey())) {
+          writer.println("    if (StaticStateTracker.isTouched(" + shadow + ".class)) {");
+          writer.println("      " + resetterCall);
+          writer.println("      StaticStateTracker.clearTouched(" + shadow + ".class);");
+          writer.println("    }");
+        } else {
+          writer.println("    " + resetterCall);
+        }
       }
       writer.println("  }\n");
 
@@ -160,4 +178,63 @@ public class RoboProcessor extends AbstractProcessor {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Writes a plain-text index of every shadow class, its @Implements settings and its public methods,
+   * so the runtime can find shadows and rule out missing shadow methods without loading classes or
+   * reflecting on them. Each shadow is a line of space-separated fields:
+   *
+   * <pre>shadowClass shadowedClass shadowSuperclass callThroughByDefault inheritImplementationMethods looseSignatures isAbstract</pre>
+   *
+   * followed by one indented {@code name(paramType,...)} line per public method declared by the shadow.
+   * Shadows with types that can't be resolved are left out, and the runtime falls back to reflection.
+   */
+  private void renderShadowIndex() {
+    messager.printMessage(Kind.NOTE, "Generating shadow index " + GEN_INDEX);
+    final Filer filer = processingEnv.getFiler();
+    try {
+      FileObject fo = filer.createResource(StandardLocation.CLASS_OUTPUT, "", GEN_INDEX);
+      PrintWriter writer = new PrintWriter(fo.openWriter());
+      try {
+        for (Entry<TypeElement,TypeElement> entry : model.getShadowMap().entrySet()) {
+          final TypeElement shadowType = entry.getKey();
+          final String superclass = model.getRuntimeName(shadowType.getSuperclass());
+          final List<String> methods = getPublicMethodKeys(shadowType);
+          if (superclass == null || methods == null) {
+            continue;
+          }
+
+          final AnnotationMirror implementsMirror = model.getImplementsMirror(shadowType);
+          writer.println(model.getRuntimeName(shadowType.asType())
+              + ' ' + model.getRuntimeName(entry.getValue().asType())
+              + ' ' + superclass
+              + ' ' + model.getBooleanValue(implementsMirror, "callThroughByDefault")
+              + ' ' + model.getBooleanValue(implementsMirror, "inheritImplementationMethods")
+              + ' ' + model.getBooleanValue(implementsMirror, "looseSignatures")
+              + ' ' + shadowType.getModifiers().contains(Modifier.ABSTRACT));
+          for (String method : methods) {
+            writer.println("  " + method);
+          }
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private List<String> getPublicMethodKeys(TypeElement type) {
+    List<String> methodKeys = new ArrayList<String>();
+    for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+      if (method.getModifiers().contains(Modifier.PUBLIC)) {
+        String methodKey = model.getMethodKey(method);
+        if (methodKey == null) {
+          return null;
+        }
+        methodKeys.add(methodKey);
+      }
+    }
+    return methodKeys;
+  }
 }
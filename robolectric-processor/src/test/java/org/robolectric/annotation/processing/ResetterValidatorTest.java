@@ -46,6 +46,16 @@ public class ResetterValidatorTest {
       .onLine(11);
   }
 
+  @Test
+  public void onlyIfTouchedResetterWithNonPrivateStaticState_shouldNotCompile() {
+    final String testClass = "org.robolectric.annotation.processing.shadows.ShadowResetterOnlyIfTouchedWithNonPrivateState";
+    ASSERT.about(singleClass())
+      .that(testClass)
+      .failsToCompile()
+      .withErrorContaining("@Resetter(onlyIfTouched = true) shadows must keep their static state in private fields")
+      .onLine(11);
+  }
+
   @Test
   public void goodResetter_shouldCompile() {
     final String testClass = "org.robolectric.annotation.processing.shadows.ShadowDummy";
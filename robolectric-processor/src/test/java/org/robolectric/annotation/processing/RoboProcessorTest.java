@@ -6,6 +6,7 @@ import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
 import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
 import static org.robolectric.annotation.processing.Utils.ROBO_SOURCE;
 import static org.robolectric.annotation.processing.Utils.SHADOW_EXTRACTOR_SOURCE;
+import static org.robolectric.annotation.processing.Utils.STATIC_STATE_TRACKER_SOURCE;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -84,6 +85,36 @@ public class RoboProcessorTest {
       .generatesSources(forResource("org/robolectric/Robolectric_ClassNameOnly.java"));
   }
   
+  @Test
+  public void generatedFile_shouldOnlyResetTouchTrackedShadowsWhenTouched() {
+    ASSERT.about(javaSources())
+      .that(ImmutableList.of(
+          ROBO_SOURCE,
+          SHADOW_EXTRACTOR_SOURCE,
+          STATIC_STATE_TRACKER_SOURCE,
+          forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
+          forResource("org/robolectric/annotation/processing/shadows/ShadowTouchTrackedDummy.java")))
+      .processedWith(new RoboProcessor())
+      .compilesWithoutError()
+      .and()
+      .generatesSources(forResource("org/robolectric/Robolectric_TouchTracked.java"));
+  }
+
+  @Test
+  public void generatedShadowIndex_shouldListShadowsWithSettingsAndPublicMethods() {
+    ASSERT.about(javaSources())
+      .that(ImmutableList.of(
+          ROBO_SOURCE,
+          SHADOW_EXTRACTOR_SOURCE,
+          forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
+          forResource("org/robolectric/annotation/processing/shadows/ShadowMethodsDummy.java"),
+          forResource("org/robolectric/annotation/processing/shadows/ShadowOuterDummy.java")))
+      .processedWith(new RoboProcessor())
+      .compilesWithoutError()
+      .and()
+      .generatesFiles(forResource("org/robolectric/ShadowIndex_Methods.index"));
+  }
+
   @Test
   public void shouldGracefullyHandleUnrecognisedAnnotation() {
     ASSERT.about(javaSources())
@@ -13,6 +13,7 @@ public class Utils {
   // it hasn't been specified on the input file list.
   public static final JavaFileObject ROBO_SOURCE = forResource("mock-source/Robolectric.java");
   public static final JavaFileObject SHADOW_EXTRACTOR_SOURCE = forResource("mock-source/org/robolectric/util/ShadowExtractor.java");
+  public static final JavaFileObject STATIC_STATE_TRACKER_SOURCE = forResource("mock-source/org/robolectric/util/StaticStateTracker.java");
 
   public static String toResourcePath(String clazzName) {
     return clazzName.replace('.', '/') + ".java";
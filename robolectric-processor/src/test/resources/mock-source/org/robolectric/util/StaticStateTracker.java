@@ -0,0 +1,11 @@
+package org.robolectric.util;
+
+public class StaticStateTracker {
+
+  public static boolean isTouched(Class<?> clazz) {
+    return true;
+  }
+
+  public static void clearTouched(Class<?> clazz) {
+  }
+}
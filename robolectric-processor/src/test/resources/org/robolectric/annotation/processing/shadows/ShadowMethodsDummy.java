@@ -0,0 +1,24 @@
+package org.robolectric.annotation.processing.shadows;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.processing.objects.UniqueDummy;
+
+@Implements(value = UniqueDummy.class, callThroughByDefault = false, looseSignatures = true)
+public abstract class ShadowMethodsDummy extends ShadowDummy {
+
+  @Implementation
+  public void __constructor__(int count, String[] names) {
+  }
+
+  @Implementation
+  public <N extends Number> N getNumber(N defaultValue, UniqueDummy.InnerDummy inner) {
+    return defaultValue;
+  }
+
+  public static void helper() {
+  }
+
+  private void hidden(Object value) {
+  }
+}
@@ -0,0 +1,15 @@
+package org.robolectric.annotation.processing.shadows;
+
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.annotation.processing.objects.Dummy;
+
+@Implements(Dummy.class)
+public class ShadowResetterOnlyIfTouchedWithNonPrivateState {
+  static int resetCount = 0;
+
+  @Resetter(onlyIfTouched = true)
+  public static void resetter_method() {
+    resetCount++;
+  }
+}
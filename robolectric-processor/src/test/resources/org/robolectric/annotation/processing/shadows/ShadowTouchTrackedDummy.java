@@ -0,0 +1,16 @@
+package org.robolectric.annotation.processing.shadows;
+
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.annotation.processing.objects.UniqueDummy;
+
+@Implements(UniqueDummy.class)
+public class ShadowTouchTrackedDummy {
+  public static final String CONSTANT = "constant";
+  private static int resetCount = 0;
+
+  @Resetter(onlyIfTouched = true)
+  public static void reset() {
+    resetCount++;
+  }
+}
@@ -4,21 +4,23 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 public class ShadowExtractor {
-  // todo: share with AsmInstrumentingClassLoader
-  private static final String GET_ROBO_DATA_METHOD_NAME = "$$robo$getData";
-
   public static Object extract(Object instance) {
     if (instance == null) {
       throw new NullPointerException("can't get a shadow for null");
     }
 
+    if (instance instanceof ShadowedObject) {
+      return ((ShadowedObject) instance).$$robo$getData();
+    }
+
+    // not cached: a Method holds on to its class, and so to the class loader of a whole SdkEnvironment
     Object roboData;
     try {
       Method getRoboData = null;
       Class<?> clazz = instance.getClass();
       while (clazz != null) {
         try {
-          getRoboData = clazz.getDeclaredMethod(GET_ROBO_DATA_METHOD_NAME);
+          getRoboData = clazz.getDeclaredMethod(ShadowedObject.GET_ROBO_DATA_METHOD_NAME);
           break;
         } catch (NoSuchMethodException e) { }
         clazz = clazz.getSuperclass();
@@ -0,0 +1,11 @@
+package org.robolectric.util;
+
+/**
+ * Implemented by every class Robolectric instruments, so its shadow can be reached with a cast and an interface
+ * call instead of reflection.
+ */
+public interface ShadowedObject {
+  String GET_ROBO_DATA_METHOD_NAME = "$$robo$getData";
+
+  Object $$robo$getData();
+}
@@ -0,0 +1,45 @@
+package org.robolectric.util;
+
+import java.lang.reflect.Field;
+
+/**
+ * Tells whether the code of a shadow with a {@code @Resetter(onlyIfTouched = true)} method has run since it was
+ * last reset. The instrumenting class loader gives such classes a static flag which every method other than the
+ * resetter sets; classes loaded any other way always count as touched.
+ */
+public class StaticStateTracker {
+  public static final String TOUCHED_FIELD_NAME = "$$robo$staticStateTouched";
+
+  public static boolean isTouched(Class<?> clazz) {
+    Field touched = getTouchedField(clazz);
+    if (touched == null) return true;
+
+    try {
+      return touched.getBoolean(null);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static void clearTouched(Class<?> clazz) {
+    Field touched = getTouchedField(clazz);
+    if (touched == null) return;
+
+    try {
+      touched.setBoolean(null, false);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // not cached: a Field holds on to its class, and so to the class loader of a whole SdkEnvironment
+  private static Field getTouchedField(Class<?> clazz) {
+    try {
+      Field touched = clazz.getDeclaredField(TOUCHED_FIELD_NAME);
+      touched.setAccessible(true);
+      return touched;
+    } catch (NoSuchFieldException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package org.robolectric.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShadowExtractorTest {
+
+  @Test
+  public void extract_callsShadowedObjectsDirectly() {
+    Assert.assertEquals("shadowed", ShadowExtractor.extract(new Shadowed()));
+  }
+
+  @Test
+  public void extract_findsTheMethodReflectivelyOtherwise() {
+    Assert.assertEquals("instrumented elsewhere", ShadowExtractor.extract(new InstrumentedElsewhere()));
+  }
+
+  @Test
+  public void extract_findsInheritedMethodsReflectively() {
+    Assert.assertEquals("instrumented elsewhere", ShadowExtractor.extract(new InstrumentedElsewhereDescendant()));
+  }
+
+  @Test
+  public void extract_givesHelpfulExceptions() {
+    Object notInstrumented = new Object();
+    try {
+      ShadowExtractor.extract(notInstrumented);
+      Assert.fail("no Exception thrown");
+    } catch (RuntimeException e) {
+      Assert.assertEquals("can't get a shadow for " + notInstrumented, e.getMessage());
+    }
+  }
+
+  private static class Shadowed implements ShadowedObject {
+    @Override public Object $$robo$getData() {
+      return "shadowed";
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private static class InstrumentedElsewhere {
+    private Object $$robo$getData() {
+      return "instrumented elsewhere";
+    }
+  }
+
+  private static class InstrumentedElsewhereDescendant extends InstrumentedElsewhere {
+  }
+}
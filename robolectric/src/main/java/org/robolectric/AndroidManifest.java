@@ -140,7 +140,7 @@ public class AndroidManifest {
     }
   }
 
-  public void parseAndroidManifest() {
+  public synchronized void parseAndroidManifest() {
     if (manifestIsParsed) {
       return;
     }
@@ -589,7 +589,7 @@ public class AndroidManifest {
     return new AndroidManifest(libraryBaseDir);
   }
 
-  public List<AndroidManifest> getLibraryManifests() {
+  public synchronized List<AndroidManifest> getLibraryManifests() {
     if (libraryManifests == null) createLibraryManifests();
     return Collections.unmodifiableList(libraryManifests);
   }
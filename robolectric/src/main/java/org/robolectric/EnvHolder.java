@@ -1,27 +1,65 @@
 package org.robolectric;
 
+import org.robolectric.bytecode.InMemoryInstrumentedClassCache;
+import org.robolectric.bytecode.InstrumentedClassCache;
 import org.robolectric.res.FsFile;
+import org.robolectric.res.ResourceLoader;
 
-import java.lang.ref.SoftReference;
 import java.util.HashMap;
 import java.util.Map;
 
 public class EnvHolder {
   public final Map<FsFile, AndroidManifest> appManifestsByFile = new HashMap<FsFile, AndroidManifest>();
-  private final Map<SdkConfig, SoftReference<SdkEnvironment>> sdkToEnvironmentSoft = new HashMap<SdkConfig, SoftReference<SdkEnvironment>>();
-
-  synchronized public SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig, SdkEnvironment.Factory factory) {
-    SoftReference<SdkEnvironment> reference = sdkToEnvironmentSoft.get(sdkConfig);
-    SdkEnvironment sdkEnvironment = reference == null ? null : reference.get();
-    if (sdkEnvironment == null) {
-      if (reference != null) {
-        System.out.println("[DEBUG] ********************* GC'ed SdkEnvironment reused!");
-      }
+  private final SdkEnvironmentPool sdkEnvironmentPool = new SdkEnvironmentPool();
 
-      sdkEnvironment = factory.create();
-      sdkToEnvironmentSoft.put(sdkConfig, new SoftReference<SdkEnvironment>(sdkEnvironment));
+  // only used by ParallelTestScheduler's workers, which each have environments of their own but share the rest
+  private final ThreadLocal<SdkEnvironmentPool> workerSdkEnvironmentPools = new ThreadLocal<SdkEnvironmentPool>() {
+    @Override protected SdkEnvironmentPool initialValue() {
+      return new SdkEnvironmentPool();
     }
+  };
+  private final Map<SdkConfig, InstrumentedClassCache> workerInstrumentedClassCaches = new HashMap<SdkConfig, InstrumentedClassCache>();
+  private final Map<SdkConfig, ResourceLoader> workerSystemResourceLoaders = new HashMap<SdkConfig, ResourceLoader>();
+
+  public SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig, SdkEnvironment.Factory factory) {
+    return getSdkEnvironmentPool().get(sdkConfig, factory);
+  }
 
-    return sdkEnvironment;
+  /**
+   * Returns the current worker's pool when running on one of {@link ParallelTestScheduler}'s workers, and the pool
+   * shared by everything else otherwise.
+   */
+  public SdkEnvironmentPool getSdkEnvironmentPool() {
+    return ParallelTestScheduler.isWorkerThread() ? workerSdkEnvironmentPools.get() : sdkEnvironmentPool;
+  }
+
+  /**
+   * Returns the instrumented class bytes shared by the workers' class loaders for the given SDK.
+   */
+  public InstrumentedClassCache getWorkerInstrumentedClassCache(SdkConfig sdkConfig) {
+    synchronized (workerInstrumentedClassCaches) {
+      InstrumentedClassCache instrumentedClassCache = workerInstrumentedClassCaches.get(sdkConfig);
+      if (instrumentedClassCache == null) {
+        instrumentedClassCache = new InMemoryInstrumentedClassCache();
+        workerInstrumentedClassCaches.put(sdkConfig, instrumentedClassCache);
+      }
+      return instrumentedClassCache;
+    }
+  }
+
+  /**
+   * Returns the system resources shared by the workers for the given SDK, loading them from the given environment
+   * the first time.
+   */
+  public ResourceLoader getWorkerSystemResourceLoader(SdkEnvironment sdkEnvironment, DependencyResolver dependencyResolver) {
+    synchronized (workerSystemResourceLoaders) {
+      ResourceLoader systemResourceLoader = workerSystemResourceLoaders.get(sdkEnvironment.getSdkConfig());
+      if (systemResourceLoader == null) {
+        // lazily-loaded resources can't be read while another thread is loading more of them
+        systemResourceLoader = sdkEnvironment.createSystemResourceLoader(dependencyResolver, false);
+        workerSystemResourceLoaders.put(sdkEnvironment.getSdkConfig(), systemResourceLoader);
+      }
+      return systemResourceLoader;
+    }
   }
 }
@@ -0,0 +1,144 @@
+package org.robolectric;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.runners.model.RunnerScheduler;
+import org.junit.runners.model.TestClass;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link RobolectricTestRunner}'s test methods on a fixed set of worker threads, so one JVM can run tests on
+ * every core. The workers are shared by all test classes and live as long as the JVM.
+ *
+ * Each worker keeps {@link SdkEnvironment}s of its own (see {@link EnvHolder}), so the instrumented classes and all
+ * the static state of a test, including which thread is the main looper's, belong to the worker running it. Parsed
+ * manifests, resources and instrumented class bytes are built once and shared by all workers.
+ *
+ * Enabled by setting the {@value #THREADS_PROPERTY} system property to the number of workers. The first scheduler
+ * to start the workers decides how many there are. Test classes with {@code @BeforeClass} or {@code @AfterClass}
+ * methods still run serially (see {@link #canRunInParallel(TestClass)}).
+ *
+ * Tests that share files on disk can get in each other's way when they run at the same time. Mockito's class cache
+ * doesn't tell apart classes loaded by different workers, so it has to be turned off with an
+ * {@code org.mockito.configuration.MockitoConfiguration} whose {@code enableClassCache()} returns false; see
+ * {@link #checkMockitoClassCacheIsOff(ClassLoader)}.
+ */
+public class ParallelTestScheduler implements RunnerScheduler {
+  public static final String THREADS_PROPERTY = "robolectric.parallelThreads";
+
+  private static ExecutorService workers;
+
+  private final int threadCount;
+  private final List<Future<?>> scheduled = new ArrayList<Future<?>>();
+
+  public ParallelTestScheduler(int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException(THREADS_PROPERTY + " must be at least 1, but was " + threadCount);
+    }
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Returns the number of workers asked for with {@value #THREADS_PROPERTY}, or 0 if tests should run serially.
+   */
+  public static int getRequestedThreadCount() {
+    return Integer.getInteger(THREADS_PROPERTY, 0);
+  }
+
+  /**
+   * Returns false if the test class has {@code @BeforeClass} or {@code @AfterClass} methods. Each worker loads the
+   * test class in an environment of its own, so class fixtures would run once per worker rather than once per class.
+   */
+  public static boolean canRunInParallel(TestClass testClass) {
+    return testClass.getAnnotatedMethods(BeforeClass.class).isEmpty()
+        && testClass.getAnnotatedMethods(AfterClass.class).isEmpty();
+  }
+
+  /**
+   * Throws if Mockito can be loaded from the given class loader and its class cache is on, since mocks made on one
+   * worker would then be handed to tests on others.
+   */
+  public static void checkMockitoClassCacheIsOff(ClassLoader classLoader) {
+    Class<?> globalConfigurationClass;
+    try {
+      globalConfigurationClass = classLoader.loadClass("org.mockito.internal.configuration.GlobalConfiguration");
+    } catch (ClassNotFoundException e) {
+      return;
+    }
+
+    Object globalConfiguration = ReflectionHelpers.callConstructorReflectively(globalConfigurationClass);
+    if (ReflectionHelpers.<Boolean>callInstanceMethodReflectively(globalConfiguration, "enableClassCache")) {
+      throw new IllegalStateException("Mockito's class cache must be off when " + THREADS_PROPERTY + " is set:"
+          + " add an org.mockito.configuration.MockitoConfiguration whose enableClassCache() returns false");
+    }
+  }
+
+  public static boolean isWorkerThread() {
+    return Thread.currentThread() instanceof WorkerThread;
+  }
+
+  @Override
+  public void schedule(Runnable childStatement) {
+    // a test that runs tests itself mustn't wait for workers that might all be busy waiting the same way
+    if (isWorkerThread()) {
+      childStatement.run();
+      return;
+    }
+
+    synchronized (scheduled) {
+      scheduled.add(getWorkers(threadCount).submit(childStatement));
+    }
+  }
+
+  @Override
+  public void finished() {
+    List<Future<?>> futures;
+    synchronized (scheduled) {
+      futures = new ArrayList<Future<?>>(scheduled);
+      scheduled.clear();
+    }
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+
+  private static synchronized ExecutorService getWorkers(int threadCount) {
+    if (workers == null) {
+      workers = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+        private final AtomicInteger number = new AtomicInteger();
+
+        @Override public Thread newThread(Runnable runnable) {
+          return new WorkerThread(runnable, "robolectric-worker-" + number.incrementAndGet());
+        }
+      });
+    }
+    return workers;
+  }
+
+  private static class WorkerThread extends Thread {
+    WorkerThread(Runnable runnable, String name) {
+      super(runnable, name);
+      setDaemon(true);
+    }
+  }
+}
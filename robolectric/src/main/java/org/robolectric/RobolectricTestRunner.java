@@ -27,6 +27,7 @@ import java.lang.reflect.*;
 import java.net.URL;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Installs a {@link org.robolectric.bytecode.InstrumentingClassLoader} and
@@ -35,10 +36,13 @@ import java.util.*;
  */
 public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private static final Map<Class<? extends RobolectricTestRunner>, EnvHolder> envHoldersByTestRunner = new HashMap<Class<? extends RobolectricTestRunner>, EnvHolder>();
-  private static Map<Pair<AndroidManifest, SdkConfig>, ResourceLoader> resourceLoadersByManifestAndConfig = new HashMap<Pair<AndroidManifest, SdkConfig>, ResourceLoader>();
+  private static final Map<Pair<AndroidManifest, SdkConfig>, ResourceLoader> resourceLoadersByManifestAndConfig = new HashMap<Pair<AndroidManifest, SdkConfig>, ResourceLoader>();
   private static ShadowMap mainShadowMap;
   private final EnvHolder envHolder;
-  private TestLifecycle<Application> testLifecycle;
+  // per thread, since ParallelTestScheduler may run several of this runner's tests at once
+  private final ThreadLocal<TestLifecycle<Application>> testLifecycle = new ThreadLocal<TestLifecycle<Application>>();
+  // how many threads have a test lifecycle set, so allStateIsCleared() sees the workers' too
+  private final AtomicInteger testLifecyclesInUse = new AtomicInteger();
   private DependencyResolver dependencyResolver;
 
   static {
@@ -48,11 +52,13 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private Class<? extends RobolectricTestRunner> lastTestRunnerClass;
   private SdkConfig lastSdkConfig;
   private SdkEnvironment lastSdkEnvironment;
-  private final HashSet<Class<?>> loadedTestClasses = new HashSet<Class<?>>();
+  private final Set<Class<?>> loadedTestClasses = Collections.synchronizedSet(new LinkedHashSet<Class<?>>());
 
   /**
    * Creates a runner to run {@code testClass}. Looks in your working directory for your AndroidManifest.xml file
-   * and res directory by default. Use the {@link Config} annotation to configure.
+   * and res directory by default. Use the {@link Config} annotation to configure. Runs tests in parallel if the
+   * {@value ParallelTestScheduler#THREADS_PROPERTY} system property asks for more than one thread, unless the class
+   * has {@code @BeforeClass} or {@code @AfterClass} methods.
    *
    * @param testClass the test class to be run
    * @throws InitializationError if junit says so
@@ -70,12 +76,24 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       }
     }
     this.envHolder = envHolder;
+
+    int threadCount = ParallelTestScheduler.getRequestedThreadCount();
+    if (threadCount > 1 && ParallelTestScheduler.canRunInParallel(getTestClass())) {
+      try {
+        ParallelTestScheduler.checkMockitoClassCacheIsOff(testClass.getClassLoader());
+      } catch (IllegalStateException e) {
+        throw new InitializationError(e.getMessage());
+      }
+      setScheduler(new ParallelTestScheduler(threadCount));
+    }
   }
 
   private void assureTestLifecycle(SdkEnvironment sdkEnvironment) {
     try {
       ClassLoader robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
-      testLifecycle = (TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance();
+      TestLifecycle<Application> newTestLifecycle = (TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance();
+      if (testLifecycle.get() == null) testLifecyclesInUse.incrementAndGet();
+      testLifecycle.set(newTestLifecycle);
     } catch (InstantiationException e) {
       throw new RuntimeException(e);
     } catch (IllegalAccessException e) {
@@ -85,7 +103,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
-  protected DependencyResolver getJarResolver() {
+  protected synchronized DependencyResolver getJarResolver() {
     if (dependencyResolver == null) {
       if (Boolean.getBoolean("robolectric.offline")) {
         String dependencyDir = System.getProperty("robolectric.dependency.dir", ".");
@@ -138,6 +156,14 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
   protected ClassLoader createRobolectricClassLoader(Setup setup, SdkConfig sdkConfig) {
     URL[] urls = getJarResolver().getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
+    String instrumentedClassCacheDir = System.getProperty("robolectric.instrumentedClassCacheDir");
+    if (instrumentedClassCacheDir != null) {
+      InstrumentedClassCache instrumentedClassCache = new InstrumentedClassCache(new File(instrumentedClassCacheDir), setup, urls);
+      return new AsmInstrumentingClassLoader(setup, instrumentedClassCache, urls);
+    }
+    if (ParallelTestScheduler.isWorkerThread()) {
+      return new AsmInstrumentingClassLoader(setup, envHolder.getWorkerInstrumentedClassCache(sdkConfig), urls);
+    }
     return new AsmInstrumentingClassLoader(setup, urls);
   }
 
@@ -155,7 +181,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       public void evaluate() throws Throwable {
         try {
           statement.evaluate();
-          for (Class<?> testClass : loadedTestClasses) {
+          for (Class<?> testClass : getLoadedTestClasses()) {
             invokeAfterClass(testClass);
           }
         } finally {
@@ -165,6 +191,12 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     };
   }
 
+  private List<Class<?>> getLoadedTestClasses() {
+    synchronized (loadedTestClasses) {
+      return new ArrayList<Class<?>>(loadedTestClasses);
+    }
+  }
+
   private void invokeAfterClass(final Class<?> clazz) throws Throwable {
     final TestClass testClass = new TestClass(clazz);
     final List<FrameworkMethod> afters = testClass.getAnnotatedMethods(AfterClass.class);
@@ -215,10 +247,13 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
           modifiers.setInt(sdk_int, sdk_int.getModifiers() & ~Modifier.FINAL);
           sdk_int.setInt(null, sdkVersion);
 
-          ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver());
+          ResourceLoader systemResourceLoader = ParallelTestScheduler.isWorkerThread()
+              ? envHolder.getWorkerSystemResourceLoader(sdkEnvironment, getJarResolver())
+              : sdkEnvironment.getSystemResourceLoader(getJarResolver());
           setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, systemResourceLoader, appManifest, config);
-          testLifecycle.beforeTest(bootstrappedMethod);
+          testLifecycle.get().beforeTest(bootstrappedMethod);
         } catch (Exception e) {
+          clearTestLifecycle();
           e.printStackTrace();
           throw new RuntimeException(e);
         }
@@ -236,6 +271,8 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
               internalAfterTest(bootstrappedMethod);
             } finally {
               parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
+              // a worker's lifecycle would otherwise keep its class loader and environment after the class is done
+              clearTestLifecycle();
               // todo: is this really needed?
               Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
             }
@@ -268,6 +305,14 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private SdkEnvironment getEnvironment(final AndroidManifest appManifest, final Config config) {
     final SdkConfig sdkConfig = pickSdkVersion(appManifest, config);
 
+    if (ParallelTestScheduler.isWorkerThread()) {
+      return envHolder.getSdkEnvironment(sdkConfig, new SdkEnvironment.Factory() {
+        @Override public SdkEnvironment create() {
+          return createSdkEnvironment(sdkConfig);
+        }
+      });
+    }
+
     // keep the most recently-used SdkEnvironment strongly reachable to prevent thrashing in low-memory situations.
     if (getClass().equals(lastTestRunnerClass) && sdkConfig.equals(lastSdkConfig)) {
       return lastSdkEnvironment;
@@ -417,13 +462,14 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       classHandler = sdkEnvironment.classHandlersByShadowMap.get(shadowMap);
       if (classHandler == null) {
         classHandler = createClassHandler(shadowMap, sdkEnvironment.getSdkConfig());
+        sdkEnvironment.classHandlersByShadowMap.put(shadowMap, classHandler);
       }
     }
     return classHandler;
   }
 
   protected void setUpApplicationState(Method method, ParallelUniverseInterface parallelUniverseInterface, ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config) {
-    parallelUniverseInterface.setUpApplicationState(method, testLifecycle, systemResourceLoader, appManifest, config);
+    parallelUniverseInterface.setUpApplicationState(method, testLifecycle.get(), systemResourceLoader, appManifest, config);
   }
 
   private int getTargetSdkVersion(AndroidManifest appManifest) {
@@ -465,16 +511,23 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   public void internalAfterTest(final Method method) {
-    testLifecycle.afterTest(method);
+    testLifecycle.get().afterTest(method);
   }
 
   private void afterClass() {
-    testLifecycle = null;
+    clearTestLifecycle();
+  }
+
+  private void clearTestLifecycle() {
+    if (testLifecycle.get() != null) {
+      testLifecycle.remove();
+      testLifecyclesInUse.decrementAndGet();
+    }
   }
 
   @TestOnly
   boolean allStateIsCleared() {
-    return testLifecycle == null;
+    return testLifecyclesInUse.get() == 0;
   }
 
   @Override
@@ -484,12 +537,14 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
   public final ResourceLoader getAppResourceLoader(SdkConfig sdkConfig, ResourceLoader systemResourceLoader, final AndroidManifest appManifest) {
     Pair<AndroidManifest, SdkConfig> androidManifestSdkConfigPair = new Pair<AndroidManifest, SdkConfig>(appManifest, sdkConfig);
-    ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
-    if (resourceLoader == null) {
-      resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
-      resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+    synchronized (resourceLoadersByManifestAndConfig) {
+      ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
+      if (resourceLoader == null) {
+        resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
+        resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+      }
+      return resourceLoader;
     }
-    return resourceLoader;
   }
 
   protected ResourceLoader createAppResourceLoader(ResourceLoader systemResourceLoader, AndroidManifest appManifest) {
@@ -506,6 +561,10 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   public PackageResourceLoader createResourceLoader(ResourcePath resourcePath) {
+    if (ParallelTestScheduler.isWorkerThread()) {
+      // workers share resource loaders, and lazily-loaded resources can't be read while another thread is loading more
+      return new PackageResourceLoader(resourcePath, new ResourceExtractor(resourcePath), false);
+    }
     return new PackageResourceLoader(resourcePath);
   }
 
@@ -530,7 +589,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
     @Override protected Object createTest() throws Exception {
       Object test = super.createTest();
-      testLifecycle.prepareTest(test);
+      testLifecycle.get().prepareTest(test);
       return test;
     }
 
@@ -1,7 +1,7 @@
 package org.robolectric;
 
+import org.robolectric.bytecode.ClassHandler;
 import org.robolectric.bytecode.ShadowMap;
-import org.robolectric.bytecode.ShadowWrangler;
 import org.robolectric.res.Fs;
 import org.robolectric.res.PackageResourceLoader;
 import org.robolectric.res.ResourceExtractor;
@@ -15,7 +15,7 @@ import java.util.Map;
 public class SdkEnvironment {
   private final SdkConfig sdkConfig;
   private final ClassLoader robolectricClassLoader;
-  public final Map<ShadowMap, ShadowWrangler> classHandlersByShadowMap = new HashMap<ShadowMap, ShadowWrangler>();
+  public final Map<ShadowMap, ClassHandler> classHandlersByShadowMap = new HashMap<ShadowMap, ClassHandler>();
   private ResourceLoader systemResourceLoader;
 
   public SdkEnvironment(SdkConfig sdkConfig, ClassLoader robolectricClassLoader) {
@@ -24,11 +24,15 @@ public class SdkEnvironment {
   }
 
   public PackageResourceLoader createSystemResourceLoader(DependencyResolver dependencyResolver) {
+    return createSystemResourceLoader(dependencyResolver, Boolean.getBoolean(PackageResourceLoader.LAZY_LOADING_PROPERTY));
+  }
+
+  public PackageResourceLoader createSystemResourceLoader(DependencyResolver dependencyResolver, boolean lazy) {
     URL url = dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency());
     Fs systemResFs = Fs.fromJar(url);
     ResourceExtractor resourceExtractor = new ResourceExtractor(getRobolectricClassLoader());
     ResourcePath resourcePath = new ResourcePath(resourceExtractor.getProcessedRFile(), resourceExtractor.getPackageName(), systemResFs.join("res"), systemResFs.join("assets"));
-    return new PackageResourceLoader(resourcePath, resourceExtractor);
+    return new PackageResourceLoader(resourcePath, resourceExtractor, lazy);
   }
 
   public synchronized ResourceLoader getSystemResourceLoader(DependencyResolver dependencyResolver) {
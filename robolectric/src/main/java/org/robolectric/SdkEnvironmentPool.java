@@ -0,0 +1,196 @@
+package org.robolectric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Holds on to up to a fixed number of {@link SdkEnvironment}s, evicting one chosen by its {@link EvictionPolicy}
+ * (by default the least recently used one) when another is needed. Unlike soft references, an environment (and its
+ * instrumented classes and caches) is only ever dropped to make room for another one, never just because the heap
+ * is getting full.
+ *
+ * The size defaults to the number of supported SDKs and can be set with the {@value #MAX_SIZE_PROPERTY} system
+ * property; the policy can be set with the {@value #EVICTION_POLICY_PROPERTY} system property, naming a class with
+ * a public no-argument constructor.
+ *
+ * Environments are created outside the pool's lock, so creating one doesn't hold up threads getting others; threads
+ * asking for an environment that's still being created wait for it rather than creating another.
+ */
+public class SdkEnvironmentPool {
+  public static final String MAX_SIZE_PROPERTY = "robolectric.sdkEnvironmentPoolSize";
+  public static final String EVICTION_POLICY_PROPERTY = "robolectric.sdkEnvironmentEvictionPolicy";
+  private static final int DEFAULT_MAX_SIZE = 3;
+
+  private final int maxSize;
+  private final EvictionPolicy evictionPolicy;
+  private final Map<SdkConfig, FutureTask<SdkEnvironment>> environments = new HashMap<SdkConfig, FutureTask<SdkEnvironment>>();
+  private int hits;
+  private int misses;
+  private int evictions;
+
+  public SdkEnvironmentPool() {
+    this(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE), createEvictionPolicy(System.getProperty(EVICTION_POLICY_PROPERTY)));
+  }
+
+  public SdkEnvironmentPool(int maxSize) {
+    this(maxSize, new LeastRecentlyUsed());
+  }
+
+  public SdkEnvironmentPool(int maxSize, EvictionPolicy evictionPolicy) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException(MAX_SIZE_PROPERTY + " must be at least 1, but was " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.evictionPolicy = evictionPolicy;
+  }
+
+  private static EvictionPolicy createEvictionPolicy(String className) {
+    if (className == null) return new LeastRecentlyUsed();
+
+    try {
+      return (EvictionPolicy) Class.forName(className).newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException(EVICTION_POLICY_PROPERTY + " must name an " + EvictionPolicy.class.getName()
+          + " with a public no-argument constructor, but was " + className, e);
+    }
+  }
+
+  public SdkEnvironment get(SdkConfig sdkConfig, final SdkEnvironment.Factory factory) {
+    FutureTask<SdkEnvironment> environment;
+    boolean create = false;
+    synchronized (this) {
+      environment = environments.get(sdkConfig);
+      if (environment == null) {
+        misses++;
+        environment = new FutureTask<SdkEnvironment>(new Callable<SdkEnvironment>() {
+          @Override public SdkEnvironment call() throws Exception {
+            return factory.create();
+          }
+        });
+        environments.put(sdkConfig, environment);
+        create = true;
+      } else {
+        hits++;
+      }
+      evictionPolicy.used(sdkConfig);
+      evictIfFull(sdkConfig);
+    }
+
+    if (create) {
+      environment.run();
+    }
+    try {
+      return environment.get();
+    } catch (ExecutionException e) {
+      synchronized (this) {
+        // so the next thread to ask tries again
+        if (environments.get(sdkConfig) == environment) {
+          environments.remove(sdkConfig);
+          evictionPolicy.evicted(sdkConfig);
+        }
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void evictIfFull(SdkConfig justUsed) {
+    while (environments.size() > maxSize) {
+      List<SdkConfig> candidates = new ArrayList<SdkConfig>(environments.keySet());
+      candidates.remove(justUsed);
+      SdkConfig evicted = evictionPolicy.chooseEviction(candidates);
+      if (evicted == null || environments.remove(evicted) == null) return;
+
+      evictionPolicy.evicted(evicted);
+      evictions++;
+    }
+  }
+
+  public synchronized int size() {
+    return environments.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public EvictionPolicy getEvictionPolicy() {
+    return evictionPolicy;
+  }
+
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  public synchronized int getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SdkEnvironmentPool{size=" + environments.size() + "/" + maxSize
+        + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+        + ", evictionPolicy=" + evictionPolicy.getClass().getSimpleName() + "}";
+  }
+
+  /**
+   * Chooses which environment a full pool drops. A policy belongs to a single pool, which only calls it while holding
+   * its lock, so implementations don't need to be thread-safe.
+   */
+  public interface EvictionPolicy {
+    /**
+     * Notes that the environment for the given SDK was just handed out, or is about to be created.
+     */
+    void used(SdkConfig sdkConfig);
+
+    /**
+     * Returns the SDK, out of the given candidates, whose environment should be dropped, or null to keep them all
+     * and let the pool grow past its size.
+     */
+    SdkConfig chooseEviction(Collection<SdkConfig> candidates);
+
+    /**
+     * Notes that the environment for the given SDK was dropped.
+     */
+    void evicted(SdkConfig sdkConfig);
+  }
+
+  /**
+   * Drops the environment that was used least recently.
+   */
+  public static class LeastRecentlyUsed implements EvictionPolicy {
+    private final LinkedHashSet<SdkConfig> leastRecentlyUsedFirst = new LinkedHashSet<SdkConfig>();
+
+    @Override public void used(SdkConfig sdkConfig) {
+      leastRecentlyUsedFirst.remove(sdkConfig);
+      leastRecentlyUsedFirst.add(sdkConfig);
+    }
+
+    @Override public SdkConfig chooseEviction(Collection<SdkConfig> candidates) {
+      for (SdkConfig sdkConfig : leastRecentlyUsedFirst) {
+        if (candidates.contains(sdkConfig)) return sdkConfig;
+      }
+      return null;
+    }
+
+    @Override public void evicted(SdkConfig sdkConfig) {
+      leastRecentlyUsedFirst.remove(sdkConfig);
+    }
+  }
+}
@@ -3,25 +3,33 @@ package org.robolectric.bytecode;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.JSRInlinerAdapter;
 import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.FrameNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.util.ShadowedObject;
+import org.robolectric.util.StaticStateTracker;
 
 import java.io.FileOutputStream;
 import java.io.FileWriter;
@@ -39,6 +47,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.objectweb.asm.Type.ARRAY;
 import static org.objectweb.asm.Type.OBJECT;
@@ -54,57 +64,72 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
   private static final Type PLAN_TYPE = Type.getType(ClassHandler.Plan.class);
   private static final Type THROWABLE_TYPE = Type.getType(Throwable.class);
   private static final Method INITIALIZING_METHOD = new Method("initializing", "(Ljava/lang/Object;)Ljava/lang/Object;");
+  private static final Method CREATE_SHADOW_FOR_METHOD = new Method("createShadowFor", "(Ljava/lang/Object;)Ljava/lang/Object;");
   private static final Method METHOD_INVOKED_METHOD = new Method("methodInvoked", "(Ljava/lang/String;ZLjava/lang/Class;)L" + PLAN_TYPE.getInternalName() + ";");
   private static final Method PLAN_RUN_METHOD = new Method("run", OBJECT_TYPE, new Type[]{OBJECT_TYPE, OBJECT_TYPE, Type.getType(Object[].class)});
   private static final Method HANDLE_EXCEPTION_METHOD = new Method("cleanStackTrace", THROWABLE_TYPE, new Type[]{THROWABLE_TYPE});
   private static final String DIRECT_OBJECT_MARKER_TYPE_DESC = Type.getObjectType(DirectObjectMarker.class.getName().replace('.', '/')).getDescriptor();
   private static final String ROBO_INIT_METHOD_NAME = "$$robo$init";
-  static final String GET_ROBO_DATA_METHOD_NAME = "$$robo$getData";
+  static final String GET_ROBO_DATA_METHOD_NAME = ShadowedObject.GET_ROBO_DATA_METHOD_NAME;
   private static final String GET_ROBO_DATA_SIGNATURE = "()Ljava/lang/Object;";
+  private static final String SHADOWED_OBJECT_INTERNAL_NAME = Type.getInternalName(ShadowedObject.class);
+  private static final String RESETTER_DESC = Type.getDescriptor(Resetter.class);
+  private static final Handle BOOTSTRAP_HANDLE = new Handle(H_INVOKESTATIC, Type.getInternalName(InvokeDynamicSupport.class), "bootstrap",
+      "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;I)Ljava/lang/invoke/CallSite;");
 
   private static boolean debug = false;
 
   private final Setup setup;
   private final URLClassLoader urls;
-  private final Map<String, Class> classes = new HashMap<String, Class>();
+  private final ConcurrentMap<String, Class> classes = new ConcurrentHashMap<String, Class>();
   private final Set<Setup.MethodRef> methodsToIntercept;
   private final Map<String, String> classesToRemap;
+  private final boolean invokeDynamic;
+  private final InstrumentedClassCache instrumentedClassCache;
   private int number = 0;
 
 
+  static {
+    registerAsParallelCapable();
+  }
+
   public AsmInstrumentingClassLoader(Setup setup, URL... urls) {
+    this(setup, null, urls);
+  }
+
+  public AsmInstrumentingClassLoader(Setup setup, InstrumentedClassCache instrumentedClassCache, URL... urls) {
     super(AsmInstrumentingClassLoader.class.getClassLoader());
     this.setup = setup;
+    this.instrumentedClassCache = instrumentedClassCache;
     this.urls = new URLClassLoader(urls, null);
     classesToRemap = convertToSlashes(setup.classNameTranslations());
     methodsToIntercept = convertToSlashes(setup.methodsToIntercept());
+    invokeDynamic = setup.shouldUseInvokeDynamic();
   }
 
   @Override
-  synchronized public Class loadClass(String name) throws ClassNotFoundException {
+  public Class loadClass(String name) throws ClassNotFoundException {
     Class<?> theClass = classes.get(name);
-    if (theClass != null) {
-      if (theClass == MissingClassMarker.class) {
-        throw new ClassNotFoundException(name);
-      } else {
-        return theClass;
+    if (theClass == null) {
+      synchronized (getClassLoadingLock(name)) {
+        theClass = classes.get(name);
+        if (theClass == null) {
+          try {
+            // instrumented classes must implement the same ShadowedObject that ShadowExtractor casts to
+            theClass = !name.equals(ShadowedObject.class.getName()) && setup.shouldAcquire(name)
+                ? findClass(name) : getParent().loadClass(name);
+          } catch (ClassNotFoundException e) {
+            classes.put(name, MissingClassMarker.class);
+            throw e;
+          }
+          classes.put(name, theClass);
+        }
       }
     }
 
-    boolean shouldComeFromThisClassLoader = setup.shouldAcquire(name);
-
-    try {
-      if (shouldComeFromThisClassLoader) {
-        theClass = findClass(name);
-      } else {
-        theClass = getParent().loadClass(name);
-      }
-    } catch (ClassNotFoundException e) {
-      classes.put(name, MissingClassMarker.class);
-      throw e;
+    if (theClass == MissingClassMarker.class) {
+      throw new ClassNotFoundException(name);
     }
-
-    classes.put(name, theClass);
     return theClass;
   }
 
@@ -126,25 +151,26 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       byte[] origClassBytes = getByteCode(className);
 
       final ClassReader classReader = new ClassReader(origClassBytes);
-      ClassNode classNode = new ClassNode(Opcodes.ASM4) {
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-          desc = remapParamType(desc);
-          return super.visitField(access, name, desc, signature, value);
-        }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-          return super.visitMethod(access, name, remapParams(desc), signature, exceptions);
-        }
-      };
-      classReader.accept(classNode, 0);
+      // the class's declarations are enough to tell whether and how it should be instrumented
+      ClassNode declarations = new ClassNode();
+      classReader.accept(declarations, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
 
       try {
         byte[] bytes;
-        AsmClassInfo classInfo = new AsmClassInfo(className, classNode);
+        AsmClassInfo classInfo = new AsmClassInfo(className, declarations);
         if (setup.shouldInstrument(classInfo)) {
-          bytes = getInstrumentedBytes(className, classNode, setup.containsStubs(classInfo));
+          byte[] cachedBytes = instrumentedClassCache == null ? null : instrumentedClassCache.get(className, origClassBytes);
+          if (cachedBytes != null) {
+            bytes = cachedBytes;
+          } else {
+            bytes = getInstrumentedBytes(className, readClassNode(classReader), setup.containsStubs(classInfo));
+            if (instrumentedClassCache != null) {
+              instrumentedClassCache.put(className, origClassBytes, bytes);
+            }
+          }
+        } else if (getTouchTrackedResetter(declarations) != null) {
+          bytes = getTouchTrackedBytes(origClassBytes);
         } else {
           bytes = origClassBytes;
         }
@@ -163,6 +189,28 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     }
   }
 
+  private ClassNode readClassNode(ClassReader classReader) {
+    ClassNode classNode = new ClassNode(Opcodes.ASM4) {
+      @Override
+      public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        desc = remapParamType(desc);
+        return super.visitField(access, name, desc, signature, value);
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor methodVisitor = super.visitMethod(access, name, remapParams(desc), signature, exceptions);
+        if (invokeDynamic) {
+          // we'll be upgrading to V51 bytecode, which can't have JSR/RET, so inline subroutines
+          methodVisitor = new JSRInlinerAdapter(methodVisitor, access, name, remapParams(desc), signature, exceptions);
+        }
+        return methodVisitor;
+      }
+    };
+    classReader.accept(classNode, 0);
+    return classNode;
+  }
+
   protected byte[] getByteCode(String className) throws ClassNotFoundException {
     String classFilename = className.replace('.', '/') + ".class";
     InputStream classBytesStream = urls.getResourceAsStream(classFilename);
@@ -186,7 +234,11 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       String pckgName = className.substring(0, lastDotIndex);
       Package pckg = getPackage(pckgName);
       if (pckg == null) {
-        definePackage(pckgName, null, null, null, null, null, null, null);
+        try {
+          definePackage(pckgName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException e) {
+          // another thread defined it while we were loading a class from the same package
+        }
       }
     }
   }
@@ -246,9 +298,78 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     return value;
   }
 
+  private static MethodNode getTouchTrackedResetter(ClassNode classNode) {
+    for (Object item : classNode.methods) {
+      MethodNode method = (MethodNode) item;
+      if (method.visibleAnnotations == null) continue;
+      for (Object visibleAnnotation : method.visibleAnnotations) {
+        AnnotationNode annotationNode = (AnnotationNode) visibleAnnotation;
+        if (annotationNode.desc.equals(RESETTER_DESC) && annotationNode.values != null) {
+          for (int i = 0; i < annotationNode.values.size(); i += 2) {
+            if ("onlyIfTouched".equals(annotationNode.values.get(i)) && Boolean.TRUE.equals(annotationNode.values.get(i + 1))) {
+              return method;
+            }
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds a static flag that every method but the class initializer and the resetter sets on entry if it isn't set yet, so
+   * {@link StaticStateTracker} can tell whether the resetter needs to run. The rest of the class is left as it was.
+   */
+  private byte[] getTouchTrackedBytes(byte[] origClassBytes) {
+    ClassNode classNode = new ClassNode();
+    new ClassReader(origClassBytes).accept(classNode, 0);
+    MethodNode resetter = getTouchTrackedResetter(classNode);
+
+    classNode.fields.add(new FieldNode(ACC_PUBLIC | ACC_STATIC | ACC_VOLATILE | ACC_SYNTHETIC,
+        StaticStateTracker.TOUCHED_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor(), null, null));
+    for (Object item : classNode.methods) {
+      MethodNode method = (MethodNode) item;
+      if (method.instructions.size() == 0 || method.name.equals("<clinit>") || (method.name.equals(resetter.name) && method.desc.equals(resetter.desc))) {
+        continue;
+      }
+
+      // once touched, calls only read the flag rather than writing it again
+      LabelNode touched = new LabelNode();
+      InsnList touch = new InsnList();
+      touch.add(new FieldInsnNode(GETSTATIC, classNode.name, StaticStateTracker.TOUCHED_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor()));
+      touch.add(new JumpInsnNode(IFNE, touched));
+      touch.add(new InsnNode(ICONST_1));
+      touch.add(new FieldInsnNode(PUTSTATIC, classNode.name, StaticStateTracker.TOUCHED_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor()));
+      touch.add(touched);
+      if (classNode.version >= V1_6 && !startsWithFrame(method)) {
+        // the method's locals are still just its arguments here
+        touch.add(new FrameNode(F_SAME, 0, null, 0, null));
+      }
+      method.instructions.insert(touch);
+      method.maxStack = Math.max(method.maxStack, 1);
+    }
+
+    ClassWriter classWriter = new ClassWriter(0);
+    classNode.accept(classWriter);
+    return classWriter.toByteArray();
+  }
+
+  private static boolean startsWithFrame(MethodNode method) {
+    for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+      if (insn instanceof FrameNode) return true;
+      if (insn.getOpcode() >= 0) return false;
+    }
+    return false;
+  }
+
   private byte[] getInstrumentedBytes(String className, ClassNode classNode, boolean containsStubs) throws ClassNotFoundException {
     new ClassInstrumentor(classNode, containsStubs).instrument();
 
+    // invokedynamic is only legal in V51 and newer bytecode
+    if (invokeDynamic && classNode.version < V1_7) {
+      classNode.version = V1_7;
+    }
+
     /**
      * Preserve stack map frames for V51 and newer bytecode. This fixes class verification errors
      * for JDK7 and JDK8. The option to disable bytecode verification was removed in JDK8.
@@ -271,6 +392,13 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         value = remapType(value);
         return super.newClass(value);
       }
+
+      @Override
+      protected String getCommonSuperClass(String type1, String type2) {
+        return invokeDynamic
+            ? AsmInstrumentingClassLoader.this.getCommonSuperClass(type1, type2)
+            : super.getCommonSuperClass(type1, type2);
+      }
     };
     classNode.accept(classWriter);
 
@@ -291,6 +419,38 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     return classBytes;
   }
 
+  /**
+   * Works out common superclasses for stack map frames from the original bytecode, rather than by loading classes
+   * (which might not be visible to ASM, or might not be instrumented yet). Only used when invokedynamic is on, since
+   * that's when frames get computed for classes upgraded from older bytecode; otherwise ASM's default is kept.
+   */
+  private String getCommonSuperClass(String type1, String type2) {
+    if (type1.equals(type2)) return type1;
+
+    try {
+      List<String> superclasses = new ArrayList<String>();
+      for (String type = type1; type != null; type = getSuperName(type)) {
+        if (isInterface(type)) return "java/lang/Object";
+        superclasses.add(type);
+      }
+      for (String type = type2; type != null; type = getSuperName(type)) {
+        if (isInterface(type)) return "java/lang/Object";
+        if (superclasses.contains(type)) return type;
+      }
+      return "java/lang/Object";
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private String getSuperName(String internalName) throws ClassNotFoundException {
+    return new ClassReader(getByteCode(internalName.replace('/', '.'))).getSuperName();
+  }
+
+  private boolean isInterface(String internalName) throws ClassNotFoundException {
+    return (new ClassReader(getByteCode(internalName.replace('/', '.'))).getAccess() & ACC_INTERFACE) != 0;
+  }
+
   private static class MyGenerator extends GeneratorAdapter {
     private final boolean isStatic;
     private final String desc;
@@ -441,7 +601,11 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         }
       }
 
-      classNode.fields.add(0, new FieldNode(ACC_PUBLIC, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_DESC, OBJECT_DESC, null));
+      // volatile, since a lazily created shadow may be stored by a different thread than the one reading it
+      classNode.fields.add(0, new FieldNode(ACC_PUBLIC | ACC_VOLATILE, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_DESC, OBJECT_DESC, null));
+      if (!classNode.interfaces.contains(SHADOWED_OBJECT_INTERNAL_NAME)) {
+        classNode.interfaces.add(SHADOWED_OBJECT_INTERNAL_NAME);
+      }
 
       if (!foundMethods.contains("<init>()V")) {
         MethodNode defaultConstructor = new MethodNode(ACC_PUBLIC, "<init>", "()V", "()V", null);
@@ -496,10 +660,17 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       }
 
       {
-        MethodNode initMethodNode = new MethodNode(ACC_PROTECTED, GET_ROBO_DATA_METHOD_NAME, GET_ROBO_DATA_SIGNATURE, null, null);
+        MethodNode initMethodNode = new MethodNode(ACC_PUBLIC, GET_ROBO_DATA_METHOD_NAME, GET_ROBO_DATA_SIGNATURE, null, null);
         MyGenerator m = new MyGenerator(initMethodNode);
+        Label created = new Label();
         m.loadThis();                                         // this
         m.getField(classType, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
+        m.dup();                                              // __robo_data__, __robo_data__
+        m.ifNonNull(created);                                 // __robo_data__
+        m.pop();
+        m.loadThis();                                         // this
+        m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, CREATE_SHADOW_FOR_METHOD); // __robo_data__, stored by the call
+        m.mark(created);
         m.returnValue();
         m.endMethod();
         classNode.methods.add(initMethodNode);
@@ -681,8 +852,12 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
 
       Type[] argumentTypes = Type.getArgumentTypes(targetMethod.desc);
 
-      instructions.add(new LdcInsnNode(argumentTypes.length));
-      instructions.add(new TypeInsnNode(ANEWARRAY, "java/lang/Object"));
+      if (argumentTypes.length == 0) {
+        instructions.add(new FieldInsnNode(GETSTATIC, ROBOLECTRIC_INTERNALS_TYPE.getInternalName(), "NO_PARAMS", "[Ljava/lang/Object;"));
+      } else {
+        instructions.add(new LdcInsnNode(argumentTypes.length));
+        instructions.add(new TypeInsnNode(ANEWARRAY, "java/lang/Object"));
+      }
 
       // first, move any arguments into an Object[]
       for (int i = argumentTypes.length - 1; i >= 0 ; i--) {
@@ -820,6 +995,11 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         m.mark(notInstanceOfThis);
       }
 
+      if (invokeDynamic) {
+        generateInvokeDynamicCall(originalMethod, originalMethodName, m, exceptionLocalVar);
+        return;
+      }
+
       // prepare for call to classHandler.methodInvoked(String signature, boolean isStatic)
       m.push(classType.getInternalName() + "/" + originalMethodName + originalMethod.desc);
       m.push(m.isStatic());
@@ -899,6 +1079,29 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       m.returnValue();
     }
 
+    private void generateInvokeDynamicCall(MethodNode originalMethod, String originalMethodName, MyGenerator m, int exceptionLocalVar) {
+      String signature = classType.getInternalName() + "/" + originalMethodName + originalMethod.desc;
+      String callSiteDesc = m.isStatic()
+          ? originalMethod.desc
+          : "(" + classType.getDescriptor() + originalMethod.desc.substring(1);
+
+      TryCatch tryCatchForHandler = m.tryStart(THROWABLE_TYPE);
+      if (!m.isStatic()) {
+        m.loadThis();                                         // this
+      }
+      m.loadArgs();                                           // [this], [args]
+      m.invokeDynamic(originalMethodName, callSiteDesc, BOOTSTRAP_HANDLE, signature, m.isStatic() ? 1 : 0);
+      tryCatchForHandler.end();
+      m.returnValue();
+
+      // catch(Throwable)
+      tryCatchForHandler.handler();
+      m.storeLocal(exceptionLocalVar);
+      m.loadLocal(exceptionLocalVar);
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
+      m.throwException();
+    }
+
     private boolean isEnum() {
       return (classNode.access & ACC_ENUM) != 0;
     }
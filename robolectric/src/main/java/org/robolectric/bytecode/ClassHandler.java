@@ -3,8 +3,18 @@ package org.robolectric.bytecode;
 public interface ClassHandler {
   void classInitializing(Class clazz);
 
+  /**
+   * Called as an instance is constructed.
+   *
+   * @return the instance's shadow, or null to put off creating it until it's first needed
+   */
   Object initializing(Object instance);
 
+  /**
+   * Creates the shadow for an instance whose shadow {@link #initializing(Object)} put off creating.
+   */
+  Object createShadowFor(Object instance);
+
   Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass);
 
   Object intercept(String signature, Object instance, Object[] params, Class theClass) throws Throwable;
@@ -0,0 +1,23 @@
+package org.robolectric.bytecode;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps instrumented class bytes in memory, so class loaders in the same JVM with the same {@link Setup} and SDK
+ * jars only have to instrument each class once between them. Unlike the on-disk cache, it's up to the caller to only
+ * share one between such class loaders.
+ */
+public class InMemoryInstrumentedClassCache extends InstrumentedClassCache {
+  private final ConcurrentMap<String, byte[]> instrumentedClassBytes = new ConcurrentHashMap<String, byte[]>();
+
+  @Override
+  public byte[] get(String className, byte[] origClassBytes) {
+    return instrumentedClassBytes.get(className);
+  }
+
+  @Override
+  public void put(String className, byte[] origClassBytes, byte[] instrumentedClassBytes) {
+    this.instrumentedClassBytes.putIfAbsent(className, instrumentedClassBytes);
+  }
+}
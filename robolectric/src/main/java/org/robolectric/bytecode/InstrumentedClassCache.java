@@ -0,0 +1,205 @@
+package org.robolectric.bytecode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * On-disk, content-addressed store of instrumented class bytes, so that JVMs after the first one can define SDK
+ * classes straight from the cache instead of parsing and rewriting them again.
+ *
+ * Entries live in a subdirectory named for everything instrumentation depends on apart from the class itself:
+ * the instrumenting code, the {@link Setup}, and the contents of the SDK jars. Within it, each entry is keyed by the
+ * hash of the class name and original class bytes, so a change to any of these simply misses the cache. Entry file
+ * names are just that hash, so every class the {@link Setup} instruments can be cached, however long or oddly cased
+ * its name (e.g. anonymous, synthetic or obfuscated classes).
+ */
+public class InstrumentedClassCache {
+  private final File dir;
+
+  public InstrumentedClassCache(File baseDir, Setup setup, URL... urls) {
+    this.dir = new File(baseDir, configurationKey(setup, urls));
+  }
+
+  /**
+   * For subclasses that keep entries somewhere other than on disk.
+   */
+  protected InstrumentedClassCache() {
+    this.dir = null;
+  }
+
+  public byte[] get(String className, byte[] origClassBytes) {
+    File file = fileFor(className, origClassBytes);
+    if (!file.isFile()) return null;
+
+    try {
+      return readBytes(new FileInputStream(file));
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  public void put(String className, byte[] origClassBytes, byte[] instrumentedClassBytes) {
+    File file = fileFor(className, origClassBytes);
+    try {
+      dir.mkdirs();
+
+      // write and rename, so concurrent JVMs never see a partial entry
+      File tmpFile = File.createTempFile("instrumented", ".tmp", dir);
+      FileOutputStream out = new FileOutputStream(tmpFile);
+      try {
+        out.write(instrumentedClassBytes);
+      } finally {
+        out.close();
+      }
+      if (!tmpFile.renameTo(file)) {
+        tmpFile.delete();
+      }
+    } catch (IOException e) {
+      // the cache is only an optimization; we'll instrument this class again next time
+    }
+  }
+
+  File getDirectory() {
+    return dir;
+  }
+
+  private File fileFor(String className, byte[] origClassBytes) {
+    MessageDigest digest = newDigest();
+    update(digest, className);
+    digest.update(origClassBytes);
+    return new File(dir, toHex(digest.digest()) + ".class");
+  }
+
+  private static String configurationKey(Setup setup, URL... urls) {
+    MessageDigest digest = newDigest();
+
+    // the instrumentation code itself, including inner classes like ClassInstrumentor
+    update(digest, classBytes(AsmInstrumentingClassLoader.class));
+    for (Class<?> innerClass : AsmInstrumentingClassLoader.class.getDeclaredClasses()) {
+      update(digest, classBytes(innerClass));
+    }
+
+    for (Class<?> setupClass = setup.getClass(); setupClass != Object.class; setupClass = setupClass.getSuperclass()) {
+      update(digest, setupClass.getName());
+      update(digest, classBytes(setupClass));
+    }
+    update(digest, String.valueOf(setup.shouldUseInvokeDynamic()));
+    update(digest, new TreeSet<String>(asStrings(setup.methodsToIntercept())).toString());
+    update(digest, new TreeMap<String, String>(setup.classNameTranslations()).toString());
+
+    for (URL url : urls) {
+      update(digest, url.toString());
+      File file = toFile(url);
+      if (file != null) {
+        update(digest, contentHash(file));
+      }
+    }
+
+    return toHex(digest.digest());
+  }
+
+  private static TreeSet<String> asStrings(Iterable<?> objects) {
+    TreeSet<String> strings = new TreeSet<String>();
+    for (Object object : objects) {
+      strings.add(object.toString());
+    }
+    return strings;
+  }
+
+  private static byte[] classBytes(Class<?> clazz) {
+    ClassLoader classLoader = clazz.getClassLoader();
+    InputStream in = classLoader == null ? null : classLoader.getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+    if (in == null) return new byte[0];
+
+    try {
+      return readBytes(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // the contents rather than the length and mtime, which a rebuilt jar can keep
+  private static byte[] contentHash(File file) {
+    MessageDigest digest = newDigest();
+    try {
+      updateWithContents(digest, file);
+    } catch (IOException e) {
+      throw new RuntimeException("couldn't read " + file, e);
+    }
+    return digest.digest();
+  }
+
+  private static void updateWithContents(MessageDigest digest, File file) throws IOException {
+    if (file.isDirectory()) {
+      String[] names = file.list();
+      if (names == null) return;
+      Arrays.sort(names);
+      for (String name : names) {
+        update(digest, name);
+        updateWithContents(digest, new File(file, name));
+      }
+    } else if (file.isFile()) {
+      InputStream in = new FileInputStream(file);
+      try {
+        byte[] buf = new byte[8192];
+        int count;
+        while ((count = in.read(buf)) != -1) {
+          digest.update(buf, 0, count);
+        }
+      } finally {
+        in.close();
+      }
+      digest.update((byte) 0);
+    }
+  }
+
+  private static File toFile(URL url) {
+    if (!"file".equals(url.getProtocol())) return null;
+
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException e) {
+      return null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    update(digest, value.getBytes());
+  }
+
+  private static void update(MessageDigest digest, byte[] bytes) {
+    digest.update(bytes);
+    digest.update((byte) 0);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 algorithm is not available: " + e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder buf = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+      buf.append(Character.forDigit(b & 0xf, 16));
+    }
+    return buf.toString();
+  }
+}
@@ -0,0 +1,28 @@
+package org.robolectric.bytecode;
+
+import org.robolectric.util.Function;
+
+/**
+ * Stands in for calls to methods that instrumented code mustn't make for real. Calls only reach an interceptor
+ * if {@link Setup#methodsToIntercept()} has the instrumenting class loader rewrite them.
+ */
+public abstract class Interceptor {
+  private final Setup.MethodRef[] methodRefs;
+
+  public Interceptor(Setup.MethodRef... methodRefs) {
+    this.methodRefs = methodRefs;
+  }
+
+  /**
+   * The methods this interceptor handles. A method name of {@code "*"} matches every method of the class.
+   */
+  public Setup.MethodRef[] getMethodRefs() {
+    return methodRefs;
+  }
+
+  /**
+   * Returns the handler to run in place of calls to the given method. It's asked for once per intercepted
+   * signature, and the handler is then used for every call.
+   */
+  public abstract Function<Object, Object> handle(MethodSignature methodSignature);
+}
@@ -0,0 +1,150 @@
+package org.robolectric.bytecode;
+
+import android.content.Context;
+import org.robolectric.shadows.ShadowWindow;
+import org.robolectric.util.Function;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+
+/**
+ * The {@link Interceptor}s a {@link ShadowWrangler} hands intercepted calls to, looked up by class and method name.
+ */
+public class Interceptors {
+  private final Map<Setup.MethodRef, Interceptor> interceptors = new HashMap<Setup.MethodRef, Interceptor>();
+
+  public Interceptors(Interceptor... interceptors) {
+    this(asList(interceptors));
+  }
+
+  public Interceptors(Collection<Interceptor> interceptors) {
+    for (Interceptor interceptor : interceptors) {
+      for (Setup.MethodRef methodRef : interceptor.getMethodRefs()) {
+        this.interceptors.put(methodRef, interceptor);
+      }
+    }
+  }
+
+  public static Interceptors getDefault() {
+    return new Interceptors(
+        new LinkedHashMapEldestInterceptor(),
+        new PolicyManagerMakeNewWindowInterceptor(),
+        new SystemTimeInterceptor());
+  }
+
+  public Interceptor findInterceptor(String className, String methodName) {
+    Interceptor interceptor = interceptors.get(new Setup.MethodRef(className, methodName));
+    if (interceptor == null) {
+      interceptor = interceptors.get(new Setup.MethodRef(className, "*"));
+    }
+    return interceptor;
+  }
+
+  public Function<Object, Object> getInterceptionHandler(MethodSignature methodSignature) {
+    Interceptor interceptor = findInterceptor(methodSignature.className, methodSignature.methodName);
+    return interceptor == null ? ShadowWrangler.DO_NOTHING_HANDLER : interceptor.handle(methodSignature);
+  }
+
+  public static class LinkedHashMapEldestInterceptor extends Interceptor {
+    public LinkedHashMapEldestInterceptor() {
+      super(new Setup.MethodRef(LinkedHashMap.class, "eldest"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          LinkedHashMap map = (LinkedHashMap) value;
+          return map.isEmpty() ? null : map.entrySet().iterator().next();
+        }
+      };
+    }
+  }
+
+  public static class PolicyManagerMakeNewWindowInterceptor extends Interceptor {
+    public PolicyManagerMakeNewWindowInterceptor() {
+      super(new Setup.MethodRef("com.android.internal.policy.PolicyManager", "makeNewWindow"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          ClassLoader cl = theClass.getClassLoader();
+          Class<?> shadowWindowClass;
+
+          try {
+            shadowWindowClass = cl.loadClass(ShadowWindow.class.getName());
+          } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+          }
+
+          Class<?> activityClass;
+
+          try {
+            activityClass = cl.loadClass(Context.class.getName());
+          } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+          }
+
+          Object context = params[0];
+          return ReflectionHelpers.callStaticMethodReflectively(shadowWindowClass, "create", new ReflectionHelpers.ClassParameter(activityClass, context));
+        }
+      };
+    }
+  }
+
+  /**
+   * Sends {@code System.nanoTime()} and {@code System.currentTimeMillis()} to {@code ShadowSystemClock}, looking
+   * the method up once per class loader rather than on every call.
+   */
+  public static class SystemTimeInterceptor extends Interceptor {
+    public SystemTimeInterceptor() {
+      super(new Setup.MethodRef(System.class, "nanoTime"), new Setup.MethodRef(System.class, "currentTimeMillis"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(final MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        private volatile Method shadowMethod;
+
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          Method method = shadowMethod;
+          if (method == null || method.getDeclaringClass().getClassLoader() != theClass.getClassLoader()) {
+            shadowMethod = method = findShadowMethod(theClass.getClassLoader(), methodSignature.methodName);
+          }
+
+          try {
+            return method.invoke(null);
+          } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+          } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+          }
+        }
+      };
+    }
+
+    private static Method findShadowMethod(ClassLoader cl, String methodName) {
+      try {
+        Method method = cl.loadClass("org.robolectric.shadows.ShadowSystemClock").getDeclaredMethod(methodName);
+        method.setAccessible(true);
+        return method;
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
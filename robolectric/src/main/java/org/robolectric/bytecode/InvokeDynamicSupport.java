@@ -0,0 +1,157 @@
+package org.robolectric.bytecode;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.explicitCastArguments;
+import static java.lang.invoke.MethodHandles.filterArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodHandles.permuteArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Bootstraps the invokedynamic call sites emitted by {@link AsmInstrumentingClassLoader} when
+ * {@link Setup#shouldUseInvokeDynamic()} is on.
+ *
+ * Each call site asks the current {@link ClassHandler} for a {@link ClassHandler.Plan} the first time it's hit,
+ * then links straight to the shadow method (or the original code) with a {@link MethodHandle}, so hot calls
+ * avoid the signature lookup, argument boxing and reflection. A call site relinks itself whenever a different
+ * ClassHandler is injected.
+ */
+public class InvokeDynamicSupport {
+  private static final MethodHandle IS_LINKED_AGAINST;
+  private static final MethodHandle FALLBACK;
+  private static final MethodHandle PLAN_RUN;
+  private static final MethodHandle DO_NOTHING;
+
+  static {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      IS_LINKED_AGAINST = lookup.findStatic(InvokeDynamicSupport.class, "isLinkedAgainst", methodType(boolean.class, ClassHandler.class));
+      FALLBACK = lookup.findVirtual(RoboCallSite.class, "fallback", methodType(Object.class, Object[].class));
+      PLAN_RUN = lookup.findVirtual(ClassHandler.Plan.class, "run", methodType(Object.class, Object.class, Object.class, Object[].class));
+      DO_NOTHING = lookup.findStatic(InvokeDynamicSupport.class, "doNothing", methodType(void.class));
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  public static CallSite bootstrap(MethodHandles.Lookup caller, String methodName, MethodType type, String signature, int isStatic) {
+    return new RoboCallSite(caller, methodName, type, signature, isStatic != 0);
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private static boolean isLinkedAgainst(ClassHandler classHandler) {
+    return RobolectricInternals.getClassHandler() == classHandler;
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private static void doNothing() {
+  }
+
+  private static class RoboCallSite extends MutableCallSite {
+    private final MethodHandles.Lookup caller;
+    private final String methodName;
+    private final String signature;
+    private final boolean isStatic;
+    private final MethodHandle fallback;
+
+    public RoboCallSite(MethodHandles.Lookup caller, String methodName, MethodType type, String signature, boolean isStatic) {
+      super(type);
+      this.caller = caller;
+      this.methodName = methodName;
+      this.signature = signature;
+      this.isStatic = isStatic;
+      this.fallback = FALLBACK.bindTo(this).asCollector(Object[].class, type.parameterCount()).asType(type);
+      setTarget(fallback);
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public Object fallback(Object[] args) throws Throwable {
+      MethodHandle target = link();
+      setTarget(target);
+      return target.invokeWithArguments(args);
+    }
+
+    private MethodHandle link() throws NoSuchMethodException, IllegalAccessException {
+      ClassHandler classHandler = RobolectricInternals.getClassHandler();
+      ClassHandler.Plan plan = classHandler.methodInvoked(signature, isStatic, caller.lookupClass());
+      MethodHandle test = dropArguments(IS_LINKED_AGAINST.bindTo(classHandler), 0, type().parameterList());
+      return guardWithTest(test, targetFor(plan), fallback);
+    }
+
+    private MethodHandle targetFor(ClassHandler.Plan plan) throws NoSuchMethodException, IllegalAccessException {
+      if (plan == ShadowWrangler.CALL_REAL_CODE_PLAN) {
+        return realCode();
+      } else if (plan == ShadowWrangler.DO_NOTHING_PLAN) {
+        return dropArguments(zero(type().returnType()), 0, type().parameterList());
+      } else if (plan instanceof ShadowWrangler.ShadowMethodPlan) {
+        return shadowMethod(((ShadowWrangler.ShadowMethodPlan) plan).getShadowMethod());
+      } else {
+        return runPlan(plan);
+      }
+    }
+
+    private MethodHandle realCode() throws NoSuchMethodException, IllegalAccessException {
+      Class<?> callerClass = caller.lookupClass();
+      String directMethodName = RobolectricInternals.directMethodName(callerClass.getName(), methodName);
+      if (isStatic) {
+        return caller.findStatic(callerClass, directMethodName, type());
+      } else {
+        return caller.findSpecial(callerClass, directMethodName, type().dropParameterTypes(0, 1), callerClass);
+      }
+    }
+
+    private MethodHandle shadowMethod(Method shadowMethod) throws NoSuchMethodException, IllegalAccessException {
+      shadowMethod.setAccessible(true);
+      MethodHandle handle = caller.unreflect(shadowMethod);
+      if (Modifier.isStatic(shadowMethod.getModifiers())) {
+        if (!isStatic) {
+          handle = dropArguments(handle, 0, type().parameterType(0));
+        }
+      } else {
+        handle = handle.asType(handle.type().changeParameterType(0, Object.class));
+        if (isStatic) {
+          handle = insertArguments(handle, 0, (Object) null);
+        } else {
+          handle = filterArguments(handle, 0, getRoboData());
+        }
+      }
+      return explicitCastArguments(handle, type());
+    }
+
+    private MethodHandle runPlan(ClassHandler.Plan plan) throws NoSuchMethodException, IllegalAccessException {
+      MethodHandle handle = PLAN_RUN.bindTo(plan);
+      if (isStatic) {
+        handle = insertArguments(handle, 0, null, null);
+      } else {
+        handle = filterArguments(handle, 1, getRoboData().asType(methodType(Object.class, Object.class)));
+        handle = permuteArguments(handle, methodType(Object.class, Object.class, Object[].class), 0, 0, 1);
+      }
+      int paramCount = type().parameterCount() - (isStatic ? 0 : 1);
+      return explicitCastArguments(handle.asCollector(Object[].class, paramCount), type());
+    }
+
+    private MethodHandle getRoboData() throws NoSuchMethodException, IllegalAccessException {
+      return caller.findVirtual(caller.lookupClass(), AsmInstrumentingClassLoader.GET_ROBO_DATA_METHOD_NAME, methodType(Object.class));
+    }
+
+    private MethodHandle zero(Class<?> returnType) {
+      if (returnType == void.class) {
+        return DO_NOTHING;
+      }
+      // a null reference is converted to zero, false, etc. for primitive return types
+      return explicitCastArguments(MethodHandles.constant(Object.class, null), methodType(returnType));
+    }
+  }
+}
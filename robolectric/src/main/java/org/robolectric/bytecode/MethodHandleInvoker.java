@@ -0,0 +1,76 @@
+package org.robolectric.bytecode;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Calls a {@code (Object)Object} {@link MethodHandle} with {@code invokeExact}, without spreading its argument
+ * into an array.
+ *
+ * At this source level javac doesn't treat {@code invokeExact} as signature polymorphic, and compiles every call
+ * to take an {@code Object[]}; so the one implementation is generated, once, with the exact call in its bytecode.
+ * Only loaded on Java 7 and later.
+ */
+public abstract class MethodHandleInvoker {
+  private static final String GENERATED_CLASS_NAME = MethodHandleInvoker.class.getName() + "$Generated";
+
+  public static final MethodHandleInvoker INSTANCE = generate();
+
+  protected MethodHandleInvoker() {
+  }
+
+  public abstract Object invokeExact(MethodHandle handle, Object arg) throws Throwable;
+
+  private static MethodHandleInvoker generate() {
+    String internalName = GENERATED_CLASS_NAME.replace('.', '/');
+    String superName = Type.getInternalName(MethodHandleInvoker.class);
+    String handleName = Type.getInternalName(MethodHandle.class);
+
+    ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    classWriter.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, internalName, null, superName, null);
+
+    MethodVisitor constructor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(Opcodes.ALOAD, 0);
+    constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+    constructor.visitInsn(Opcodes.RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+
+    MethodVisitor invoke = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "invokeExact",
+        "(L" + handleName + ";Ljava/lang/Object;)Ljava/lang/Object;", null, new String[] {"java/lang/Throwable"});
+    invoke.visitCode();
+    invoke.visitVarInsn(Opcodes.ALOAD, 1);
+    invoke.visitVarInsn(Opcodes.ALOAD, 2);
+    invoke.visitMethodInsn(Opcodes.INVOKEVIRTUAL, handleName, "invokeExact", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+    invoke.visitInsn(Opcodes.ARETURN);
+    invoke.visitMaxs(0, 0);
+    invoke.visitEnd();
+
+    classWriter.visitEnd();
+
+    try {
+      Class<?> generatedClass = new GeneratingClassLoader(MethodHandleInvoker.class.getClassLoader())
+          .define(GENERATED_CLASS_NAME, classWriter.toByteArray());
+      return (MethodHandleInvoker) generatedClass.newInstance();
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static class GeneratingClassLoader extends ClassLoader {
+    GeneratingClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String className, byte[] bytes) {
+      return defineClass(className, bytes, 0, bytes.length);
+    }
+  }
+}
@@ -2,11 +2,22 @@ package org.robolectric.bytecode;
 
 import org.robolectric.util.ReflectionHelpers;
 
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class RobolectricInternals {
   public static final String ROBO_PREFIX = "$$robo$$";
+  /** Passed to {@link #intercept} for intercepted calls without arguments, so they don't allocate an array. */
+  public static final Object[] NO_PARAMS = new Object[0];
 
   @SuppressWarnings("UnusedDeclaration")
   private static ClassHandler classHandler; // initialized via magic by SdkEnvironment
+  private static final Map<Class<?>, Field> dataFields = new ConcurrentHashMap<Class<?>, Field>();
+
+  static ClassHandler getClassHandler() {
+    return classHandler;
+  }
 
   @SuppressWarnings("UnusedDeclaration")
   public static void classInitializing(Class clazz) throws Exception {
@@ -18,6 +29,39 @@ public class RobolectricInternals {
     return classHandler.initializing(instance);
   }
 
+  /**
+   * Creates and stores the shadow of an instance whose shadow was put off, unless another thread got there first,
+   * so an instance never ends up with two shadows.
+   *
+   * The lock is the instance itself, so only threads creating the same instance's shadow wait for each other.
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  public static Object createShadowFor(Object instance) throws Exception {
+    Field dataField = getDataField(instance.getClass());
+    Object shadow = dataField.get(instance);
+    if (shadow != null) return shadow;
+
+    synchronized (instance) {
+      shadow = dataField.get(instance);
+      if (shadow == null) {
+        shadow = classHandler.createShadowFor(instance);
+        dataField.set(instance, shadow);
+      }
+      return shadow;
+    }
+  }
+
+  private static Field getDataField(Class<?> clazz) throws NoSuchFieldException {
+    Field dataField = dataFields.get(clazz);
+    if (dataField == null) {
+      // the nearest instrumented class's field, the one its $$robo$getData reads
+      dataField = clazz.getField(InstrumentingClassLoader.CLASS_HANDLER_DATA_FIELD_NAME);
+      dataField.setAccessible(true);
+      dataFields.put(clazz, dataField);
+    }
+    return dataField;
+  }
+
   @SuppressWarnings("UnusedDeclaration")
   public static ClassHandler.Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
     return classHandler.methodInvoked(signature, isStatic, theClass);
@@ -37,6 +37,7 @@ public class Setup {
       TestLifecycle.class,
       RealObject.class,
       ShadowWrangler.class,
+      ShadowWrangler.ShadowMethodPlan.class,
       AndroidManifest.class,
       R.class,
 
@@ -90,6 +91,15 @@ public class Setup {
         || className.startsWith("org.apache.http.impl.client.DefaultRequestDirector");
   }
 
+  /**
+   * Whether instrumented methods should dispatch through invokedynamic call sites linked directly to shadow
+   * methods (see {@link InvokeDynamicSupport}), rather than looking up and running a {@link ClassHandler.Plan}
+   * on every call. Requires Java 7 or newer. Turn it on with {@code -Drobolectric.invokedynamic=true}.
+   */
+  public boolean shouldUseInvokeDynamic() {
+    return Boolean.getBoolean("robolectric.invokedynamic");
+  }
+
   public boolean shouldAcquire(String name) {
     // the org.robolectric.res and org.robolectric.manifest packages live in the base classloader, but not its tests; yuck.
     int lastDot = name.lastIndexOf('.');
@@ -0,0 +1,157 @@
+package org.robolectric.bytecode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shadow classes and their public methods, as listed by the index robolectric-processor generates alongside
+ * {@code Shadows}. Lets {@link ShadowMap} and {@link ShadowWrangler} find shadows and rule out missing shadow
+ * methods without speculatively loading classes or catching {@link NoSuchMethodException}s.
+ *
+ * When there's an index, {@link ShadowMap} takes its word on which classes have shadows named by convention, so
+ * shadows compiled without the processor have to be registered with the ShadowMap. Method lookups still only take
+ * "definitely not there" from it; methods of shadows it doesn't know about are looked up reflectively.
+ */
+public class ShadowIndex {
+  public static final String INDEX_PATH = "META-INF/robolectric/shadows.index";
+
+  private static final List<String> OBJECT_METHOD_NAMES = Arrays.asList(
+      "equals", "hashCode", "toString", "getClass", "notify", "notifyAll", "wait");
+
+  private final Map<String, Entry> entries;
+
+  private ShadowIndex(Map<String, Entry> entries) {
+    this.entries = entries;
+  }
+
+  public static ShadowIndex getDefault() {
+    return DefaultIndexHolder.DEFAULT_INDEX;
+  }
+
+  public static ShadowIndex load(ClassLoader classLoader) {
+    Map<String, Entry> entries = new HashMap<String, Entry>();
+    try {
+      Enumeration<URL> resources = classLoader.getResources(INDEX_PATH);
+      while (resources.hasMoreElements()) {
+        InputStream inputStream = resources.nextElement().openStream();
+        try {
+          read(new InputStreamReader(inputStream, "UTF-8"), entries);
+        } finally {
+          inputStream.close();
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("couldn't read " + INDEX_PATH, e);
+    }
+    return new ShadowIndex(entries);
+  }
+
+  public static ShadowIndex read(Reader reader) throws IOException {
+    Map<String, Entry> entries = new HashMap<String, Entry>();
+    read(reader, entries);
+    return new ShadowIndex(entries);
+  }
+
+  private static void read(Reader reader, Map<String, Entry> entries) throws IOException {
+    BufferedReader bufferedReader = new BufferedReader(reader);
+    Entry entry = null;
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      if (line.startsWith(" ")) {
+        if (entry != null) entry.methods.add(line.trim());
+        continue;
+      }
+
+      String[] fields = line.split(" ");
+      if (fields.length != 7 || entries.containsKey(fields[0])) {
+        // earlier entries win, just like classes on the classpath
+        entry = null;
+        continue;
+      }
+      ShadowConfig shadowConfig = new ShadowConfig(fields[0], Boolean.parseBoolean(fields[3]),
+          Boolean.parseBoolean(fields[4]), Boolean.parseBoolean(fields[5]));
+      entry = new Entry(fields[1], fields[2], shadowConfig, Boolean.parseBoolean(fields[6]));
+      entries.put(fields[0], entry);
+    }
+  }
+
+  /**
+   * Returns true if no index was found, e.g. because the shadows weren't built with robolectric-processor.
+   */
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  public boolean contains(String shadowClassName) {
+    return entries.containsKey(shadowClassName);
+  }
+
+  /**
+   * Returns the config for the given shadow class, or null if it isn't indexed or doesn't shadow the given class.
+   */
+  public ShadowConfig getShadowConfig(String shadowClassName, String shadowedClassName) {
+    Entry entry = entries.get(shadowClassName);
+    return entry != null && entry.shadowedClassName.equals(shadowedClassName) ? entry.shadowConfig : null;
+  }
+
+  /**
+   * Returns false if the index shows that {@link Class#getMethod(String, Class[])} can't find the given method
+   * on the shadow class or its superclasses, and true if it might.
+   */
+  public boolean mayHaveMethod(String shadowClassName, String methodName, String... paramTypes) {
+    String methodKey = methodKey(methodName, paramTypes);
+    String className = shadowClassName;
+    while (!className.equals(Object.class.getName())) {
+      Entry entry = entries.get(className);
+      if (entry == null || entry.isAbstract) {
+        // not indexed, or might inherit abstract methods from interfaces
+        return true;
+      }
+      if (entry.methods.contains(methodKey)) {
+        return true;
+      }
+      className = entry.superclassName;
+    }
+    return OBJECT_METHOD_NAMES.contains(methodName);
+  }
+
+  private static String methodKey(String methodName, String[] paramTypes) {
+    StringBuilder buf = new StringBuilder();
+    buf.append(methodName).append('(');
+    for (int i = 0; i < paramTypes.length; i++) {
+      if (i > 0) buf.append(',');
+      buf.append(paramTypes[i]);
+    }
+    return buf.append(')').toString();
+  }
+
+  private static class DefaultIndexHolder {
+    private static final ShadowIndex DEFAULT_INDEX = load(ShadowIndex.class.getClassLoader());
+  }
+
+  private static class Entry {
+    private final String shadowedClassName;
+    private final String superclassName;
+    private final ShadowConfig shadowConfig;
+    private final boolean isAbstract;
+    private final Set<String> methods = new HashSet<String>();
+
+    Entry(String shadowedClassName, String superclassName, ShadowConfig shadowConfig, boolean isAbstract) {
+      this.shadowedClassName = shadowedClassName;
+      this.superclassName = superclassName;
+      this.shadowConfig = shadowConfig;
+      this.isAbstract = isAbstract;
+    }
+  }
+}
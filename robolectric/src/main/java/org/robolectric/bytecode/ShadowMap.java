@@ -14,9 +14,15 @@ public class ShadowMap {
   private static final Set<String> unloadableClassNames = new HashSet<String>();
 
   private final Map<String, ShadowConfig> map;
+  private final ShadowIndex shadowIndex;
 
   ShadowMap(Map<String, ShadowConfig> map) {
+    this(map, ShadowIndex.getDefault());
+  }
+
+  ShadowMap(Map<String, ShadowConfig> map, ShadowIndex shadowIndex) {
     this.map = new HashMap<String, ShadowConfig>(map);
+    this.shadowIndex = shadowIndex;
   }
 
   private static void warnAbout(String unloadableClassName) {
@@ -82,6 +88,11 @@ public class ShadowMap {
     ClassLoader classLoader = clazz.getClassLoader();
     if (shadowConfig == null && classLoader != null) {
       String shadowClassName = convertToShadowName(className);
+      if (!shadowIndex.isEmpty()) {
+        // the index lists every shadow named by convention, so a miss means there's none; others are registered
+        return shadowIndex.getShadowConfig(shadowClassName, className);
+      }
+
       Class<?> shadowClass;
       try {
         shadowClass = classLoader.loadClass(shadowClassName);
@@ -99,7 +110,7 @@ public class ShadowMap {
   public static String convertToShadowName(String className) {
     String shadowClassName =
         "org.robolectric.shadows.Shadow" + className.substring(className.lastIndexOf(".") + 1);
-    shadowClassName = shadowClassName.replaceAll("\\$", "\\$Shadow");
+    shadowClassName = shadowClassName.replace("$", "$Shadow");
     return shadowClassName;
   }
 
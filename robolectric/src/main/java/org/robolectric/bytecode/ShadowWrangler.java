@@ -1,15 +1,16 @@
 package org.robolectric.bytecode;
 
-import android.content.Context;
 import org.robolectric.SdkConfig;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
-import org.robolectric.util.ReflectionHelpers;
-import org.robolectric.shadows.ShadowWindow;
 import org.robolectric.util.Function;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ShadowWrangler implements ClassHandler {
   public static final Function<Object, Object> DO_NOTHING_HANDLER = new Function<Object, Object>() {
@@ -25,30 +26,60 @@ public class ShadowWrangler implements ClassHandler {
     }
   };
   public static final Plan CALL_REAL_CODE_PLAN = null;
+  private static final Plan CALL_REAL_CODE_PLAN_MARKER = new Plan() {
+    @Override
+    public Object run(Object instance, Object roboData, Object[] params) throws Exception {
+      throw new IllegalStateException("marker plan should never be run");
+    }
+  };
+  /**
+   * When true, shadows aren't created along with their instances but on first use, by a shadowed method or by
+   * {@code shadowOf}, so objects that never touch their shadows don't pay for one.
+   *
+   * A lazy shadow is constructed on whichever thread first uses it, and only then. Shadows that capture anything
+   * from the moment their instance is made, such as the current thread, should do it in a {@code __constructor__}
+   * matching the real constructor, which makes the shadow be created along with its instance.
+   */
+  public static final String LAZY_SHADOWS_PROPERTY = "robolectric.lazyShadows";
   private static final boolean STRIP_SHADOW_STACK_TRACES = true;
+  private static final boolean METHOD_HANDLES_AVAILABLE = isMethodHandleAvailable();
   private static final ShadowConfig NO_SHADOW_CONFIG = new ShadowConfig(Object.class.getName(), true, false, false);
   public boolean debug = false;
 
   private final ShadowMap shadowMap;
-  private final Map<Class, MetaShadow> metaShadowMap = new HashMap<Class, MetaShadow>();
-  private final Map<String, Plan> planCache = new LinkedHashMap<String, Plan>() {
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
-      return size() > 500;
-    }
-  };
-  private final Map<Class, ShadowConfig> shadowConfigCache = new HashMap<Class, ShadowConfig>();
+  private final ShadowIndex shadowIndex;
+  // one factory per instrumented class that's instantiated, so shadow lookup and reflection happen once per class
+  private final ConcurrentHashMap<Class, ShadowFactory> shadowFactories = new ConcurrentHashMap<Class, ShadowFactory>();
+  // Plans only depend on the signature and the ShadowMap, and there's one entry per instrumented method
+  // actually invoked, so the table never needs eviction; reads don't take a lock.
+  private final ConcurrentHashMap<String, Plan> planCache = new ConcurrentHashMap<String, Plan>();
+  private final ConcurrentHashMap<Class, ShadowConfig> shadowConfigCache = new ConcurrentHashMap<Class, ShadowConfig>();
+  // like plans, one handler per intercepted signature, so intercepted calls don't parse or match signatures
+  private final ConcurrentHashMap<String, Function<Object, Object>> interceptionHandlers = new ConcurrentHashMap<String, Function<Object, Object>>();
+  private final Interceptors interceptors;
   private final SdkConfig sdkConfig;
+  private final boolean lazyShadows;
 
   public ShadowWrangler(ShadowMap shadowMap, SdkConfig sdkConfig) {
+    this(shadowMap, sdkConfig, Boolean.getBoolean(LAZY_SHADOWS_PROPERTY));
+  }
+
+  public ShadowWrangler(ShadowMap shadowMap, SdkConfig sdkConfig, boolean lazyShadows) {
+    this(shadowMap, sdkConfig, Interceptors.getDefault(), lazyShadows);
+  }
+
+  public ShadowWrangler(ShadowMap shadowMap, SdkConfig sdkConfig, Interceptors interceptors, boolean lazyShadows) {
     this.shadowMap = shadowMap;
+    this.interceptors = interceptors;
+    this.shadowIndex = ShadowIndex.getDefault();
     this.sdkConfig = sdkConfig;
+    this.lazyShadows = lazyShadows;
   }
 
   @Override
   public void classInitializing(Class clazz) {
     Class<?> shadowClass = findDirectShadowClass(clazz);
-    if (shadowClass != null) {
+    if (shadowClass != null && shadowIndex.mayHaveMethod(shadowClass.getName(), InstrumentingClassLoader.STATIC_INITIALIZER_METHOD_NAME)) {
       try {
         Method method = shadowClass.getMethod(InstrumentingClassLoader.STATIC_INITIALIZER_METHOD_NAME);
         if (!Modifier.isStatic(method.getModifiers())) {
@@ -70,16 +101,19 @@ public class ShadowWrangler implements ClassHandler {
 
   @Override
   public Object initializing(Object instance) {
-    return createShadowFor(instance);
+    return lazyShadows ? null : createShadowFor(instance);
   }
 
   @Override
-  synchronized public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
+  public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
     if (debug) System.out.println("[DEBUG] " + signature);
-    if (planCache.containsKey(signature)) return planCache.get(signature);
-    Plan plan = calculatePlan(signature, isStatic, theClass);
-    planCache.put(signature, plan);
-    return plan;
+    Plan plan = planCache.get(signature);
+    if (plan == null) {
+      plan = calculatePlan(signature, isStatic, theClass);
+      Plan existing = planCache.putIfAbsent(signature, plan == CALL_REAL_CODE_PLAN ? CALL_REAL_CODE_PLAN_MARKER : plan);
+      if (existing != null) plan = existing;
+    }
+    return plan == CALL_REAL_CODE_PLAN_MARKER ? CALL_REAL_CODE_PLAN : plan;
   }
 
   private Plan calculatePlan(String signature, boolean isStatic, Class<?> theClass) {
@@ -103,14 +137,21 @@ public class ShadowWrangler implements ClassHandler {
       try {
         final ClassLoader classLoader = theClass.getClassLoader();
         final Class<?> shadowClass = classLoader.loadClass(shadowConfig.shadowClassName);
-        Method shadowMethod = getShadowedMethod(invocationProfile, classLoader, shadowClass);
+        Method shadowMethod = null;
+        if (shadowIndex.mayHaveMethod(shadowConfig.shadowClassName, invocationProfile.methodName, invocationProfile.paramTypes)) {
+          shadowMethod = getShadowedMethod(invocationProfile, classLoader, shadowClass);
+        }
 
         if (shadowMethod == null && shadowConfig.looseSignatures) {
           Class[] paramTypes = new Class[invocationProfile.paramTypes.length];
+          String[] paramTypeNames = new String[paramTypes.length];
           for (int i = 0; i < paramTypes.length; i++) {
             paramTypes[i] = Object.class;
+            paramTypeNames[i] = Object.class.getName();
+          }
+          if (shadowIndex.mayHaveMethod(shadowConfig.shadowClassName, invocationProfile.methodName, paramTypeNames)) {
+            shadowMethod = getMethod(shadowClass, invocationProfile.methodName, paramTypes);
           }
-          shadowMethod = getMethod(shadowClass, invocationProfile.methodName, paramTypes);
         }
 
         if (shadowMethod == null) {
@@ -143,11 +184,11 @@ public class ShadowWrangler implements ClassHandler {
     }
   }
 
-  synchronized private ShadowConfig getShadowConfig(Class clazz) {
+  private ShadowConfig getShadowConfig(Class clazz) {
     ShadowConfig shadowConfig = shadowConfigCache.get(clazz);
     if (shadowConfig == null) {
       shadowConfig = shadowMap.get(clazz);
-      shadowConfigCache.put(clazz, shadowConfig == null ? NO_SHADOW_CONFIG : shadowConfig);
+      shadowConfigCache.putIfAbsent(clazz, shadowConfig == null ? NO_SHADOW_CONFIG : shadowConfig);
       return shadowConfig;
     } else {
       return (shadowConfig == NO_SHADOW_CONFIG) ? null : shadowConfig;
@@ -203,69 +244,22 @@ public class ShadowWrangler implements ClassHandler {
 
   @Override
   public Object intercept(String signature, Object instance, Object[] params, Class theClass) throws Throwable {
-    MethodSignature methodSignature = MethodSignature.parse(signature);
+    Function<Object, Object> handler = interceptionHandlers.get(signature);
+    if (handler == null) {
+      handler = getInterceptionHandler(MethodSignature.parse(signature));
+      Function<Object, Object> existing = interceptionHandlers.putIfAbsent(signature, handler);
+      if (existing != null) handler = existing;
+    }
 
     if (debug) {
-      System.out.println("DEBUG: intercepted call to " + methodSignature);
+      System.out.println("DEBUG: intercepted call to " + MethodSignature.parse(signature));
     }
 
-    return getInterceptionHandler(methodSignature).call(theClass, instance, params);
+    return handler.call(theClass, instance, params);
   }
 
-  public Function<Object, Object> getInterceptionHandler(final MethodSignature methodSignature) {
-    // todo: move these somewhere else!
-    if (methodSignature.matches(LinkedHashMap.class.getName(), "eldest")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          LinkedHashMap map = (LinkedHashMap) value;
-          return map.isEmpty() ? null : map.entrySet().iterator().next();
-        }
-      };
-    } else if (methodSignature.matches("com.android.internal.policy.PolicyManager", "makeNewWindow")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          ClassLoader cl = theClass.getClassLoader();
-          Class<?> shadowWindowClass;
-
-          try {
-            shadowWindowClass = cl.loadClass(ShadowWindow.class.getName());
-          } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-          }
-
-          Class<?> activityClass;
-
-          try {
-            activityClass = cl.loadClass(Context.class.getName());
-          } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-          }
-
-          Object context = params[0];
-          return ReflectionHelpers.callStaticMethodReflectively(shadowWindowClass, "create", new ReflectionHelpers.ClassParameter(activityClass, context));
-        }
-      };
-    } else if (methodSignature.matches("java.lang.System", "nanoTime")
-        || methodSignature.matches("java.lang.System", "currentTimeMillis")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          ClassLoader cl = theClass.getClassLoader();
-          Class<?> shadowSystemClockClass;
-          try {
-            shadowSystemClockClass = cl.loadClass("org.robolectric.shadows.ShadowSystemClock");
-          } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-          }
-
-          return ReflectionHelpers.callStaticMethodReflectively(shadowSystemClockClass, methodSignature.methodName);
-        }
-      };
-    }
-
-    return ShadowWrangler.DO_NOTHING_HANDLER;
+  public Function<Object, Object> getInterceptionHandler(MethodSignature methodSignature) {
+    return interceptors.getInterceptionHandler(methodSignature);
   }
 
   @Override
@@ -302,7 +296,11 @@ public class ShadowWrangler implements ClassHandler {
           }
         }
 
-        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.")) {
+        if (className.startsWith(InvokeDynamicSupport.class.getName())) {
+          continue;
+        }
+
+        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.") || className.startsWith("java.lang.invoke.")) {
           continue;
         }
 
@@ -343,41 +341,22 @@ public class ShadowWrangler implements ClassHandler {
     return clazz;
   }
 
+  @Override
   public Object createShadowFor(Object instance) {
-    Object shadow;
-
-    String shadowClassName = getShadowClassName(instance);
-
-    if (shadowClassName == null) return new Object();
-
-    if (debug)
-      System.out.println("creating new " + shadowClassName + " as shadow for " + instance.getClass().getName());
-    try {
-      Class<?> shadowClass = loadClass(shadowClassName, instance.getClass().getClassLoader());
-      Constructor<?> instanceConstructor = findInstanceConstructor(instance, shadowClass);
-      Constructor<?> sdkConfigConstructor = findSdkConfigConstructor(shadowClass);
-      if (instanceConstructor != null) {
-        shadow = instanceConstructor.newInstance(instance);
-      } else if (sdkConfigConstructor != null) {
-        shadow = sdkConfigConstructor.newInstance(sdkConfig);
-      } else {
-        shadow = shadowClass.newInstance();
-      }
-
-      injectRealObjectOn(shadow, shadowClass, instance);
+    return getShadowFactory(instance.getClass()).newShadow(instance);
+  }
 
-      return shadow;
-    } catch (InstantiationException e) {
-      throw new RuntimeException(e);
-    } catch (IllegalAccessException e) {
-      throw new RuntimeException(e);
-    } catch (InvocationTargetException e) {
-      throw new RuntimeException(e);
+  private ShadowFactory getShadowFactory(Class<?> instanceClass) {
+    ShadowFactory shadowFactory = shadowFactories.get(instanceClass);
+    if (shadowFactory == null) {
+      shadowFactory = new ShadowFactory(instanceClass);
+      ShadowFactory existing = shadowFactories.putIfAbsent(instanceClass, shadowFactory);
+      if (existing != null) shadowFactory = existing;
     }
+    return shadowFactory;
   }
 
-  private String getShadowClassName(Object instance) {
-    Class clazz = instance.getClass();
+  private String getShadowClassName(Class clazz) {
     ShadowConfig shadowConfig = null;
     while (shadowConfig == null && clazz != null) {
       shadowConfig = getShadowConfig(clazz);
@@ -386,24 +365,6 @@ public class ShadowWrangler implements ClassHandler {
     return shadowConfig == null ? null : shadowConfig.shadowClassName;
   }
 
-  private void injectRealObjectOn(Object shadow, Class<?> shadowClass, Object instance) {
-    MetaShadow metaShadow = getMetaShadow(shadowClass);
-    for (Field realObjectField : metaShadow.realObjectFields) {
-      writeField(shadow, instance, realObjectField);
-    }
-  }
-
-  private MetaShadow getMetaShadow(Class<?> shadowClass) {
-    synchronized (metaShadowMap) {
-      MetaShadow metaShadow = metaShadowMap.get(shadowClass);
-      if (metaShadow == null) {
-        metaShadow = new MetaShadow(shadowClass);
-        metaShadowMap.put(shadowClass, metaShadow);
-      }
-      return metaShadow;
-    }
-  }
-
   private Class<?> findDirectShadowClass(Class<?> originalClass) {
     ShadowConfig shadowConfig = getShadowConfig(originalClass);
     if (shadowConfig == null) {
@@ -412,8 +373,8 @@ public class ShadowWrangler implements ClassHandler {
     return loadClass(shadowConfig.shadowClassName, originalClass.getClassLoader());
   }
 
-  private Constructor<?> findInstanceConstructor(Object instance, Class<?> shadowClass) {
-    Class clazz = instance.getClass();
+  private Constructor<?> findInstanceConstructor(Class<?> instanceClass, Class<?> shadowClass) {
+    Class clazz = instanceClass;
 
     Constructor constructor;
     for (constructor = null; constructor == null && clazz != null; clazz = clazz.getSuperclass()) {
@@ -445,30 +406,166 @@ public class ShadowWrangler implements ClassHandler {
     }
   }
 
-  private class MetaShadow {
-    List<Field> realObjectFields = new ArrayList<Field>();
+  /**
+   * Creates shadows for instances of one class: the shadow class, its constructor and its {@link RealObject}
+   * fields are looked up once.
+   */
+  private class ShadowFactory {
+    private final String shadowClassName;
+    private final Class<?> shadowClass;
+    private final ShadowConstructor constructor;
+    private final boolean takesSdkConfig;
+    private final Field[] realObjectFields;
+
+    public ShadowFactory(Class<?> instanceClass) {
+      shadowClassName = getShadowClassName(instanceClass);
+      if (shadowClassName == null) {
+        shadowClass = null;
+        constructor = null;
+        takesSdkConfig = false;
+        realObjectFields = null;
+        return;
+      }
 
-    public MetaShadow(Class<?> shadowClass) {
-      while (shadowClass != null) {
-        for (Field field : shadowClass.getDeclaredFields()) {
+      shadowClass = loadClass(shadowClassName, instanceClass.getClassLoader());
+      Constructor<?> instanceConstructor = findInstanceConstructor(instanceClass, shadowClass);
+      Constructor<?> sdkConfigConstructor = instanceConstructor == null ? findSdkConfigConstructor(shadowClass) : null;
+      Constructor<?> chosenConstructor = instanceConstructor != null ? instanceConstructor
+          : sdkConfigConstructor != null ? sdkConfigConstructor
+          : findNoArgConstructor(shadowClass);
+      constructor = chosenConstructor == null ? null : newShadowConstructor(chosenConstructor);
+      takesSdkConfig = sdkConfigConstructor != null;
+
+      List<Field> fields = new ArrayList<Field>();
+      for (Class<?> clazz = shadowClass; clazz != null; clazz = clazz.getSuperclass()) {
+        for (Field field : clazz.getDeclaredFields()) {
           if (field.isAnnotationPresent(RealObject.class)) {
             field.setAccessible(true);
-            realObjectFields.add(field);
+            fields.add(field);
           }
         }
-        shadowClass = shadowClass.getSuperclass();
       }
+      realObjectFields = fields.toArray(new Field[fields.size()]);
+    }
+
+    public Object newShadow(Object instance) {
+      if (shadowClass == null) return new Object();
+
+      if (debug)
+        System.out.println("creating new " + shadowClassName + " as shadow for " + instance.getClass().getName());
+      try {
+        Object shadow;
+        if (constructor != null) {
+          shadow = constructor.newInstance(takesSdkConfig ? sdkConfig : instance);
+        } else {
+          shadow = shadowClass.newInstance();
+        }
 
+        for (Field realObjectField : realObjectFields) {
+          writeField(shadow, instance, realObjectField);
+        }
+        return shadow;
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
-  private static class ShadowMethodPlan implements Plan {
+  private static Constructor<?> findNoArgConstructor(Class<?> shadowClass) {
+    try {
+      return shadowClass.getConstructor();
+    } catch (NoSuchMethodException e) {
+      // Class.newInstance() might still be able to call a non-public one
+      return null;
+    }
+  }
+
+  private static ShadowConstructor newShadowConstructor(Constructor<?> constructor) {
+    if (METHOD_HANDLES_AVAILABLE) {
+      try {
+        return new MethodHandleShadowConstructor(constructor);
+      } catch (IllegalAccessException e) {
+        // fall back to reflection
+      }
+    }
+    return new ReflectiveShadowConstructor(constructor);
+  }
+
+  private static boolean isMethodHandleAvailable() {
+    try {
+      Class.forName("java.lang.invoke.MethodHandle");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Calls a shadow class constructor that takes no arguments or just one, the instance or the {@link SdkConfig}.
+   */
+  private interface ShadowConstructor {
+    Object newInstance(Object arg) throws Exception;
+  }
+
+  private static class ReflectiveShadowConstructor implements ShadowConstructor {
+    private final Constructor<?> constructor;
+    private final boolean takesArg;
+
+    ReflectiveShadowConstructor(Constructor<?> constructor) {
+      this.constructor = constructor;
+      this.takesArg = constructor.getParameterTypes().length != 0;
+    }
+
+    @Override public Object newInstance(Object arg) throws Exception {
+      try {
+        return takesArg ? constructor.newInstance(arg) : constructor.newInstance();
+      } catch (InvocationTargetException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Only loaded on Java 7 and later, where it spares each new shadow the access and argument checks of
+   * {@link Constructor#newInstance}.
+   */
+  private static class MethodHandleShadowConstructor implements ShadowConstructor {
+    private final MethodHandle constructor;
+
+    MethodHandleShadowConstructor(Constructor<?> constructor) throws IllegalAccessException {
+      MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+      if (constructor.getParameterTypes().length == 0) {
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      this.constructor = handle.asType(MethodType.methodType(Object.class, Object.class));
+    }
+
+    @Override public Object newInstance(Object arg) throws Exception {
+      try {
+        return MethodHandleInvoker.INSTANCE.invokeExact(constructor, arg);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+    }
+  }
+
+  public static class ShadowMethodPlan implements Plan {
     private final Method shadowMethod;
 
     public ShadowMethodPlan(Method shadowMethod) {
       this.shadowMethod = shadowMethod;
     }
 
+    public Method getShadowMethod() {
+      return shadowMethod;
+    }
+
     @Override
     public Object run(Object instance, Object roboData, Object[] params) throws Throwable {
       //noinspection UnnecessaryLocalVariable
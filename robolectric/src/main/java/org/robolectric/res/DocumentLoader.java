@@ -5,12 +5,34 @@ import com.ximpleware.VTDNav;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DocumentLoader {
+  public static final String THREADS_PROPERTY = "robolectric.resourceLoaderThreads";
+  static final int THREAD_COUNT = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+  // how many files to have parsed or parsing beyond the one being loaded
+  private static final int PARSE_AHEAD = 2 * Math.max(THREAD_COUNT, 2);
+  private static final ThreadLocal<VTDGen> VTD_GEN = new ThreadLocal<VTDGen>() {
+    @Override protected VTDGen initialValue() {
+      return new VTDGen();
+    }
+  };
+  private static ExecutorService sharedParsingExecutor;
+
   public static boolean DEBUG_PERF = false;
   private Map<String, Long> perfResponsibleParties = new HashMap<String, Long>();
 
@@ -22,25 +44,24 @@ public class DocumentLoader {
 
   private final FsFile resourceBase;
   private final String packageName;
-  private final VTDGen vtdGen;
+  private final ExecutorService parsingExecutor;
+  private final Map<String, FsFile[]> directoriesByFolderBaseName = new HashMap<String, FsFile[]>();
 
   public DocumentLoader(ResourcePath resourcePath) {
+    this(resourcePath, getSharedParsingExecutor());
+  }
+
+  DocumentLoader(ResourcePath resourcePath, ExecutorService parsingExecutor) {
     this.resourceBase = resourcePath.resourceBase;
     this.packageName = resourcePath.getPackageName();
-    vtdGen = new VTDGen();
+    this.parsingExecutor = parsingExecutor;
   }
 
   public void load(String folderBaseName, XmlLoader... xmlLoaders) throws Exception {
     long startTime = System.currentTimeMillis();
     if (DEBUG_PERF) perfResponsibleParties.clear();
 
-    FsFile[] files = resourceBase.listFiles(new DirectoryMatchingFilter(folderBaseName));
-    if (files == null) {
-      throw new RuntimeException(resourceBase.join(folderBaseName) + " is not a directory");
-    }
-    for (FsFile dir : files) {
-      loadFile(dir, xmlLoaders);
-    }
+    load(listFiles(folderBaseName), xmlLoaders);
 
     if (DEBUG_PERF) {
       System.out.println(String.format("%4dms spent in %s", System.currentTimeMillis() - startTime, folderBaseName));
@@ -52,24 +73,107 @@ public class DocumentLoader {
     }
   }
 
-  private void loadFile(FsFile dir, XmlLoader[] xmlLoaders) throws Exception {
-    if (!dir.exists()) {
-      throw new RuntimeException("no such directory " + dir);
+  /**
+   * Loads just the files for the named resource from each of the folder's directories, e.g. {@code layout/main.xml}
+   * and {@code layout-land/main.xml}.
+   */
+  public void load(String folderBaseName, String name, XmlLoader... xmlLoaders) throws Exception {
+    for (FsFile dir : getDirectories(folderBaseName)) {
+      FsFile file = dir.join(name + ".xml");
+      if (file.exists()) {
+        loadResourceXmlFile(file, xmlLoaders);
+      }
+    }
+  }
+
+  /**
+   * Loads the given files in order, e.g. ones picked from {@link #listFiles(String)}.
+   *
+   * Files are parsed ahead on the shared parsing threads (see {@value #THREADS_PROPERTY}), but the loaders always
+   * see them one at a time, in order, on the calling thread, so resources end up in the same order regardless.
+   */
+  public void load(List<FsFile> files, XmlLoader... xmlLoaders) throws Exception {
+    if (parsingExecutor == null || files.size() < 2) {
+      for (FsFile file : files) {
+        loadResourceXmlFile(file, xmlLoaders);
+      }
+      return;
     }
 
-    for (FsFile file : dir.listFiles(ENDS_WITH_XML)) {
-      loadResourceXmlFile(file, xmlLoaders);
+    LinkedList<Future<VTDNav>> parsedFiles = new LinkedList<Future<VTDNav>>();
+    int nextToParse = 0;
+    try {
+      for (FsFile file : files) {
+        while (nextToParse < files.size() && parsedFiles.size() < PARSE_AHEAD) {
+          parsedFiles.add(parsingExecutor.submit(new ParseTask(files.get(nextToParse++))));
+        }
+
+        long startTime = DEBUG_PERF ? System.currentTimeMillis() : 0;
+        VTDNav vtdNav = getParsed(parsedFiles.removeFirst());
+        if (DEBUG_PERF) perfBlame("DocumentLoader.parse", startTime);
+
+        loadResourceXmlFile(file, vtdNav, xmlLoaders);
+      }
+    } finally {
+      for (Future<VTDNav> parsedFile : parsedFiles) {
+        parsedFile.cancel(false);
+      }
     }
   }
 
+  /**
+   * Returns all the resource files in the folder's directories, without loading them.
+   */
+  public List<FsFile> listFiles(String folderBaseName) {
+    List<FsFile> files = new ArrayList<FsFile>();
+    for (FsFile dir : getDirectories(folderBaseName)) {
+      if (!dir.exists()) {
+        throw new RuntimeException("no such directory " + dir);
+      }
+      files.addAll(Arrays.asList(dir.listFiles(ENDS_WITH_XML)));
+    }
+    return files;
+  }
+
+  /**
+   * Returns the names of all the resource files in the folder's directories, without loading them.
+   */
+  public Set<String> listNames(String folderBaseName) {
+    Set<String> names = new LinkedHashSet<String>();
+    for (FsFile file : listFiles(folderBaseName)) {
+      String fileName = file.getName();
+      names.add(fileName.substring(0, fileName.length() - ".xml".length()));
+    }
+    return names;
+  }
+
+  private FsFile[] getDirectories(String folderBaseName) {
+    FsFile[] dirs = directoriesByFolderBaseName.get(folderBaseName);
+    if (dirs == null) {
+      dirs = resourceBase.listFiles(new DirectoryMatchingFilter(folderBaseName));
+      if (dirs == null) {
+        throw new RuntimeException(resourceBase.join(folderBaseName) + " is not a directory");
+      }
+      directoriesByFolderBaseName.put(folderBaseName, dirs);
+    }
+    return dirs;
+  }
+
   private void loadResourceXmlFile(FsFile fsFile, XmlLoader... xmlLoaders) throws Exception {
     long startTime = DEBUG_PERF ? System.currentTimeMillis() : 0;
     VTDNav vtdNav = parse(fsFile);
     if (DEBUG_PERF) perfBlame("DocumentLoader.parse", startTime);
 
+    loadResourceXmlFile(fsFile, vtdNav, xmlLoaders);
+  }
+
+  private void loadResourceXmlFile(FsFile fsFile, VTDNav vtdNav, XmlLoader... xmlLoaders) throws Exception {
+    // one node for all the loaders, so they can share its XmlBlock
+    XpathResourceXmlLoader.XmlNode xmlNode = new XpathResourceXmlLoader.XmlNode(vtdNav);
+    XmlLoader.XmlContext xmlContext = new XmlLoader.XmlContext(packageName, fsFile);
     for (XmlLoader xmlLoader : xmlLoaders) {
-      startTime = DEBUG_PERF ? System.currentTimeMillis() : 0;
-      xmlLoader.processResourceXml(fsFile, vtdNav, packageName);
+      long startTime = DEBUG_PERF ? System.currentTimeMillis() : 0;
+      xmlLoader.processResourceXml(fsFile, xmlNode, xmlContext);
       if (DEBUG_PERF) perfBlame(xmlLoader.getClass().getName(), startTime);
     }
   }
@@ -80,14 +184,62 @@ public class DocumentLoader {
     perfResponsibleParties.put(responsibleParty, totalElapsedMs == null ? myElapsedMs : totalElapsedMs + myElapsedMs);
   }
 
-  private VTDNav parse(FsFile xmlFile) throws Exception {
+  static VTDNav parse(FsFile xmlFile) throws Exception {
     byte[] bytes = xmlFile.getBytes();
+    VTDGen vtdGen = VTD_GEN.get();
     vtdGen.setDoc(bytes);
     vtdGen.parse(true);
 
     return vtdGen.getNav();
   }
 
+  private static VTDNav getParsed(Future<VTDNav> parsedFile) throws Exception {
+    try {
+      return parsedFile.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) throw (Exception) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the executor shared by all document loaders for parsing, or null if resources should be loaded on
+   * the calling thread only.
+   *
+   * A plain fixed pool rather than a fork/join pool: each parse is a leaf task that never forks, and its result is
+   * awaited by threads outside the pool in directory order, so work stealing would have nothing to steal.
+   */
+  private static synchronized ExecutorService getSharedParsingExecutor() {
+    if (THREAD_COUNT < 2) return null;
+
+    if (sharedParsingExecutor == null) {
+      sharedParsingExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "robolectric-resource-parser-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sharedParsingExecutor;
+  }
+
+  private static class ParseTask implements Callable<VTDNav> {
+    private final FsFile file;
+
+    ParseTask(FsFile file) {
+      this.file = file;
+    }
+
+    @Override public VTDNav call() throws Exception {
+      return parse(file);
+    }
+  }
+
   private static class DirectoryMatchingFilter implements FsFile.Filter {
     private final String folderBaseName;
 
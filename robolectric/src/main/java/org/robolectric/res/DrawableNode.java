@@ -1,17 +1,16 @@
 package org.robolectric.res;
 
 import org.jetbrains.annotations.NotNull;
-import org.w3c.dom.Document;
 
 public abstract class DrawableNode {
   abstract public FsFile getFsFile();
 
   public static class Xml extends DrawableNode {
-    public final @NotNull Document document;
+    public final @NotNull XmlBlock xmlBlock;
     public final @NotNull XmlLoader.XmlContext xmlContext;
 
-    Xml(@NotNull Document document, @NotNull XmlLoader.XmlContext xmlContext) {
-      this.document = document;
+    Xml(@NotNull XmlBlock xmlBlock, @NotNull XmlLoader.XmlContext xmlContext) {
+      this.xmlBlock = xmlBlock;
       this.xmlContext = xmlContext;
     }
 
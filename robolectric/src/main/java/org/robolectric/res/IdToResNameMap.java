@@ -0,0 +1,118 @@
+package org.robolectric.res;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps resource ids to names without boxing the ids, using an open-addressing table.
+ *
+ * Entries put before {@link #freeze()} go into the table, which must happen before the map is shared between
+ * threads; reading the table after that takes no locks. Entries put afterwards, like ids assigned on the fly,
+ * go into a small synchronized overflow map.
+ */
+public final class IdToResNameMap {
+  private int[] ids = new int[16];
+  private ResName[] resNames = new ResName[16];
+  private int size;
+  private boolean frozen;
+
+  private final Map<Integer, ResName> overflow = new HashMap<Integer, ResName>();
+  private volatile boolean hasOverflow;
+
+  public ResName get(int id) {
+    int mask = resNames.length - 1;
+    for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+      ResName resName = resNames[slot];
+      if (resName == null) break;
+      if (ids[slot] == id) return resName;
+    }
+
+    if (hasOverflow) {
+      synchronized (overflow) {
+        return overflow.get(id);
+      }
+    }
+    return null;
+  }
+
+  public boolean containsKey(int id) {
+    return get(id) != null;
+  }
+
+  public void put(int id, ResName resName) {
+    if (resName == null) throw new NullPointerException();
+
+    if (frozen) {
+      synchronized (overflow) {
+        overflow.put(id, resName);
+        hasOverflow = true;
+      }
+      return;
+    }
+
+    if ((size + 1) * 2 > resNames.length) resize(resNames.length * 2);
+    int mask = resNames.length - 1;
+    int slot = hash(id) & mask;
+    while (resNames[slot] != null && ids[slot] != id) {
+      slot = (slot + 1) & mask;
+    }
+    if (resNames[slot] == null) size++;
+    ids[slot] = id;
+    resNames[slot] = resName;
+  }
+
+  public void putAll(IdToResNameMap other) {
+    for (int slot = 0; slot < other.resNames.length; slot++) {
+      if (other.resNames[slot] != null) put(other.ids[slot], other.resNames[slot]);
+    }
+    synchronized (other.overflow) {
+      for (Map.Entry<Integer, ResName> entry : other.overflow.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (overflow) {
+      return size + overflow.size();
+    }
+  }
+
+  /**
+   * Returns the largest id in the map, or 0 if it's empty.
+   */
+  public int maxId() {
+    int maxId = Integer.MIN_VALUE;
+    for (int slot = 0; slot < resNames.length; slot++) {
+      if (resNames[slot] != null) maxId = Math.max(maxId, ids[slot]);
+    }
+    synchronized (overflow) {
+      for (int id : overflow.keySet()) maxId = Math.max(maxId, id);
+    }
+    return maxId == Integer.MIN_VALUE ? 0 : maxId;
+  }
+
+  /**
+   * Stops adding entries to the table, so it can be read without locking from now on.
+   */
+  public void freeze() {
+    frozen = true;
+  }
+
+  private void resize(int capacity) {
+    int[] oldIds = ids;
+    ResName[] oldResNames = resNames;
+    ids = new int[capacity];
+    resNames = new ResName[capacity];
+    size = 0;
+    for (int slot = 0; slot < oldResNames.length; slot++) {
+      if (oldResNames[slot] != null) put(oldIds[slot], oldResNames[slot]);
+    }
+  }
+
+  private static int hash(int id) {
+    // resource ids differ mostly in their low bits, but packages and types sit in the high ones
+    int h = id * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -1,9 +1,5 @@
 package org.robolectric.res;
 
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,68 +14,53 @@ public class MenuLoader extends XmlLoader {
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
     MenuNode topLevelNode = new MenuNode("top-level", new ArrayList<Attribute>());
 
-    NodeList items = parse(xmlFile).getChildNodes();
-    if (items.getLength() != 1)
-      throw new RuntimeException("Expected only one top-level item in menu file " + xmlFile.getName());
-    if (items.item(0).getNodeName().compareTo("menu") != 0)
+    XmlBlock xmlBlock = xmlNode.getXmlBlock();
+    int root = xmlBlock.getRoot();
+    if (!"menu".equals(xmlBlock.getName(root)))
       throw new RuntimeException("Expected a top-level item called 'menu' in menu file " + xmlFile.getName());
 
-    processChildren(items.item(0).getChildNodes(), topLevelNode, xmlContext);
+    processChildren(xmlBlock, root, topLevelNode, xmlContext);
     menuNodes.put("menu", xmlFile.getName().replace(".xml", ""), topLevelNode, xmlContext);
   }
 
-  private void processChildren(NodeList childNodes, MenuNode parent, XmlContext xmlContext) {
-    for (int i = 0; i < childNodes.getLength(); i++) {
-      Node node = childNodes.item(i);
-      processNode(node, parent, xmlContext);
+  private void processChildren(XmlBlock xmlBlock, int node, MenuNode parent, XmlContext xmlContext) {
+    for (int child = xmlBlock.getFirstChild(node); child != XmlBlock.NONE; child = xmlBlock.getNextSibling(child)) {
+      if (xmlBlock.getNodeType(child) == XmlBlock.ELEMENT) {
+        processNode(xmlBlock, child, parent, xmlContext);
+      }
     }
   }
 
-  private void processNode(Node node, MenuNode parent, XmlContext xmlContext) {
-    String name = node.getNodeName();
-    NamedNodeMap attributesNodes = node.getAttributes();
+  private void processNode(XmlBlock xmlBlock, int node, MenuNode parent, XmlContext xmlContext) {
+    String name = xmlBlock.getName(node);
     List<Attribute> attributes = new ArrayList<Attribute>();
-    if (attributesNodes != null) {
-      int length = attributesNodes.getLength();
-      for (int i = 0; i < length; i++) {
-        Node attr = attributesNodes.item(i);
-        String resourceName = Attribute.qualifyName(attr.getNodeName(), xmlContext.packageName);
-        attributes.add(new Attribute(Attribute.addType(resourceName, "attr"), attr.getNodeValue(), xmlContext.packageName));
-      }
+    for (int i = 0; i < xmlBlock.getAttributeCount(node); i++) {
+      String resourceName = Attribute.qualifyName(xmlBlock.getAttributeName(node, i), xmlContext.packageName);
+      attributes.add(new Attribute(Attribute.addType(resourceName, "attr"), xmlBlock.getAttributeValue(node, i), xmlContext.packageName));
     }
 
-    if (!name.startsWith("#")) {
-      MenuNode menuNode = new MenuNode(name, attributes);
-      parent.addChild(menuNode);
-      NodeList children = node.getChildNodes();
-      if (children != null && children.getLength() != 0) {
-        for (int i = 0; i < children.getLength(); i++) {
-          Node nodei = children.item(i);
-          if (childToIgnore(nodei)) {
-            continue;
-          } else if (validChildren(nodei)) {
-            // recursively add all nodes
-            processNode(nodei, menuNode, xmlContext);
-          } else {
-            throw new RuntimeException("Unknown menu node"
-                + nodei.getNodeName());
-          }
-        }
+    MenuNode menuNode = new MenuNode(name, attributes);
+    parent.addChild(menuNode);
+    for (int child = xmlBlock.getFirstChild(node); child != XmlBlock.NONE; child = xmlBlock.getNextSibling(child)) {
+      if (xmlBlock.getNodeType(child) != XmlBlock.ELEMENT) {
+        continue;
+      } else if (validChildren(xmlBlock.getName(child))) {
+        // recursively add all nodes
+        processNode(xmlBlock, child, menuNode, xmlContext);
+      } else {
+        throw new RuntimeException("Unknown menu node"
+            + xmlBlock.getName(child));
       }
     }
   }
 
-  private static boolean childToIgnore(Node nodei) {
-    return isEmpty(nodei.getNodeName()) || nodei.getNodeName().startsWith("#");
-  }
-
   public static boolean isEmpty(CharSequence str) {
     return str == null || str.length() == 0;
   }
 
-  private static boolean validChildren(Node nodei) {
-    return nodei.getNodeName().equals("item")
-        || nodei.getNodeName().equals("menu")
-        || nodei.getNodeName().equals("group");
+  private static boolean validChildren(String name) {
+    return name.equals("item")
+        || name.equals("menu")
+        || name.equals("group");
   }
 }
@@ -2,7 +2,6 @@ package org.robolectric.res;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 public class MergedResourceIndex extends ResourceIndex {
@@ -13,16 +12,20 @@ public class MergedResourceIndex extends ResourceIndex {
     this.subIndexes = subIndexes;
     for (ResourceIndex subIndex : subIndexes) {
       actualPackageNames.addAll(subIndex.getPackages());
-      merge(resourceNameToId, subIndex.resourceNameToId, "resourceNameToId");
-      merge(resourceIdToResName, subIndex.resourceIdToResName, "resourceIdToResName");
+      int expectedNames = resourceNameToId.size() + subIndex.resourceNameToId.size();
+      resourceNameToId.putAll(subIndex.resourceNameToId);
+      checkNoOverlap("resourceNameToId", expectedNames, resourceNameToId.size());
+
+      int expectedIds = resourceIdToResName.size() + subIndex.resourceIdToResName.size();
+      resourceIdToResName.putAll(subIndex.resourceIdToResName);
+      checkNoOverlap("resourceIdToResName", expectedIds, resourceIdToResName.size());
     }
+    freeze();
   }
 
-  private static <K,V> void merge(Map<K, V> map1, Map<K, V> map2, String name) {
-    int expected = map1.size() + map2.size();
-    map1.putAll(map2);
-    if (map1.size() != expected) {
-      throw new IllegalStateException("there must have been some overlap for " + name + "! expected " + expected + " but got " + map1.size());
+  private static void checkNoOverlap(String name, int expected, int size) {
+    if (size != expected) {
+      throw new IllegalStateException("there must have been some overlap for " + name + "! expected " + expected + " but got " + size);
     }
   }
 
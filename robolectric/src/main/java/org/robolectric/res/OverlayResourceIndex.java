@@ -31,9 +31,8 @@ class OverlayResourceIndex extends ResourceIndex {
     for (ResourceIndex subResourceIndex : subResourceIndexes) {
       actualPackageNames.addAll(subResourceIndex.getPackages());
 
-      for (Map.Entry<ResName, Integer> entry : subResourceIndex.resourceNameToId.entrySet()) {
-        ResName resName = entry.getKey();
-        int value = entry.getValue();
+      for (ResName resName : subResourceIndex.resourceNameToId.keys()) {
+        int value = subResourceIndex.resourceNameToId.get(resName);
         ResName localResName = resName.withPackageName(packageName);
         if (!resourceNameToId.containsKey(localResName)) {
           resourceNameToId.put(localResName, value);
@@ -41,6 +40,7 @@ class OverlayResourceIndex extends ResourceIndex {
         }
       }
     }
+    freeze();
 
 //        if (OverlayResourceLoader.DEBUG) resEntries.check(subResourceIndexes);
   }
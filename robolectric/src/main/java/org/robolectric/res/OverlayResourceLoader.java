@@ -1,26 +1,80 @@
 package org.robolectric.res;
 
 import org.jetbrains.annotations.NotNull;
-import org.w3c.dom.Document;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Merges the resources of an app and its libraries under the app's package name.
+ *
+ * If any of the package loaders loads lazily, so does this one: each resource is merged in from the package loaders,
+ * asking them to load it, the first time it's looked up; later lookups are answered from what was merged.
+ */
 public class OverlayResourceLoader extends XResourceLoader {
   private final String packageName;
   private final List<PackageResourceLoader> subResourceLoaders;
+  private final boolean lazy;
+  private final Set<ResName> mergedResNames = new HashSet<ResName>();
 
   public OverlayResourceLoader(String packageName, List<PackageResourceLoader> subResourceLoaders) {
     super(new OverlayResourceIndex(packageName, subResourceLoaders));
     this.packageName = packageName;
     this.subResourceLoaders = subResourceLoaders;
+    this.lazy = isAnyLazy(subResourceLoaders);
+  }
+
+  private static boolean isAnyLazy(List<PackageResourceLoader> subResourceLoaders) {
+    for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
+      if (subResourceLoader.isLazy()) return true;
+    }
+    return false;
   }
 
   @Override
-  void doInitialize() {
+  void initialize(ResName resName) {
+    if (!lazy || isInitialized) {
+      initialize();
+      return;
+    }
+    if (resName == null) return;
+
+    merge(resName);
+  }
+
+  private synchronized void merge(ResName resName) {
+    if (!mergedResNames.add(resName)) return;
+
+    // app first, as in doInitialize()
     for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
-      subResourceLoader.initialize();
+      ResName subResName = resName.withPackageName(subResourceLoader.getPackageName());
+      subResourceLoader.initialize(subResName);
+
+      pluralsData.mergeLibraryStyle(subResourceLoader.pluralsData, packageName, subResName);
+      stringData.mergeLibraryStyle(subResourceLoader.stringData, packageName, subResName);
+      menuData.mergeLibraryStyle(subResourceLoader.menuData, packageName, subResName);
+      drawableData.mergeLibraryStyle(subResourceLoader.drawableData, packageName, subResName);
+      preferenceData.mergeLibraryStyle(subResourceLoader.preferenceData, packageName, subResName);
+      xmlDocuments.mergeLibraryStyle(subResourceLoader.xmlDocuments, packageName, subResName);
+      rawResources.mergeLibraryStyle(subResourceLoader.rawResources, packageName, subResName);
+      data.mergeLibraryStyle(subResourceLoader.data, packageName, subResName);
+    }
+  }
 
+  @Override
+  void doInitialize() {
+    initializeSubResourceLoaders();
+
+    // merge in order, so the app's resources come before those of its libraries no matter which loaded first
+    for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
       pluralsData.mergeLibraryStyle(subResourceLoader.pluralsData, packageName);
       stringData.mergeLibraryStyle(subResourceLoader.stringData, packageName);
       menuData.mergeLibraryStyle(subResourceLoader.menuData, packageName);
@@ -32,6 +86,43 @@ public class OverlayResourceLoader extends XResourceLoader {
     }
   }
 
+  private void initializeSubResourceLoaders() {
+    int threadCount = Math.min(DocumentLoader.THREAD_COUNT, subResourceLoaders.size());
+    if (threadCount < 2) {
+      for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
+        subResourceLoader.initialize();
+      }
+      return;
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (final PackageResourceLoader subResourceLoader : subResourceLoaders) {
+      tasks.add(new Callable<Void>() {
+        @Override public Void call() throws Exception {
+          subResourceLoader.initialize();
+          return null;
+        }
+      });
+    }
+
+    // not the shared parsing executor, since these tasks wait on parsing tasks themselves
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Override public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
     return super.getDrawableNode(resName.withPackageName(packageName), qualifiers);
   }
@@ -56,7 +147,7 @@ public class OverlayResourceLoader extends XResourceLoader {
     return super.getValue(resName.withPackageName(packageName), qualifiers);
   }
 
-  @Override public Document getXml(ResName resName, String qualifiers) {
+  @Override public XmlBlock getXml(ResName resName, String qualifiers) {
     return super.getXml(resName.withPackageName(packageName), qualifiers);
   }
 
@@ -1,20 +1,107 @@
 package org.robolectric.res;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the resources of a single package.
+ *
+ * By default everything is parsed on first use. With the {@value #LAZY_LOADING_PROPERTY} system property set,
+ * only a cheap index of the resource files is built up front; values files are parsed for one resource type at a
+ * time, the first time a value of that type is looked up, and file-based resources (layouts, menus, xml, etc.)
+ * are parsed when the named resource is first looked up.
+ *
+ * With the {@value ResourceSnapshot#DIR_PROPERTY} system property set, values are read from a
+ * {@link ResourceSnapshot} when there's one for the current values files, and one is written after parsing them
+ * otherwise.
+ */
 public class PackageResourceLoader extends XResourceLoader {
+  public static final String LAZY_LOADING_PROPERTY = "robolectric.lazyResources";
+  private static final Logger LOGGER = Logger.getLogger(PackageResourceLoader.class.getName());
+  private static final AtomicBoolean loggedUnreadableSnapshot = new AtomicBoolean();
+
+  // text that shows up in any values file defining a value of the given type
+  private static final Map<String, String[]> VALUE_MARKERS = new HashMap<String, String[]>();
+  static {
+    VALUE_MARKERS.put("bool", new String[] {"<bool", "\"bool\""});
+    VALUE_MARKERS.put("color", new String[] {"<color", "\"color\""});
+    VALUE_MARKERS.put("dimen", new String[] {"<dimen", "\"dimen\""});
+    VALUE_MARKERS.put("integer", new String[] {"<integer", "\"integer\""});
+    VALUE_MARKERS.put("array", new String[] {"<integer-array", "<string-array"});
+    VALUE_MARKERS.put("fraction", new String[] {"<fraction", "\"fraction\""});
+    VALUE_MARKERS.put("layout", new String[] {"<item"});
+    VALUE_MARKERS.put("plurals", new String[] {"<plurals"});
+    VALUE_MARKERS.put("string", new String[] {"<string", "\"string\""});
+    VALUE_MARKERS.put("attr", new String[] {"<attr"});
+    VALUE_MARKERS.put("style", new String[] {"<style"});
+  }
+
   private final ResourcePath resourcePath;
+  private final boolean lazy;
+  private DocumentLoader documentLoader;
+  private Map<String, XmlLoader[]> valueLoaders;
+  private Map<String, XmlLoader[]> fileLoaders;
+  private final Map<String, List<FsFile>> valueFilesByType = new HashMap<String, List<FsFile>>();
+  private final Set<String> loadedValueTypes = new HashSet<String>();
+  private final Set<String> loadedFiles = new HashSet<String>();
+  private ResourceSnapshot pendingSnapshot;
 
   public PackageResourceLoader(ResourcePath resourcePath) {
     this(resourcePath, new ResourceExtractor(resourcePath));
   }
 
   public PackageResourceLoader(ResourcePath resourcePath, ResourceIndex resourceIndex) {
+    this(resourcePath, resourceIndex, Boolean.getBoolean(LAZY_LOADING_PROPERTY));
+  }
+
+  public PackageResourceLoader(ResourcePath resourcePath, ResourceIndex resourceIndex, boolean lazy) {
     super(resourceIndex);
     this.resourcePath = resourcePath;
+    this.lazy = lazy;
+  }
+
+  String getPackageName() {
+    return resourcePath.getPackageName();
+  }
+
+  boolean isLazy() {
+    return lazy;
   }
 
   void doInitialize() {
     try {
-      loadEverything();
+      if (lazy) {
+        loadRemaining();
+      } else {
+        loadEverything();
+      }
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  void initialize(ResName resName) {
+    if (!lazy || isInitialized) {
+      initialize();
+      return;
+    }
+    if (resName == null) return;
+
+    try {
+      load(resName);
     } catch (RuntimeException e) {
       throw e;
     } catch (Exception e) {
@@ -27,35 +114,180 @@ public class PackageResourceLoader extends XResourceLoader {
 
     DocumentLoader documentLoader = new DocumentLoader(resourcePath);
 
-    documentLoader.load("values",
+    List<XmlLoader> valueLoaders = new ArrayList<XmlLoader>();
+    for (XmlLoader[] xmlLoaders : createValueLoaders().values()) {
+      valueLoaders.addAll(Arrays.asList(xmlLoaders));
+    }
+    List<FsFile> valueFiles = documentLoader.listFiles("values");
+    ResourceSnapshot snapshot = ResourceSnapshot.forValueFiles(resourcePath.getPackageName(), valueFiles);
+    if (!readSnapshot(snapshot)) {
+      documentLoader.load(valueFiles, valueLoaders.toArray(new XmlLoader[valueLoaders.size()]));
+      writeSnapshot(snapshot);
+    }
+    for (Map.Entry<String, XmlLoader[]> entry : createFileLoaders().entrySet()) {
+      documentLoader.load(entry.getKey(), entry.getValue());
+    }
+
+    loadUnparsedResources();
+  }
+
+  private synchronized void load(ResName resName) throws Exception {
+    startLazyLoading();
+    loadValues(resName.type);
+    loadFiles(resName.type, resName.name);
+  }
+
+  private synchronized void loadRemaining() throws Exception {
+    startLazyLoading();
+    for (String type : valueLoaders.keySet()) {
+      loadValues(type);
+    }
+    for (String folderBaseName : fileLoaders.keySet()) {
+      for (String name : documentLoader.listNames(folderBaseName)) {
+        loadFiles(folderBaseName, name);
+      }
+    }
+  }
+
+  private void startLazyLoading() throws Exception {
+    if (documentLoader != null) return;
+
+    System.out.println("DEBUG: Lazily loading resources for " + resourcePath.getPackageName() + " from " + resourcePath.resourceBase + "...");
+
+    documentLoader = new DocumentLoader(resourcePath);
+    valueLoaders = createValueLoaders();
+    fileLoaders = createFileLoaders();
+
+    ResourceSnapshot snapshot = ResourceSnapshot.forValueFiles(resourcePath.getPackageName(), documentLoader.listFiles("values"));
+    if (readSnapshot(snapshot)) {
+      loadedValueTypes.addAll(valueLoaders.keySet());
+    } else {
+      indexValueFiles();
+      pendingSnapshot = snapshot;
+    }
+    loadUnparsedResources();
+  }
+
+  /**
+   * Notes which values files might hold values of each type, by looking for the elements that define them. This
+   * is much cheaper than parsing, and lets us skip files like strings.xml for every locale when looking up a style.
+   */
+  private void indexValueFiles() throws Exception {
+    for (String type : valueLoaders.keySet()) {
+      valueFilesByType.put(type, new ArrayList<FsFile>());
+    }
+
+    for (FsFile file : documentLoader.listFiles("values")) {
+      String text = new String(file.getBytes(), "ISO-8859-1");
+      for (Map.Entry<String, String[]> entry : VALUE_MARKERS.entrySet()) {
+        for (String marker : entry.getValue()) {
+          if (text.contains(marker)) {
+            valueFilesByType.get(entry.getKey()).add(file);
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  private void loadValues(String type) throws Exception {
+    XmlLoader[] xmlLoaders = valueLoaders.get(type);
+    if (xmlLoaders != null && loadedValueTypes.add(type)) {
+      documentLoader.load(valueFilesByType.remove(type), xmlLoaders);
+
+      if (loadedValueTypes.size() == valueLoaders.size()) {
+        writeSnapshot(pendingSnapshot);
+        pendingSnapshot = null;
+      }
+    }
+  }
+
+  private boolean readSnapshot(ResourceSnapshot snapshot) {
+    if (snapshot == null) return false;
+
+    try {
+      return snapshot.readTo(data, pluralsData);
+    } catch (IOException e) {
+      // the snapshot is only an optimization; we'll parse the values files and write a new one
+      snapshot.getFile().delete();
+      if (loggedUnreadableSnapshot.compareAndSet(false, true)) {
+        LOGGER.log(Level.WARNING, "ignoring unreadable resource snapshot " + snapshot.getFile(), e);
+      }
+      return false;
+    }
+  }
+
+  private void writeSnapshot(ResourceSnapshot snapshot) {
+    if (snapshot == null) return;
+
+    try {
+      snapshot.write(data, pluralsData);
+    } catch (IOException e) {
+      // the snapshot is only an optimization; we'll parse the values files again next time
+    }
+  }
+
+  private void loadFiles(String type, String name) throws Exception {
+    XmlLoader[] xmlLoaders = fileLoaders.get(type);
+    if (xmlLoaders != null && loadedFiles.add(type + "/" + name)) {
+      documentLoader.load(type, name, xmlLoaders);
+    }
+  }
+
+  /**
+   * Loaders for resources defined in values files, keyed by resource type.
+   */
+  private Map<String, XmlLoader[]> createValueLoaders() {
+    Map<String, XmlLoader[]> valueLoaders = new LinkedHashMap<String, XmlLoader[]>();
+    valueLoaders.put("bool", new XmlLoader[] {
         new ValueResourceLoader(data, "/resources/bool", "bool", ResType.BOOLEAN),
-        new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
+        new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN)});
+    valueLoaders.put("color", new XmlLoader[] {
         new ValueResourceLoader(data, "/resources/color", "color", ResType.COLOR),
-        new ValueResourceLoader(data, "/resources/item[@type='color']", "color", ResType.COLOR),
+        new ValueResourceLoader(data, "/resources/item[@type='color']", "color", ResType.COLOR)});
+    valueLoaders.put("dimen", new XmlLoader[] {
         new ValueResourceLoader(data, "/resources/dimen", "dimen", ResType.DIMEN),
-        new ValueResourceLoader(data, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN),
+        new ValueResourceLoader(data, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN)});
+    valueLoaders.put("integer", new XmlLoader[] {
         new ValueResourceLoader(data, "/resources/integer", "integer", ResType.INTEGER),
-        new ValueResourceLoader(data, "/resources/item[@type='integer']", "integer", ResType.INTEGER),
+        new ValueResourceLoader(data, "/resources/item[@type='integer']", "integer", ResType.INTEGER)});
+    valueLoaders.put("array", new XmlLoader[] {
         new ValueResourceLoader(data, "/resources/integer-array", "array", ResType.INTEGER_ARRAY),
+        new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY)});
+    valueLoaders.put("fraction", new XmlLoader[] {
         new ValueResourceLoader(data, "/resources/fraction", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item", "layout", ResType.LAYOUT),
-        new PluralResourceLoader(pluralsData),
+        new ValueResourceLoader(data, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION)});
+    valueLoaders.put("layout", new XmlLoader[] {
+        new ValueResourceLoader(data, "/resources/item", "layout", ResType.LAYOUT)});
+    valueLoaders.put("plurals", new XmlLoader[] {
+        new PluralResourceLoader(pluralsData)});
+    valueLoaders.put("string", new XmlLoader[] {
         new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
-        new AttrResourceLoader(data),
-        new StyleResourceLoader(data)
-    );
-
-    documentLoader.load("layout", new OpaqueFileLoader(data, "layout"), new XmlFileLoader(xmlDocuments, "layout"));
-    documentLoader.load("menu", new MenuLoader(menuData), new XmlFileLoader(xmlDocuments, "menu"));
-    documentLoader.load("drawable", new OpaqueFileLoader(data, "drawable"), new XmlFileLoader(xmlDocuments, "drawable"));
-    documentLoader.load("anim", new OpaqueFileLoader(data, "anim"), new XmlFileLoader(xmlDocuments, "anim"));
-    documentLoader.load("animator", new OpaqueFileLoader(data, "animator"), new XmlFileLoader(xmlDocuments, "animator"));
-    documentLoader.load("color", new ColorResourceLoader(data), new XmlFileLoader(xmlDocuments, "color"));
-    documentLoader.load("xml", new PreferenceLoader(preferenceData), new XmlFileLoader(xmlDocuments, "xml"));
+        new ValueResourceLoader(data, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE)});
+    valueLoaders.put("attr", new XmlLoader[] {
+        new AttrResourceLoader(data)});
+    valueLoaders.put("style", new XmlLoader[] {
+        new StyleResourceLoader(data)});
+    return valueLoaders;
+  }
+
+  /**
+   * Loaders for resources that live in a file of their own, keyed by the folder they live in. Each of these files
+   * is registered under the folder's name and its own file name.
+   */
+  private Map<String, XmlLoader[]> createFileLoaders() {
+    Map<String, XmlLoader[]> fileLoaders = new LinkedHashMap<String, XmlLoader[]>();
+    fileLoaders.put("layout", new XmlLoader[] {new OpaqueFileLoader(data, "layout"), new XmlFileLoader(xmlDocuments, "layout")});
+    fileLoaders.put("menu", new XmlLoader[] {new MenuLoader(menuData), new XmlFileLoader(xmlDocuments, "menu")});
+    fileLoaders.put("drawable", new XmlLoader[] {new OpaqueFileLoader(data, "drawable"), new XmlFileLoader(xmlDocuments, "drawable")});
+    fileLoaders.put("anim", new XmlLoader[] {new OpaqueFileLoader(data, "anim"), new XmlFileLoader(xmlDocuments, "anim")});
+    fileLoaders.put("animator", new XmlLoader[] {new OpaqueFileLoader(data, "animator"), new XmlFileLoader(xmlDocuments, "animator")});
+    fileLoaders.put("color", new XmlLoader[] {new ColorResourceLoader(data), new XmlFileLoader(xmlDocuments, "color")});
+    fileLoaders.put("xml", new XmlLoader[] {new PreferenceLoader(preferenceData), new XmlFileLoader(xmlDocuments, "xml")});
+    return fileLoaders;
+  }
 
+  private void loadUnparsedResources() {
     new DrawableResourceLoader(drawableData).findDrawableResources(resourcePath);
     new RawResourceLoader(resourcePath).loadTo(rawResources);
 
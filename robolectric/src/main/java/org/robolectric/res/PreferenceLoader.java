@@ -1,9 +1,5 @@
 package org.robolectric.res;
 
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,41 +12,27 @@ public class PreferenceLoader extends XmlLoader {
 
   @Override
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
-    PreferenceNode topLevelNode = new PreferenceNode("top-level", new ArrayList<Attribute>());
-    processChildren(parse(xmlFile).getChildNodes(), topLevelNode, xmlContext);
-    resBundle.put("xml", xmlFile.getName().replace(".xml", ""), topLevelNode.getChildren().get(0), xmlContext);
-  }
-
-  private void processChildren(NodeList childNodes, PreferenceNode parent, XmlContext xmlContext) {
-    for (int i = 0; i < childNodes.getLength(); i++) {
-      Node node = childNodes.item(i);
-      processNode(node, parent, xmlContext);
-    }
+    XmlBlock xmlBlock = xmlNode.getXmlBlock();
+    resBundle.put("xml", xmlFile.getName().replace(".xml", ""), processNode(xmlBlock, xmlBlock.getRoot(), xmlContext), xmlContext);
   }
 
-  private void processNode(Node node, PreferenceNode parent, XmlContext xmlContext) {
-    String name = node.getNodeName();
-    NamedNodeMap attributes = node.getAttributes();
+  private PreferenceNode processNode(XmlBlock xmlBlock, int node, XmlContext xmlContext) {
     List<Attribute> attrList = new ArrayList<Attribute>();
-
-    if (attributes != null) {
-      int length = attributes.getLength();
-      for (int i = 0; i < length; i++) {
-        Node attr = attributes.item(i);
-        String attrName = Attribute.qualifyName(attr.getNodeName(), xmlContext.packageName);
-        if (attrName.startsWith("xmlns:")) {
-          // ignore
-        } else {
-          attrList.add(new Attribute(Attribute.addType(attrName, "attr"), attr.getNodeValue(), xmlContext.packageName));
-        }
+    for (int i = 0; i < xmlBlock.getAttributeCount(node); i++) {
+      String attrName = Attribute.qualifyName(xmlBlock.getAttributeName(node, i), xmlContext.packageName);
+      if (attrName.startsWith("xmlns:")) {
+        // ignore
+      } else {
+        attrList.add(new Attribute(Attribute.addType(attrName, "attr"), xmlBlock.getAttributeValue(node, i), xmlContext.packageName));
       }
     }
 
-    if (!name.startsWith("#")) {
-      PreferenceNode prefNode = new PreferenceNode(name, attrList);
-      if (parent != null) parent.addChild(prefNode);
-
-      processChildren(node.getChildNodes(), prefNode, xmlContext);
+    PreferenceNode prefNode = new PreferenceNode(xmlBlock.getName(node), attrList);
+    for (int child = xmlBlock.getFirstChild(node); child != XmlBlock.NONE; child = xmlBlock.getNextSibling(child)) {
+      if (xmlBlock.getNodeType(child) == XmlBlock.ELEMENT) {
+        prefNode.addChild(processNode(xmlBlock, child, xmlContext));
+      }
     }
+    return prefNode;
   }
 }
@@ -0,0 +1,162 @@
+package org.robolectric.res;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A qualifier string like "en-rUS-land-v14", parsed once into interned ids so that picking between values
+ * for a configuration doesn't have to tokenize or search strings.
+ */
+final class Qualifiers {
+  private static final Pattern PADDED_VERSION_QUALIFIER_PATTERN = Pattern.compile("-v([0-9]+)-");
+
+  private static final ConcurrentMap<String, Integer> TOKEN_IDS = new ConcurrentHashMap<String, Integer>();
+  private static final ConcurrentMap<String, Qualifiers> PARSED = new ConcurrentHashMap<String, Qualifiers>();
+
+  /** The qualifiers with a dash on either side, e.g. "-en-v14-", or "--" if there are none. */
+  final String padded;
+  /** {@link #padded} with version qualifiers replaced by "--". */
+  final String paddedWithoutVersion;
+  /** Ids of the dash-separated qualifiers, in order. */
+  final int[] tokenIds;
+  /** The api level of the first "-vNN-" qualifier, or -1 if there is none. */
+  final int apiLevel;
+  final boolean hasSeveralApiLevels;
+  /** The api level of a trailing "vNN", as given by {@link ResBunch#getVersionQualifierApiLevel(String)}. */
+  final int trailingApiLevel;
+
+  private Qualifiers(String qualifiers) {
+    padded = "-" + qualifiers + "-";
+    paddedWithoutVersion = PADDED_VERSION_QUALIFIER_PATTERN.matcher(padded).replaceAll("--");
+
+    List<Integer> ids = new ArrayList<Integer>();
+    int start = 0;
+    while (start <= qualifiers.length()) {
+      int end = qualifiers.indexOf('-', start);
+      if (end == -1) end = qualifiers.length();
+      if (end > start) ids.add(tokenId(qualifiers.substring(start, end)));
+      start = end + 1;
+    }
+    tokenIds = new int[ids.size()];
+    for (int i = 0; i < tokenIds.length; i++) tokenIds[i] = ids.get(i);
+
+    Matcher matcher = PADDED_VERSION_QUALIFIER_PATTERN.matcher(padded);
+    if (matcher.find()) {
+      apiLevel = Integer.parseInt(matcher.group(1));
+      hasSeveralApiLevels = matcher.find();
+    } else {
+      apiLevel = -1;
+      hasSeveralApiLevels = false;
+    }
+    trailingApiLevel = ResBunch.getVersionQualifierApiLevel(qualifiers);
+  }
+
+  static Qualifiers parse(String qualifiers) {
+    if (qualifiers == null) qualifiers = "";
+    Qualifiers parsed = PARSED.get(qualifiers);
+    if (parsed == null) {
+      parsed = new Qualifiers(qualifiers);
+      Qualifiers existing = PARSED.putIfAbsent(qualifiers, parsed);
+      if (existing != null) parsed = existing;
+    }
+    return parsed;
+  }
+
+  private static int tokenId(String token) {
+    Integer id = TOKEN_IDS.get(token);
+    if (id == null) {
+      synchronized (TOKEN_IDS) {
+        id = TOKEN_IDS.get(token);
+        if (id == null) TOKEN_IDS.put(token, id = TOKEN_IDS.size());
+      }
+    }
+    return id;
+  }
+
+  /**
+   * Returns the index of the next set bit at or after {@code from}, or -1 if there is none.
+   */
+  static int nextSetBit(long[] bits, int from) {
+    int word = from >>> 6;
+    if (word >= bits.length) return -1;
+    long remaining = bits[word] & (-1L << from);
+    while (true) {
+      if (remaining != 0) return (word << 6) + Long.numberOfTrailingZeros(remaining);
+      if (++word == bits.length) return -1;
+      remaining = bits[word];
+    }
+  }
+
+  /**
+   * For each qualifier, a bit mask of the values that have it, built once for a list of values.
+   */
+  static final class Index {
+    private final int count;
+    private final int modCount;
+    private final int[] tokenIds;
+    private final long[][] masks;
+
+    Index(Qualifiers[] valueQualifiers, int modCount) {
+      this.count = valueQualifiers.length;
+      this.modCount = modCount;
+
+      int words = (count + 63) >>> 6;
+      Map<Integer, long[]> masksByTokenId = new HashMap<Integer, long[]>();
+      for (int i = 0; i < count; i++) {
+        for (int tokenId : valueQualifiers[i].tokenIds) {
+          long[] mask = masksByTokenId.get(tokenId);
+          if (mask == null) masksByTokenId.put(tokenId, mask = new long[words]);
+          mask[i >>> 6] |= 1L << i;
+        }
+      }
+
+      tokenIds = new int[masksByTokenId.size()];
+      int i = 0;
+      for (Integer tokenId : masksByTokenId.keySet()) tokenIds[i++] = tokenId;
+      Arrays.sort(tokenIds);
+      masks = new long[tokenIds.length][];
+      for (i = 0; i < tokenIds.length; i++) masks[i] = masksByTokenId.get(tokenIds[i]);
+    }
+
+    boolean isCurrent(int count, int modCount) {
+      return this.count == count && this.modCount == modCount;
+    }
+
+    /**
+     * Narrows the values down qualifier by qualifier, in the order given: values without a qualifier are
+     * eliminated unless none have it, and narrowing stops once a qualifier matches a single value.
+     *
+     * @return a bit set of the remaining values, never empty
+     */
+    long[] match(Qualifiers qualifiers) {
+      int words = (count + 63) >>> 6;
+      long[] possibles = new long[words];
+      for (int i = 0; i < words; i++) possibles[i] = -1L;
+      if ((count & 63) != 0) possibles[words - 1] = (1L << count) - 1;
+
+      long[] matches = new long[words];
+      for (int tokenId : qualifiers.tokenIds) {
+        int maskIndex = Arrays.binarySearch(tokenIds, tokenId);
+        if (maskIndex < 0) continue;
+
+        long[] mask = masks[maskIndex];
+        int matchCount = 0;
+        for (int i = 0; i < words; i++) {
+          matches[i] = possibles[i] & mask[i];
+          matchCount += Long.bitCount(matches[i]);
+        }
+
+        if (matchCount > 0) System.arraycopy(matches, 0, possibles, 0, words);
+        if (matchCount == 1) break;
+      }
+      return possibles;
+    }
+  }
+}
@@ -1,14 +1,14 @@
 package org.robolectric.res;
 
-import java.math.BigInteger;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,21 +17,17 @@ public class ResBunch {
   // Matches a version qualifier like "v14". Parentheses capture the numeric
   // part for easy retrieval with Matcher.group(1).
   private static final String VERSION_QUALIFIER_REGEX = "v([0-9]+)";
-  private static final String PADDED_VERSION_QUALIFIER_REGEX
-    = "-" + VERSION_QUALIFIER_REGEX + "-";
   private static final Pattern VERSION_QUALIFIER_PATTERN_WITH_LINE_END
     = Pattern.compile(VERSION_QUALIFIER_REGEX + "$");
-  private static final Pattern VERSION_QUALIFIER_PATTERN_WITH_DASHES
-    = Pattern.compile(PADDED_VERSION_QUALIFIER_REGEX);
 
   private final Map<String, ResMap<TypedResource>> types = new LinkedHashMap<String, ResMap<TypedResource>>();
+  private final ConcurrentMap<String, ConcurrentMap<ResName, Value>> picked = new ConcurrentHashMap<String, ConcurrentMap<ResName, Value>>();
 
   public void put(String attrType, String name, TypedResource value, XmlLoader.XmlContext xmlContext) {
     ResName resName = new ResName(xmlContext.packageName, attrType, name);
     ResMap<TypedResource> valuesMap = getValuesMap(attrType);
-    Values values = valuesMap.find(resName);
-    values.add(new Value(xmlContext.getQualifiers(), value, xmlContext));
-    Collections.sort(values);
+    valuesMap.find(resName).insert(new Value(xmlContext.getQualifiers(), value, xmlContext));
+    picked.clear();
   }
 
   private ResMap<TypedResource> getValuesMap(String attrType) {
@@ -49,9 +45,26 @@ public class ResBunch {
   }
 
   public Value getValue(@NotNull ResName resName, String qualifiers) {
-    ResMap<TypedResource> valuesMap = getValuesMap(resName.type);
-    Values values = valuesMap.find(resName);
-    return (values != null) ? pick(values, qualifiers) : null;
+    ConcurrentMap<ResName, Value> pickedForQualifiers = getPicked(qualifiers);
+    Value value = pickedForQualifiers.get(resName);
+    if (value == null) {
+      ResMap<TypedResource> valuesMap = types.get(resName.type);
+      Values values = valuesMap == null ? null : valuesMap.get(resName);
+      value = (values != null) ? pick(values, qualifiers) : null;
+      if (value != null) pickedForQualifiers.put(resName, value);
+    }
+    return value;
+  }
+
+  private ConcurrentMap<ResName, Value> getPicked(String qualifiers) {
+    if (qualifiers == null) qualifiers = "";
+    ConcurrentMap<ResName, Value> pickedForQualifiers = picked.get(qualifiers);
+    if (pickedForQualifiers == null) {
+      pickedForQualifiers = new ConcurrentHashMap<ResName, Value>();
+      ConcurrentMap<ResName, Value> existing = picked.putIfAbsent(qualifiers, pickedForQualifiers);
+      if (existing != null) pickedForQualifiers = existing;
+    }
+    return pickedForQualifiers;
   }
 
   public static int getVersionQualifierApiLevel(String qualifiers) {
@@ -66,29 +79,8 @@ public class ResBunch {
     final int count = values.size();
     if (count == 0) return null;
 
-    BigInteger possibles = BigInteger.ZERO;
-    for (int i = 0; i < count; i++) possibles = possibles.setBit(i);
-
-    StringTokenizer st = new StringTokenizer(qualifiers, "-");
-    while (st.hasMoreTokens()) {
-      String qualifier = st.nextToken();
-      String paddedQualifier = "-" + qualifier + "-";
-      BigInteger matches = BigInteger.ZERO;
-
-      for (int i = 0; i < count; i++) {
-        if (!possibles.testBit(i)) continue;
-
-        if (values.get(i).qualifiers.contains(paddedQualifier)) {
-          matches = matches.setBit(i);
-        }
-      }
-
-      if (!matches.equals(BigInteger.ZERO)) {
-        possibles = possibles.and(matches); // eliminate any that didn't match this qualifier
-      }
-
-      if (matches.bitCount() == 1) break;
-    }
+    Qualifiers targetQualifiers = Qualifiers.parse(qualifiers);
+    long[] possibles = values.getIndex().match(targetQualifiers);
 
     /*
      * If any resources out of the possibles have version qualifiers, return the
@@ -96,24 +88,18 @@ public class ResBunch {
      * in the precedence table at:
      * https://developer.android.com/guide/topics/resources/providing-resources.html#table2
      */
-    int targetApiLevel = getVersionQualifierApiLevel(qualifiers);
-    if (qualifiers.length() > 0 && targetApiLevel != -1) {
+    int targetApiLevel = targetQualifiers.trailingApiLevel;
+    if (targetApiLevel != -1) {
       Value bestMatch = null;
       int bestMatchDistance = Integer.MAX_VALUE;
-      for (int i = 0; i < count; i++) {
-        if (!possibles.testBit(i)) {
-          continue;
-        }
-        
+      for (int i = Qualifiers.nextSetBit(possibles, 0); i != -1; i = Qualifiers.nextSetBit(possibles, i + 1)) {
         Value value = values.get(i);
         int distance = getDistance(value, targetApiLevel);
-          // Remove the version part and see if they still match
-          String paddedQualifier = "-" + qualifiers + "-";
-          String valueWithoutVersion = value.qualifiers.replaceAll(PADDED_VERSION_QUALIFIER_REGEX, "--");
-          String qualifierWithoutVersion = paddedQualifier.replaceAll(PADDED_VERSION_QUALIFIER_REGEX, "--");
-          if (qualifierWithoutVersion.contains(valueWithoutVersion) && distance >= 0 && distance < bestMatchDistance) {
-            bestMatch = value;
-            bestMatchDistance = distance;
+        // Remove the version part and see if they still match
+        if (targetQualifiers.paddedWithoutVersion.contains(value.parsedQualifiers.paddedWithoutVersion)
+            && distance >= 0 && distance < bestMatchDistance) {
+          bestMatch = value;
+          bestMatchDistance = distance;
         }
       }
       if (bestMatch != null) {
@@ -121,12 +107,11 @@ public class ResBunch {
       }
     }
 
-    for (int i = 0; i < count; i++) {
-      if (possibles.testBit(i)) return values.get(i);
-    }
+    int first = Qualifiers.nextSetBit(possibles, 0);
+    if (first != -1) return values.get(first);
     throw new IllegalStateException("couldn't handle qualifiers \"" + qualifiers + "\"");
   }
-  
+
   /*
    * Gets the difference between the version qualifier of val and targetApiLevel.
    *
@@ -136,22 +121,14 @@ public class ResBunch {
    *   or val has no version qualifier
    */
   private static int getDistance(Value val, int targetApiLevel) {
-    int distance = -1;
-    Matcher m = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(val.qualifiers);
-    if (m.find()) {
-      String match = m.group(1);
-      int resApiLevel = Integer.parseInt(match);
-      distance = targetApiLevel - resApiLevel;
-
-      if (m.find()) {
-        throw new IllegalStateException("A resource file was found that had two API level qualifiers: " + val);
-      }
-    } else {
-    	if (val.qualifiers.matches("--")) {
-    		distance = targetApiLevel;
-    	}
+    Qualifiers qualifiers = val.parsedQualifiers;
+    if (qualifiers.hasSeveralApiLevels) {
+      throw new IllegalStateException("A resource file was found that had two API level qualifiers: " + val);
+    }
+    if (qualifiers.apiLevel != -1) {
+      return targetApiLevel - qualifiers.apiLevel;
     }
-    return distance;
+    return "--".equals(qualifiers.padded) ? targetApiLevel : -1;
   }
 
   public int size() {
@@ -168,14 +145,49 @@ public class ResBunch {
     }
   }
 
+  /**
+   * Returns every value, by resource name, in the order {@link #pick(Values, String)} sees them.
+   */
+  Map<ResName, Values> getAllValues() {
+    Map<ResName, Values> allValues = new LinkedHashMap<ResName, Values>();
+    for (ResMap<?> map : types.values()) {
+      allValues.putAll(map.map);
+    }
+    return allValues;
+  }
+
+  void putAll(ResName resName, List<Value> newValues) {
+    Values values = getValuesMap(resName.type).find(resName);
+    for (Value value : newValues) {
+      values.insert(value);
+    }
+    picked.clear();
+  }
+
   public void mergeLibraryStyle(ResBunch fromResBundle, String packageName) {
     for (Map.Entry<String, ResMap<TypedResource>> entry : fromResBundle.types.entrySet()) {
       getValuesMap(entry.getKey()).merge(packageName, entry.getValue());
     }
+    picked.clear();
+  }
+
+  /**
+   * Merges in just the values for the given resource, named as it is in {@code fromResBundle}.
+   */
+  public void mergeLibraryStyle(ResBunch fromResBundle, String packageName, ResName resName) {
+    ResMap<TypedResource> sourceMap = fromResBundle.types.get(resName.type);
+    if (sourceMap == null) return;
+
+    ResName mergedResName = resName.withPackageName(packageName);
+    getValuesMap(resName.type).merge(mergedResName, sourceMap.get(resName));
+    for (ConcurrentMap<ResName, Value> pickedForQualifiers : picked.values()) {
+      pickedForQualifiers.remove(mergedResName);
+    }
   }
 
   public static class Value implements Comparable<Value> {
     final String qualifiers;
+    final Qualifiers parsedQualifiers;
     final TypedResource value;
     final XmlLoader.XmlContext xmlContext;
 
@@ -185,7 +197,8 @@ public class ResBunch {
       }
 
       this.xmlContext = xmlContext;
-      this.qualifiers = qualifiers == null ? "--" : "-" + qualifiers + "-";
+      this.parsedQualifiers = Qualifiers.parse(qualifiers);
+      this.qualifiers = parsedQualifiers.padded;
       this.value = value;
     }
 
@@ -210,12 +223,43 @@ public class ResBunch {
   }
 
   protected static class Values extends ArrayList<Value> {
+    private transient volatile Qualifiers.Index index;
+
+    /**
+     * Adds a value after any with the same qualifiers, keeping the list sorted.
+     */
+    void insert(Value value) {
+      int low = 0;
+      int high = size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (get(mid).compareTo(value) <= 0) low = mid + 1;
+        else high = mid;
+      }
+      add(low, value);
+    }
+
+    Qualifiers.Index getIndex() {
+      Qualifiers.Index index = this.index;
+      if (index == null || !index.isCurrent(size(), modCount)) {
+        Qualifiers[] valueQualifiers = new Qualifiers[size()];
+        for (int i = 0; i < valueQualifiers.length; i++) {
+          valueQualifiers[i] = get(i).parsedQualifiers;
+        }
+        this.index = index = new Qualifiers.Index(valueQualifiers, modCount);
+      }
+      return index;
+    }
   }
 
   private static class ResMap<T> {
     private final Map<ResName, Values> map = new HashMap<ResName, Values>();
     private boolean immutable;
 
+    public Values get(ResName resName) {
+      return map.get(resName);
+    }
+
     public Values find(ResName resName) {
       Values values = map.get(resName);
       if (values == null) map.put(resName, values = new Values());
@@ -223,14 +267,17 @@ public class ResBunch {
     }
 
     private void merge(String packageName, ResMap<T> sourceMap) {
+      for (Map.Entry<ResName, Values> entry : sourceMap.map.entrySet()) {
+        merge(entry.getKey().withPackageName(packageName), entry.getValue());
+      }
+    }
+
+    private void merge(ResName resName, Values values) {
       if (immutable) {
         throw new IllegalStateException("immutable!");
       }
 
-      for (Map.Entry<ResName, Values> entry : sourceMap.map.entrySet()) {
-        ResName resName = entry.getKey().withPackageName(packageName);
-        find(resName).addAll(entry.getValue());
-      }
+      if (values != null) find(resName).addAll(values);
     }
 
     public int size() {
@@ -1,23 +1,23 @@
 package org.robolectric.res;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class ResBundle<T> {
   private final ResMap<T> valuesMap = new ResMap<T>();
   private final ResMap<List<T>> valuesArrayMap = new ResMap<List<T>>();
+  private final ConcurrentMap<String, ConcurrentMap<ResName, Value<T>>> picked = new ConcurrentHashMap<String, ConcurrentMap<ResName, Value<T>>>();
   private String overrideNamespace;
 
   public void put(String attrType, String name, T value, XmlLoader.XmlContext xmlContext) {
     ResName resName = new ResName(maybeOverride(xmlContext.packageName), attrType, name);
-    Values<T> values = valuesMap.find(resName);
-    values.add(new Value<T>(xmlContext.getQualifiers(), value, xmlContext));
-    Collections.sort(values);
+    valuesMap.find(resName).insert(new Value<T>(xmlContext.getQualifiers(), value, xmlContext));
+    picked.clear();
   }
 
   public T get(ResName resName, String qualifiers) {
@@ -26,41 +26,34 @@ public class ResBundle<T> {
   }
 
   public Value<T> getValue(ResName resName, String qualifiers) {
-    Values<T> values = valuesMap.find(maybeOverride(resName));
-    return (values != null) ? pick(values, qualifiers) : null;
+    ConcurrentMap<ResName, Value<T>> pickedForQualifiers = getPicked(qualifiers);
+    Value<T> value = pickedForQualifiers.get(resName);
+    if (value == null) {
+      Values<T> values = valuesMap.get(maybeOverride(resName));
+      value = (values != null) ? pick(values, qualifiers) : null;
+      if (value != null) pickedForQualifiers.put(resName, value);
+    }
+    return value;
+  }
+
+  private ConcurrentMap<ResName, Value<T>> getPicked(String qualifiers) {
+    if (qualifiers == null) qualifiers = "";
+    ConcurrentMap<ResName, Value<T>> pickedForQualifiers = picked.get(qualifiers);
+    if (pickedForQualifiers == null) {
+      pickedForQualifiers = new ConcurrentHashMap<ResName, Value<T>>();
+      ConcurrentMap<ResName, Value<T>> existing = picked.putIfAbsent(qualifiers, pickedForQualifiers);
+      if (existing != null) pickedForQualifiers = existing;
+    }
+    return pickedForQualifiers;
   }
 
   public static <T> Value<T> pick(Values<T> values, String qualifiers) {
     final int count = values.size();
     if (count == 0) return null;
 
-    BigInteger possibles = BigInteger.ZERO;
-    for (int i = 0; i < count; i++) possibles = possibles.setBit(i);
-
-    StringTokenizer st = new StringTokenizer(qualifiers, "-");
-    while (st.hasMoreTokens()) {
-      String qualifier = st.nextToken();
-      String paddedQualifier = "-" + qualifier + "-";
-      BigInteger matches = BigInteger.ZERO;
-
-      for (int i = 0; i < count; i++) {
-        if (!possibles.testBit(i)) continue;
-
-        if (values.get(i).qualifiers.contains(paddedQualifier)) {
-          matches = matches.setBit(i);
-        }
-      }
-
-      if (!matches.equals(BigInteger.ZERO)) {
-        possibles = possibles.and(matches); // eliminate any that didn't match this qualifier
-      }
-
-      if (matches.bitCount() == 1) break;
-    }
-
-    for (int i = 0; i < count; i++) {
-      if (possibles.testBit(i)) return values.get(i);
-    }
+    long[] possibles = values.getIndex().match(Qualifiers.parse(qualifiers));
+    int first = Qualifiers.nextSetBit(possibles, 0);
+    if (first != -1) return values.get(first);
     throw new IllegalStateException("couldn't handle qualifiers \"" + qualifiers + "\"");
   }
 
@@ -86,13 +79,43 @@ public class ResBundle<T> {
     return overrideNamespace == null ? resName : new ResName(overrideNamespace, resName.type, resName.name);
   }
 
+  /**
+   * Returns every value, by resource name, in the order {@link #pick(Values, String)} sees them.
+   */
+  Map<ResName, Values<T>> getAllValues() {
+    return new LinkedHashMap<ResName, Values<T>>(valuesMap.map);
+  }
+
+  void putAll(ResName resName, List<Value<T>> newValues) {
+    Values<T> values = valuesMap.find(resName);
+    for (Value<T> value : newValues) {
+      values.insert(value);
+    }
+    picked.clear();
+  }
+
   public void mergeLibraryStyle(ResBundle<T> fromResBundle, String packageName) {
     valuesMap.merge(packageName, fromResBundle.valuesMap);
     valuesArrayMap.merge(packageName, fromResBundle.valuesArrayMap);
+    picked.clear();
+  }
+
+  /**
+   * Merges in just the values for the given resource, named as it is in {@code fromResBundle}.
+   */
+  public void mergeLibraryStyle(ResBundle<T> fromResBundle, String packageName, ResName resName) {
+    ResName fromResName = fromResBundle.maybeOverride(resName);
+    ResName mergedResName = resName.withPackageName(packageName);
+    valuesMap.merge(mergedResName, fromResBundle.valuesMap.get(fromResName));
+    valuesArrayMap.merge(mergedResName, fromResBundle.valuesArrayMap.get(fromResName));
+    for (ConcurrentMap<ResName, Value<T>> pickedForQualifiers : picked.values()) {
+      pickedForQualifiers.remove(mergedResName);
+    }
   }
 
   static class Value<T> implements Comparable<Value<T>> {
     final String qualifiers;
+    final Qualifiers parsedQualifiers;
     final T value;
     final XmlLoader.XmlContext xmlContext;
 
@@ -102,7 +125,8 @@ public class ResBundle<T> {
       }
 
       this.xmlContext = xmlContext;
-      this.qualifiers = qualifiers == null ? "--" : "-" + qualifiers + "-";
+      this.parsedQualifiers = Qualifiers.parse(qualifiers);
+      this.qualifiers = parsedQualifiers.padded;
       this.value = value;
     }
 
@@ -113,12 +137,43 @@ public class ResBundle<T> {
   }
 
   static class Values<T> extends ArrayList<Value<T>> {
+    private transient volatile Qualifiers.Index index;
+
+    /**
+     * Adds a value after any with the same qualifiers, keeping the list sorted.
+     */
+    void insert(Value<T> value) {
+      int low = 0;
+      int high = size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (get(mid).compareTo(value) <= 0) low = mid + 1;
+        else high = mid;
+      }
+      add(low, value);
+    }
+
+    Qualifiers.Index getIndex() {
+      Qualifiers.Index index = this.index;
+      if (index == null || !index.isCurrent(size(), modCount)) {
+        Qualifiers[] valueQualifiers = new Qualifiers[size()];
+        for (int i = 0; i < valueQualifiers.length; i++) {
+          valueQualifiers[i] = get(i).parsedQualifiers;
+        }
+        this.index = index = new Qualifiers.Index(valueQualifiers, modCount);
+      }
+      return index;
+    }
   }
 
   private static class ResMap<T> {
     private final Map<ResName, Values<T>> map = new HashMap<ResName, Values<T>>();
     private boolean immutable;
 
+    public Values<T> get(ResName resName) {
+      return map.get(resName);
+    }
+
     public Values<T> find(ResName resName) {
       Values<T> values = map.get(resName);
       if (values == null) map.put(resName, values = new Values<T>());
@@ -126,14 +181,17 @@ public class ResBundle<T> {
     }
 
     private void merge(String packageName, ResMap<T> sourceMap) {
+      for (Map.Entry<ResName, Values<T>> entry : sourceMap.map.entrySet()) {
+        merge(entry.getKey().withPackageName(packageName), entry.getValue());
+      }
+    }
+
+    private void merge(ResName resName, Values<T> values) {
       if (immutable) {
         throw new IllegalStateException("immutable!");
       }
 
-      for (Map.Entry<ResName, Values<T>> entry : sourceMap.map.entrySet()) {
-        ResName resName = entry.getKey().withPackageName(packageName);
-        find(resName).addAll(entry.getValue());
-      }
+      if (values != null) find(resName).addAll(values);
     }
 
     public int size() {
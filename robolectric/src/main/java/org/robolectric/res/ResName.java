@@ -3,6 +3,8 @@ package org.robolectric.res;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,11 +13,14 @@ public class ResName {
   private static final int NAMESPACE = 1;
   private static final int TYPE = 2;
   private static final int NAME = 3;
+  private static final ConcurrentMap<String, String> NAMESPACE_URIS = new ConcurrentHashMap<String, String>();
 
   public final @NotNull String packageName;
   public final @NotNull String type;
   public final @NotNull String name;
 
+  private int hashCode;
+
   public ResName(@NotNull String packageName, @NotNull String type, @NotNull String name) {
     this.packageName = packageName;
     this.type = type;
@@ -101,9 +106,13 @@ public class ResName {
 
   @Override
   public int hashCode() {
-    int result = packageName.hashCode();
-    result = 31 * result + type.hashCode();
-    result = 31 * result + name.hashCode();
+    int result = hashCode;
+    if (result == 0) {
+      result = packageName.hashCode();
+      result = 31 * result + type.hashCode();
+      result = 31 * result + name.hashCode();
+      hashCode = result;
+    }
     return result;
   }
 
@@ -117,7 +126,12 @@ public class ResName {
   }
 
   public String getNamespaceUri() {
-    return "http://schemas.android.com/apk/res/" + packageName;
+    String namespaceUri = NAMESPACE_URIS.get(packageName);
+    if (namespaceUri == null) {
+      namespaceUri = "http://schemas.android.com/apk/res/" + packageName;
+      NAMESPACE_URIS.putIfAbsent(packageName, namespaceUri);
+    }
+    return namespaceUri;
   }
 
   public ResName withPackageName(String packageName) {
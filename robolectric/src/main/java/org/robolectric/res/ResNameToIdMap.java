@@ -0,0 +1,121 @@
+package org.robolectric.res;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps resource names to ids using an open-addressing table; ids are kept boxed so lookups don't allocate.
+ *
+ * Entries put before {@link #freeze()} go into the table, which must happen before the map is shared between
+ * threads; reading the table after that takes no locks. Entries put afterwards, like ids assigned on the fly,
+ * go into a small synchronized overflow map.
+ */
+public final class ResNameToIdMap {
+  private ResName[] resNames = new ResName[16];
+  private Integer[] ids = new Integer[16];
+  private int size;
+  private boolean frozen;
+
+  private final Map<ResName, Integer> overflow = new HashMap<ResName, Integer>();
+  private volatile boolean hasOverflow;
+
+  public Integer get(ResName resName) {
+    int mask = resNames.length - 1;
+    for (int slot = hash(resName) & mask; ; slot = (slot + 1) & mask) {
+      ResName slotResName = resNames[slot];
+      if (slotResName == null) break;
+      if (slotResName == resName || slotResName.equals(resName)) return ids[slot];
+    }
+
+    if (hasOverflow) {
+      synchronized (overflow) {
+        return overflow.get(resName);
+      }
+    }
+    return null;
+  }
+
+  public boolean containsKey(ResName resName) {
+    return get(resName) != null;
+  }
+
+  public void put(ResName resName, int id) {
+    put(resName, Integer.valueOf(id));
+  }
+
+  private void put(ResName resName, Integer id) {
+    if (frozen) {
+      synchronized (overflow) {
+        overflow.put(resName, id);
+        hasOverflow = true;
+      }
+      return;
+    }
+
+    if ((size + 1) * 2 > resNames.length) resize(resNames.length * 2);
+    int mask = resNames.length - 1;
+    int slot = hash(resName) & mask;
+    while (resNames[slot] != null && !resNames[slot].equals(resName)) {
+      slot = (slot + 1) & mask;
+    }
+    if (resNames[slot] == null) size++;
+    resNames[slot] = resName;
+    ids[slot] = id;
+  }
+
+  public void putAll(ResNameToIdMap other) {
+    for (int slot = 0; slot < other.resNames.length; slot++) {
+      if (other.resNames[slot] != null) put(other.resNames[slot], other.ids[slot]);
+    }
+    synchronized (other.overflow) {
+      for (Map.Entry<ResName, Integer> entry : other.overflow.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (overflow) {
+      return size + overflow.size();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the names in the map.
+   */
+  public List<ResName> keys() {
+    List<ResName> keys = new ArrayList<ResName>(size());
+    for (ResName resName : resNames) {
+      if (resName != null) keys.add(resName);
+    }
+    synchronized (overflow) {
+      keys.addAll(overflow.keySet());
+    }
+    return keys;
+  }
+
+  /**
+   * Stops adding entries to the table, so it can be read without locking from now on.
+   */
+  public void freeze() {
+    frozen = true;
+  }
+
+  private void resize(int capacity) {
+    ResName[] oldResNames = resNames;
+    Integer[] oldIds = ids;
+    resNames = new ResName[capacity];
+    ids = new Integer[capacity];
+    size = 0;
+    for (int slot = 0; slot < oldResNames.length; slot++) {
+      if (oldResNames[slot] != null) put(oldResNames[slot], oldIds[slot]);
+    }
+  }
+
+  private static int hash(ResName resName) {
+    int h = resName.hashCode();
+    return h ^ (h >>> 16);
+  }
+}
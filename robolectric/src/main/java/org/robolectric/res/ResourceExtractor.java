@@ -4,7 +4,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -22,6 +21,7 @@ public class ResourceExtractor extends ResourceIndex {
     processedRFile = null;
     packageName = "";
     packageNames = Arrays.asList();
+    freeze();
   }
 
   /**
@@ -42,6 +42,7 @@ public class ResourceExtractor extends ResourceIndex {
     processedRFile = androidRClass;
     packageName = processedRFile.getPackage().getName();
     packageNames = Arrays.asList(packageName);
+    freeze();
   }
 
   public ResourceExtractor(ResourcePath resourcePath) {
@@ -49,11 +50,12 @@ public class ResourceExtractor extends ResourceIndex {
     packageNames = Arrays.asList(packageName);
     if (resourcePath.rClass == null) {
       processedRFile = null;
-      return;
+    } else {
+      if (REMAP_RESOURCES) RESOURCE_REMAPPER.remapRClass(resourcePath.rClass);
+      processedRFile = resourcePath.rClass;
+      gatherResourceIdsAndNames(resourcePath.rClass, packageName, true);
     }
-    if (REMAP_RESOURCES) RESOURCE_REMAPPER.remapRClass(resourcePath.rClass);
-    processedRFile = resourcePath.rClass;
-    gatherResourceIdsAndNames(resourcePath.rClass, packageName, true);
+    freeze();
   }
 
   private void gatherResourceIdsAndNames(Class<?> rClass, String packageName, boolean checkForCollisions) {
@@ -93,22 +95,27 @@ public class ResourceExtractor extends ResourceIndex {
   }
 
   @Override
-  public synchronized Integer getResourceId(ResName resName) {
+  public Integer getResourceId(ResName resName) {
     Integer id = resourceNameToId.get(resName);
     if (id == null && ("android".equals(resName.packageName) || "".equals(resName.packageName))) {
-      if (maxUsedInt == null) {
-        maxUsedInt = resourceIdToResName.isEmpty() ? 0 : Collections.max(resourceIdToResName.keySet());
+      synchronized (this) {
+        id = resourceNameToId.get(resName);
+        if (id == null) {
+          if (maxUsedInt == null) {
+            maxUsedInt = resourceIdToResName.maxId();
+          }
+          id = ++maxUsedInt;
+          resourceNameToId.put(resName, id);
+          resourceIdToResName.put(id, resName);
+          LOGGER.fine("no id mapping found for " + resName.getFullyQualifiedName() + "; assigning ID #0x" + Integer.toHexString(id));
+        }
       }
-      id = ++maxUsedInt;
-      resourceNameToId.put(resName, id);
-      resourceIdToResName.put(id, resName);
-      LOGGER.fine("no id mapping found for " + resName.getFullyQualifiedName() + "; assigning ID #0x" + Integer.toHexString(id));
     }
     return id;
   }
 
   @Override
-  public synchronized ResName getResName(int resourceId) {
+  public ResName getResName(int resourceId) {
     return resourceIdToResName.get(resourceId);
   }
 
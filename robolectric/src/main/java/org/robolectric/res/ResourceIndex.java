@@ -1,12 +1,10 @@
 package org.robolectric.res;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 public abstract class ResourceIndex {
-  protected final Map<ResName, Integer> resourceNameToId = new HashMap<ResName, Integer>();
-  protected final Map<Integer, ResName> resourceIdToResName = new HashMap<Integer, ResName>();
+  protected final ResNameToIdMap resourceNameToId = new ResNameToIdMap();
+  protected final IdToResNameMap resourceIdToResName = new IdToResNameMap();
 
   public abstract Integer getResourceId(ResName resName);
 
@@ -18,4 +16,13 @@ public abstract class ResourceIndex {
   public abstract ResName getResName(int resourceId);
 
   public abstract Collection<String> getPackages();
+
+  /**
+   * Called once the index has been built, before it's shared; ids and names added afterwards are kept apart,
+   * so that looking up the rest doesn't need locking.
+   */
+  protected void freeze() {
+    resourceNameToId.freeze();
+    resourceIdToResName.freeze();
+  }
 }
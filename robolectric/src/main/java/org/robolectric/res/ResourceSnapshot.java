@@ -0,0 +1,461 @@
+package org.robolectric.res;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary copy of everything a {@link PackageResourceLoader} parses out of a package's values files, so that
+ * JVMs after the first one can memory-map it instead of parsing the same XML again. Enabled by pointing the
+ * {@value #DIR_PROPERTY} system property at a directory.
+ *
+ * A snapshot is named for a hash of the package name and the names and contents of the values files it was built
+ * from, so any change to them simply misses. Bump {@link #FORMAT_VERSION} whenever the format, or what the value
+ * loaders make of the XML, changes.
+ *
+ * Only values are snapshotted; resources with a file of their own (layouts, menus, drawables, etc.) still come
+ * from their XML, as do resource ids, which come from R classes rather than from the resource directories.
+ */
+public class ResourceSnapshot {
+  public static final String DIR_PROPERTY = "robolectric.resourceSnapshotDir";
+
+  static final int FORMAT_VERSION = 1;
+  private static final int MAGIC = 0x52524553; // "RRES"
+
+  private static final byte STRING = 0;
+  private static final byte ARRAY = 1;
+  private static final byte ATTR_DATA = 2;
+  private static final byte STYLE_DATA = 3;
+
+  private final File file;
+  private final List<FsFile> valueFiles;
+
+  ResourceSnapshot(File dir, String packageName, List<FsFile> valueFiles) throws IOException {
+    this.valueFiles = valueFiles;
+    this.file = new File(dir, packageName + "-" + key(packageName, valueFiles) + ".res");
+  }
+
+  /**
+   * Returns the snapshot for the given package's values files, or null if snapshots aren't enabled.
+   */
+  static ResourceSnapshot forValueFiles(String packageName, List<FsFile> valueFiles) throws IOException {
+    String dir = System.getProperty(DIR_PROPERTY);
+    return dir == null ? null : new ResourceSnapshot(new File(dir), packageName, valueFiles);
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Loads the snapshot into the given bundles, returning false if there isn't one yet. Throws an {@link IOException}
+   * if the snapshot can't be read or is corrupt, in which case the bundles are left as they were.
+   */
+  boolean readTo(ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) throws IOException {
+    if (!file.isFile()) return false;
+
+    ByteBuffer buffer;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      randomAccessFile.close();
+    }
+
+    if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+      throw new IOException("unexpected format in " + file);
+    }
+    try {
+      new Reader(buffer).readTo(data, pluralsData);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("truncated snapshot " + file, e);
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("corrupt snapshot " + file, e);
+    } catch (NegativeArraySizeException e) {
+      throw new IOException("corrupt snapshot " + file, e);
+    }
+    return true;
+  }
+
+  /**
+   * Writes whatever the given bundles hold from this snapshot's values files.
+   */
+  void write(ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) throws IOException {
+    File dir = file.getParentFile();
+    dir.mkdirs();
+
+    // write and rename, so concurrent JVMs never see a partial snapshot
+    File tmpFile = File.createTempFile("resources", ".tmp", dir);
+    boolean renamed = false;
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        new Writer(out).write(data, pluralsData);
+      } finally {
+        out.close();
+      }
+      renamed = tmpFile.renameTo(file);
+    } finally {
+      // if the rename failed, most likely another JVM got there first
+      if (!renamed) {
+        tmpFile.delete();
+      }
+    }
+  }
+
+  /*
+   * The format, after the header, is:
+   *
+   *   string table: count, then each string as a length and its UTF-8 bytes
+   *   values: count of names, then for each a name and its values (a file index and a typed resource)
+   *   plurals: count of names, then for each a name and its values (a file index and quantity/string pairs)
+   *
+   * Names and other strings are indices into the string table; file indices are positions in the list of values
+   * files the snapshot was keyed on.
+   */
+
+  private class Writer {
+    private final DataOutputStream out;
+    private final Map<String, Integer> fileIndices = new HashMap<String, Integer>();
+    private final Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+
+    Writer(DataOutputStream out) {
+      this.out = out;
+      for (int i = 0; i < valueFiles.size(); i++) {
+        fileIndices.put(valueFiles.get(i).getPath(), i);
+      }
+    }
+
+    void write(ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) throws IOException {
+      // collect everything first, so the string table can come before the records that refer to it
+      Map<ResName, List<ResBunch.Value>> valuesByName = new LinkedHashMap<ResName, List<ResBunch.Value>>();
+      for (Map.Entry<ResName, ResBunch.Values> entry : data.getAllValues().entrySet()) {
+        List<ResBunch.Value> values = new ArrayList<ResBunch.Value>();
+        for (ResBunch.Value value : entry.getValue()) {
+          if (fileIndex(value.xmlContext) != null) {
+            values.add(value);
+            intern(value.value);
+          }
+        }
+        if (!values.isEmpty()) {
+          resName(entry.getKey());
+          valuesByName.put(entry.getKey(), values);
+        }
+      }
+
+      Map<ResName, List<ResBundle.Value<PluralResourceLoader.PluralRules>>> pluralsByName = new LinkedHashMap<ResName, List<ResBundle.Value<PluralResourceLoader.PluralRules>>>();
+      for (Map.Entry<ResName, ResBundle.Values<PluralResourceLoader.PluralRules>> entry : pluralsData.getAllValues().entrySet()) {
+        List<ResBundle.Value<PluralResourceLoader.PluralRules>> values = new ArrayList<ResBundle.Value<PluralResourceLoader.PluralRules>>();
+        for (ResBundle.Value<PluralResourceLoader.PluralRules> value : entry.getValue()) {
+          if (fileIndex(value.xmlContext) != null) {
+            values.add(value);
+            for (Plural plural : value.value.plurals) {
+              intern(plural.quantity);
+              intern(plural.string);
+            }
+          }
+        }
+        if (!values.isEmpty()) {
+          resName(entry.getKey());
+          pluralsByName.put(entry.getKey(), values);
+        }
+      }
+
+      out.writeInt(strings.size());
+      for (String string : strings) {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      out.writeInt(valuesByName.size());
+      for (Map.Entry<ResName, List<ResBunch.Value>> entry : valuesByName.entrySet()) {
+        writeInts(resName(entry.getKey()));
+        out.writeInt(entry.getValue().size());
+        for (ResBunch.Value value : entry.getValue()) {
+          out.writeInt(fileIndex(value.xmlContext));
+          writeTypedResource(value.value);
+        }
+      }
+
+      out.writeInt(pluralsByName.size());
+      for (Map.Entry<ResName, List<ResBundle.Value<PluralResourceLoader.PluralRules>>> entry : pluralsByName.entrySet()) {
+        writeInts(resName(entry.getKey()));
+        out.writeInt(entry.getValue().size());
+        for (ResBundle.Value<PluralResourceLoader.PluralRules> value : entry.getValue()) {
+          out.writeInt(fileIndex(value.xmlContext));
+          out.writeInt(value.value.plurals.size());
+          for (Plural plural : value.value.plurals) {
+            out.writeInt(intern(plural.quantity));
+            out.writeInt(intern(plural.string));
+          }
+        }
+      }
+    }
+
+    private Integer fileIndex(XmlLoader.XmlContext xmlContext) {
+      return xmlContext == null ? null : fileIndices.get(xmlContext.getXmlFile().getPath());
+    }
+
+    private int[] resName(ResName resName) {
+      return new int[] {intern(resName.packageName), intern(resName.type), intern(resName.name)};
+    }
+
+    private int intern(String string) {
+      if (string == null) return -1;
+      Integer index = stringIndices.get(string);
+      if (index == null) {
+        index = strings.size();
+        strings.add(string);
+        stringIndices.put(string, index);
+      }
+      return index;
+    }
+
+    private void intern(TypedResource<?> typedResource) throws IOException {
+      Object data = typedResource.getData();
+      if (typedResource.isFile()) {
+        throw new IOException("can't snapshot file resource " + typedResource);
+      } else if (data instanceof String) {
+        intern((String) data);
+      } else if (data instanceof TypedResource[]) {
+        for (TypedResource<?> item : (TypedResource<?>[]) data) {
+          intern(item);
+        }
+      } else if (data instanceof AttrData) {
+        AttrData attrData = (AttrData) data;
+        intern(attrData.getName());
+        intern(attrData.getFormat());
+        if (attrData.getPairs() != null) {
+          for (AttrData.Pair pair : attrData.getPairs()) {
+            intern(pair.getName());
+            intern(pair.getValue());
+          }
+        }
+      } else if (data instanceof StyleData) {
+        StyleData styleData = (StyleData) data;
+        intern(styleData.getPackageName());
+        intern(styleData.getName());
+        intern(styleData.getParent());
+        for (Map.Entry<ResName, Attribute> item : styleData.getItems().entrySet()) {
+          resName(item.getKey());
+          resName(item.getValue().resName);
+          intern(item.getValue().value);
+          intern(item.getValue().contextPackageName);
+        }
+      } else {
+        throw new IOException("can't snapshot " + typedResource);
+      }
+    }
+
+    private void writeTypedResource(TypedResource<?> typedResource) throws IOException {
+      Object data = typedResource.getData();
+      if (data instanceof String) {
+        out.writeByte(STRING);
+        out.writeByte(typedResource.getResType().ordinal());
+        out.writeInt(intern((String) data));
+      } else if (data instanceof TypedResource[]) {
+        TypedResource<?>[] items = (TypedResource<?>[]) data;
+        out.writeByte(ARRAY);
+        out.writeByte(typedResource.getResType().ordinal());
+        out.writeInt(items.length);
+        for (TypedResource<?> item : items) {
+          writeTypedResource(item);
+        }
+      } else if (data instanceof AttrData) {
+        AttrData attrData = (AttrData) data;
+        out.writeByte(ATTR_DATA);
+        out.writeByte(typedResource.getResType().ordinal());
+        out.writeInt(intern(attrData.getName()));
+        out.writeInt(intern(attrData.getFormat()));
+        List<AttrData.Pair> pairs = attrData.getPairs();
+        out.writeInt(pairs == null ? -1 : pairs.size());
+        if (pairs != null) {
+          for (AttrData.Pair pair : pairs) {
+            out.writeInt(intern(pair.getName()));
+            out.writeInt(intern(pair.getValue()));
+          }
+        }
+      } else {
+        StyleData styleData = (StyleData) data;
+        out.writeByte(STYLE_DATA);
+        out.writeByte(typedResource.getResType().ordinal());
+        out.writeInt(intern(styleData.getPackageName()));
+        out.writeInt(intern(styleData.getName()));
+        out.writeInt(intern(styleData.getParent()));
+        out.writeInt(styleData.getItems().size());
+        for (Map.Entry<ResName, Attribute> item : styleData.getItems().entrySet()) {
+          Attribute attribute = item.getValue();
+          writeInts(resName(item.getKey()));
+          writeInts(resName(attribute.resName));
+          out.writeInt(intern(attribute.value));
+          out.writeInt(intern(attribute.contextPackageName));
+        }
+      }
+    }
+
+    private void writeInts(int[] ints) throws IOException {
+      for (int i : ints) {
+        out.writeInt(i);
+      }
+    }
+  }
+
+  private class Reader {
+    private final ByteBuffer buffer;
+    private final ResType[] resTypes = ResType.values();
+    private String[] strings;
+    private XmlLoader.XmlContext[] xmlContexts;
+
+    Reader(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    void readTo(ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) throws IOException {
+      strings = new String[buffer.getInt()];
+      byte[] bytes = new byte[256];
+      for (int i = 0; i < strings.length; i++) {
+        int length = buffer.getInt();
+        if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+        buffer.get(bytes, 0, length);
+        strings[i] = new String(bytes, 0, length, "UTF-8");
+      }
+
+      xmlContexts = new XmlLoader.XmlContext[valueFiles.size()];
+
+      // read everything before touching the bundles, so a bad snapshot leaves them as they were
+      Map<ResName, List<ResBunch.Value>> valuesByName = new LinkedHashMap<ResName, List<ResBunch.Value>>();
+      for (int i = buffer.getInt(); i > 0; i--) {
+        ResName resName = readResName();
+        List<ResBunch.Value> values = new ArrayList<ResBunch.Value>();
+        for (int j = buffer.getInt(); j > 0; j--) {
+          XmlLoader.XmlContext xmlContext = readXmlContext(resName);
+          values.add(new ResBunch.Value(xmlContext.getQualifiers(), readTypedResource(), xmlContext));
+        }
+        valuesByName.put(resName, values);
+      }
+
+      Map<ResName, List<ResBundle.Value<PluralResourceLoader.PluralRules>>> pluralsByName = new LinkedHashMap<ResName, List<ResBundle.Value<PluralResourceLoader.PluralRules>>>();
+      for (int i = buffer.getInt(); i > 0; i--) {
+        ResName resName = readResName();
+        List<ResBundle.Value<PluralResourceLoader.PluralRules>> values = new ArrayList<ResBundle.Value<PluralResourceLoader.PluralRules>>();
+        for (int j = buffer.getInt(); j > 0; j--) {
+          XmlLoader.XmlContext xmlContext = readXmlContext(resName);
+          PluralResourceLoader.PluralRules rules = new PluralResourceLoader.PluralRules();
+          for (int k = buffer.getInt(); k > 0; k--) {
+            rules.add(new Plural(readString(), readString()));
+          }
+          values.add(new ResBundle.Value<PluralResourceLoader.PluralRules>(xmlContext.getQualifiers(), rules, xmlContext));
+        }
+        pluralsByName.put(resName, values);
+      }
+
+      if (buffer.hasRemaining()) {
+        throw new IOException("unexpected data at the end of " + file);
+      }
+
+      for (Map.Entry<ResName, List<ResBunch.Value>> entry : valuesByName.entrySet()) {
+        data.putAll(entry.getKey(), entry.getValue());
+      }
+      for (Map.Entry<ResName, List<ResBundle.Value<PluralResourceLoader.PluralRules>>> entry : pluralsByName.entrySet()) {
+        pluralsData.putAll(entry.getKey(), entry.getValue());
+      }
+    }
+
+    private XmlLoader.XmlContext readXmlContext(ResName resName) {
+      int fileIndex = buffer.getInt();
+      XmlLoader.XmlContext xmlContext = xmlContexts[fileIndex];
+      if (xmlContext == null) {
+        xmlContexts[fileIndex] = xmlContext = new XmlLoader.XmlContext(resName.packageName, valueFiles.get(fileIndex));
+      }
+      return xmlContext;
+    }
+
+    private TypedResource<?> readTypedResource() throws IOException {
+      byte kind = buffer.get();
+      ResType resType = resTypes[buffer.get()];
+      switch (kind) {
+        case STRING:
+          return new TypedResource<String>(readString(), resType);
+        case ARRAY:
+          TypedResource<?>[] items = new TypedResource<?>[buffer.getInt()];
+          for (int i = 0; i < items.length; i++) {
+            items[i] = readTypedResource();
+          }
+          return new TypedResource<TypedResource<?>[]>(items, resType);
+        case ATTR_DATA:
+          String name = readString();
+          String format = readString();
+          int pairCount = buffer.getInt();
+          List<AttrData.Pair> pairs = pairCount == -1 ? null : new ArrayList<AttrData.Pair>(pairCount);
+          for (int i = 0; i < pairCount; i++) {
+            pairs.add(new AttrData.Pair(readString(), readString()));
+          }
+          return new TypedResource<AttrData>(new AttrData(name, format, pairs), resType);
+        case STYLE_DATA:
+          StyleData styleData = new StyleData(readString(), readString(), readString());
+          for (int i = buffer.getInt(); i > 0; i--) {
+            ResName attrName = readResName();
+            styleData.add(attrName, new Attribute(readResName(), readString(), readString()));
+          }
+          return new TypedResource<StyleData>(styleData, resType);
+        default:
+          throw new IOException("unexpected value kind " + kind + " in " + file);
+      }
+    }
+
+    private ResName readResName() {
+      return new ResName(readString(), readString(), readString());
+    }
+
+    private String readString() {
+      int index = buffer.getInt();
+      return index == -1 ? null : strings[index];
+    }
+  }
+
+  private static String key(String packageName, List<FsFile> valueFiles) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 algorithm is not available: " + e);
+    }
+
+    update(digest, String.valueOf(FORMAT_VERSION).getBytes());
+    update(digest, packageName.getBytes());
+    for (FsFile file : valueFiles) {
+      update(digest, (file.getParent().getName() + "/" + file.getName()).getBytes());
+      update(digest, file.getBytes());
+    }
+
+    StringBuilder buf = new StringBuilder();
+    for (byte b : digest.digest()) {
+      buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+      buf.append(Character.forDigit(b & 0xf, 16));
+    }
+    return buf.toString();
+  }
+
+  private static void update(MessageDigest digest, byte[] bytes) {
+    digest.update(bytes);
+    digest.update((byte) 0);
+  }
+}
@@ -1,7 +1,6 @@
 package org.robolectric.res;
 
 import org.jetbrains.annotations.NotNull;
-import org.w3c.dom.Document;
 
 import java.io.InputStream;
 import java.util.HashSet;
@@ -9,6 +8,8 @@ import java.util.Map;
 import java.util.Set;
 
 public class RoutingResourceLoader implements ResourceLoader {
+  private static final ResourceLoader NULL_RESOURCE_LOADER = new NullResourceLoader();
+
   private final Map<String, ResourceLoader> resourceLoaders;
   private final ResourceIndex resourceIndex;
 
@@ -37,7 +38,7 @@ public class RoutingResourceLoader implements ResourceLoader {
   }
 
   @Override
-  public Document getXml(ResName resName, String qualifiers) {
+  public XmlBlock getXml(ResName resName, String qualifiers) {
     return pickFor(resName).getXml(resName, "");
   }
 
@@ -76,13 +77,13 @@ public class RoutingResourceLoader implements ResourceLoader {
   }
 
   private ResourceLoader pickFor(ResName resName) {
-    if (resName == null) return new NullResourceLoader();
+    if (resName == null) return NULL_RESOURCE_LOADER;
     return pickFor(resName.packageName);
   }
 
   private ResourceLoader pickFor(String namespace) {
     if (namespace.equals("android.internal")) {
-      return new NullResourceLoader();
+      return NULL_RESOURCE_LOADER;
     }
     ResourceLoader resourceLoader = resourceLoaders.get(namespace);
     if (resourceLoader == null) {
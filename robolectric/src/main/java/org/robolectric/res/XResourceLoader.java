@@ -1,7 +1,6 @@
 package org.robolectric.res;
 
 import org.jetbrains.annotations.NotNull;
-import org.w3c.dom.Document;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -13,10 +12,10 @@ abstract class XResourceLoader implements ResourceLoader {
   final ResBundle<MenuNode> menuData = new ResBundle<MenuNode>();
   final ResBundle<DrawableNode> drawableData = new ResBundle<DrawableNode>();
   final ResBundle<PreferenceNode> preferenceData = new ResBundle<PreferenceNode>();
-  final ResBundle<Document> xmlDocuments = new ResBundle<Document>();
+  final ResBundle<XmlBlock> xmlDocuments = new ResBundle<XmlBlock>();
   final ResBundle<FsFile> rawResources = new ResBundle<FsFile>();
   private final ResourceIndex resourceIndex;
-  boolean isInitialized = false;
+  volatile boolean isInitialized = false;
 
   protected XResourceLoader(ResourceIndex resourceIndex) {
     this.resourceIndex = resourceIndex;
@@ -26,10 +25,20 @@ abstract class XResourceLoader implements ResourceLoader {
 
   void initialize() {
     if (isInitialized) return;
-    doInitialize();
-    isInitialized = true;
 
-    makeImmutable();
+    synchronized (this) {
+      if (isInitialized) return;
+      doInitialize();
+      makeImmutable();
+      isInitialized = true;
+    }
+  }
+
+  /**
+   * Makes sure whatever is needed to look up the given resource has been loaded; by default, that's everything.
+   */
+  void initialize(ResName resName) {
+    initialize();
   }
 
   protected void makeImmutable() {
@@ -50,14 +59,14 @@ abstract class XResourceLoader implements ResourceLoader {
   }
 
   public TypedResource getValue(@NotNull ResName resName, String qualifiers) {
-    initialize();
+    initialize(resName);
     ResBunch.Value value = data.getValue(resName, qualifiers);
     return value == null ? null : value.getTypedResource();
   }
 
   @Override
   public Plural getPlural(ResName resName, int quantity, String qualifiers) {
-    initialize();
+    initialize(resName);
     PluralResourceLoader.PluralRules pluralRules = pluralsData.get(resName, qualifiers);
     if (pluralRules == null) return null;
 
@@ -65,19 +74,20 @@ abstract class XResourceLoader implements ResourceLoader {
   }
 
   @Override
-  public Document getXml(ResName resName, String qualifiers) {
-    initialize();
+  public XmlBlock getXml(ResName resName, String qualifiers) {
+    initialize(resName);
     return xmlDocuments.get(resName, qualifiers);
   }
 
   @Override
   public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
+    initialize(resName);
     return drawableData.get(resName, qualifiers);
   }
 
   @Override
   public InputStream getRawValue(ResName resName) {
-    initialize();
+    initialize(resName);
 
     FsFile file = rawResources.get(resName, "");
     try {
@@ -89,14 +99,14 @@ abstract class XResourceLoader implements ResourceLoader {
 
   @Override
   public PreferenceNode getPreferenceNode(ResName resName, String qualifiers) {
-    initialize();
+    initialize(resName);
 
     return preferenceData.get(resName, qualifiers);
   }
 
   @Override
   public MenuNode getMenuNode(ResName resName, String qualifiers) {
-    initialize();
+    initialize(resName);
     if (resName == null) return null;
     return menuData.get(resName, qualifiers);
   }
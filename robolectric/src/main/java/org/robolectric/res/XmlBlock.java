@@ -0,0 +1,498 @@
+package org.robolectric.res;
+
+import com.ximpleware.NavException;
+import com.ximpleware.VTDNav;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, immutable, pre-tokenized copy of an XML resource file, like the binary XML blocks aapt produces for
+ * Android. It holds just elements, their attributes, and text, in flat arrays indexed by node number, so it can be
+ * walked by {@link org.robolectric.res.builder.XmlFileBuilder.XmlResourceParserImpl} without keeping a DOM, or
+ * the parsed file itself, around.
+ *
+ * Node 0 is the document element. Attributes of each element are in the order a DOM would list them, sorted by
+ * name, and include namespace declarations; comments and processing instructions are dropped.
+ */
+public class XmlBlock {
+  public static final int ELEMENT = 0;
+  public static final int TEXT = 1;
+  public static final int CDATA = 2;
+
+  public static final int NONE = -1;
+
+  private static final String XMLNS_NS = "http://www.w3.org/2000/xmlns/";
+  private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+
+  private static final Comparator<String[]> ATTRIBUTE_NAME_ORDER = new Comparator<String[]>() {
+    @Override public int compare(String[] a, String[] b) {
+      return a[0].compareTo(b[0]);
+    }
+  };
+
+  private final byte[] nodeTypes;
+  private final int[] parents;
+  private final int[] firstChildren;
+  private final int[] nextSiblings;
+  private final String[] names; // element names, or the text of text nodes
+  private final String[] namespaces;
+  private final int[] firstAttributes; // attributes of node n are firstAttributes[n] until firstAttributes[n + 1]
+
+  private final String[] attributeNames;
+  private final String[] attributeLocalNames;
+  private final String[] attributeNamespaces;
+  private final String[] attributeValues;
+
+  private XmlBlock(Builder builder) {
+    int nodeCount = builder.nodeTypes.size();
+    nodeTypes = new byte[nodeCount];
+    parents = new int[nodeCount];
+    firstChildren = new int[nodeCount];
+    nextSiblings = new int[nodeCount];
+    firstAttributes = new int[nodeCount + 1];
+    for (int i = 0; i < nodeCount; i++) {
+      nodeTypes[i] = builder.nodeTypes.get(i);
+      parents[i] = builder.parents.get(i);
+      firstChildren[i] = builder.firstChildren.get(i);
+      nextSiblings[i] = builder.nextSiblings.get(i);
+      firstAttributes[i] = builder.firstAttributes.get(i);
+    }
+    firstAttributes[nodeCount] = builder.attributeNames.size();
+    names = builder.names.toArray(new String[nodeCount]);
+    namespaces = builder.namespaces.toArray(new String[nodeCount]);
+
+    int attributeCount = builder.attributeNames.size();
+    attributeNames = builder.attributeNames.toArray(new String[attributeCount]);
+    attributeLocalNames = builder.attributeLocalNames.toArray(new String[attributeCount]);
+    attributeNamespaces = builder.attributeNamespaces.toArray(new String[attributeCount]);
+    attributeValues = builder.attributeValues.toArray(new String[attributeCount]);
+  }
+
+  private XmlBlock(XmlBlock xmlBlock, String[] attributeNamespaces) {
+    nodeTypes = xmlBlock.nodeTypes;
+    parents = xmlBlock.parents;
+    firstChildren = xmlBlock.firstChildren;
+    nextSiblings = xmlBlock.nextSiblings;
+    names = xmlBlock.names;
+    namespaces = xmlBlock.namespaces;
+    firstAttributes = xmlBlock.firstAttributes;
+    attributeNames = xmlBlock.attributeNames;
+    attributeLocalNames = xmlBlock.attributeLocalNames;
+    this.attributeNamespaces = attributeNamespaces;
+    attributeValues = xmlBlock.attributeValues;
+  }
+
+  /**
+   * Parses the given file.
+   */
+  public static XmlBlock create(FsFile xmlFile) {
+    try {
+      return create(DocumentLoader.parse(xmlFile));
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException("couldn't parse " + xmlFile, e);
+    }
+  }
+
+  /**
+   * Tokenizes the whole document the given navigator is over, wherever it is currently positioned.
+   */
+  public static XmlBlock create(VTDNav vtdNav) {
+    try {
+      return new VtdTokenizer(vtdNav).tokenize();
+    } catch (NavException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static XmlBlock create(Document document) {
+    Builder builder = new Builder();
+    addDomNode(builder, document.getDocumentElement(), NONE);
+    return builder.build();
+  }
+
+  private static void addDomNode(Builder builder, Node node, int parent) {
+    switch (node.getNodeType()) {
+      case Node.ELEMENT_NODE:
+        int element = builder.addNode(ELEMENT, parent, node.getNodeName(), node.getNamespaceURI());
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+          Node attribute = attributes.item(i);
+          String localName = attribute.getLocalName();
+          builder.addAttribute(attribute.getNodeName(), localName == null ? attribute.getNodeName() : localName,
+              attribute.getNamespaceURI(), attribute.getNodeValue());
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+          addDomNode(builder, child, element);
+        }
+        break;
+      case Node.TEXT_NODE:
+        builder.addNode(TEXT, parent, node.getNodeValue(), null);
+        break;
+      case Node.CDATA_SECTION_NODE:
+        builder.addNode(CDATA, parent, node.getNodeValue(), null);
+        break;
+    }
+  }
+
+  /**
+   * Returns a copy with attributes in one namespace moved to another, e.g. to resolve
+   * {@value Attribute#RES_AUTO_NS_URI} for a package.
+   */
+  public XmlBlock replaceAttributeNamespace(String oldNamespace, String newNamespace) {
+    String[] newAttributeNamespaces = null;
+    for (int i = 0; i < attributeNamespaces.length; i++) {
+      if (oldNamespace.equals(attributeNamespaces[i])) {
+        if (newAttributeNamespaces == null) newAttributeNamespaces = attributeNamespaces.clone();
+        newAttributeNamespaces[i] = newNamespace;
+      }
+    }
+    return newAttributeNamespaces == null ? this : new XmlBlock(this, newAttributeNamespaces);
+  }
+
+  public int getRoot() {
+    return 0;
+  }
+
+  public int getNodeCount() {
+    return nodeTypes.length;
+  }
+
+  public int getNodeType(int node) {
+    return nodeTypes[node];
+  }
+
+  public int getParent(int node) {
+    return parents[node];
+  }
+
+  public int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  public int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  /**
+   * Returns the qualified name of an element, e.g. {@code "bar:foo"}.
+   */
+  public String getName(int node) {
+    return nodeTypes[node] == ELEMENT ? names[node] : null;
+  }
+
+  public String getNamespace(int node) {
+    return namespaces[node];
+  }
+
+  /**
+   * Returns the text of a text node, or all the text within an element.
+   */
+  public String getText(int node) {
+    if (nodeTypes[node] != ELEMENT) return names[node];
+
+    StringBuilder buf = new StringBuilder();
+    appendText(node, buf);
+    return buf.toString();
+  }
+
+  private void appendText(int node, StringBuilder buf) {
+    for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+      if (nodeTypes[child] == ELEMENT) {
+        appendText(child, buf);
+      } else {
+        buf.append(names[child]);
+      }
+    }
+  }
+
+  public int getAttributeCount(int node) {
+    return firstAttributes[node + 1] - firstAttributes[node];
+  }
+
+  /**
+   * Returns the qualified name of an attribute, e.g. {@code "android:text"}.
+   */
+  public String getAttributeName(int node, int index) {
+    return attributeNames[attributeIndex(node, index)];
+  }
+
+  public String getAttributeLocalName(int node, int index) {
+    return attributeLocalNames[attributeIndex(node, index)];
+  }
+
+  public String getAttributeNamespace(int node, int index) {
+    return attributeNamespaces[attributeIndex(node, index)];
+  }
+
+  public String getAttributeValue(int node, int index) {
+    return attributeValues[attributeIndex(node, index)];
+  }
+
+  /**
+   * Returns the number of attributes in the whole block.
+   */
+  public int getAttributeCount() {
+    return attributeValues.length;
+  }
+
+  /**
+   * Returns where an element's attribute is among all those in the block, e.g. to keep data about it in an array
+   * {@link #getAttributeCount()} long.
+   */
+  public int getAttributeIndex(int node, int index) {
+    return attributeIndex(node, index);
+  }
+
+  /**
+   * Returns the index of the element's attribute with the given namespace (or none, if null) and local name, or
+   * {@link #NONE}.
+   */
+  public int findAttribute(int node, String namespace, String localName) {
+    for (int i = firstAttributes[node]; i < firstAttributes[node + 1]; i++) {
+      if (localName.equals(attributeLocalNames[i])
+          && (namespace == null ? attributeNamespaces[i] == null : namespace.equals(attributeNamespaces[i]))) {
+        return i - firstAttributes[node];
+      }
+    }
+    return NONE;
+  }
+
+  private int attributeIndex(int node, int index) {
+    if (index < 0 || index >= getAttributeCount(node)) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    return firstAttributes[node] + index;
+  }
+
+  private static class Builder {
+    private final List<Byte> nodeTypes = new ArrayList<Byte>();
+    private final List<Integer> parents = new ArrayList<Integer>();
+    private final List<Integer> firstChildren = new ArrayList<Integer>();
+    private final List<Integer> nextSiblings = new ArrayList<Integer>();
+    private final List<Integer> lastChildren = new ArrayList<Integer>();
+    private final List<String> names = new ArrayList<String>();
+    private final List<String> namespaces = new ArrayList<String>();
+    private final List<Integer> firstAttributes = new ArrayList<Integer>();
+    private final List<String> attributeNames = new ArrayList<String>();
+    private final List<String> attributeLocalNames = new ArrayList<String>();
+    private final List<String> attributeNamespaces = new ArrayList<String>();
+    private final List<String> attributeValues = new ArrayList<String>();
+
+    // names repeat a lot in layouts; keep one copy of each
+    private final Map<String, String> strings = new HashMap<String, String>();
+
+    int addNode(int type, int parent, String nameOrText, String namespace) {
+      int node = nodeTypes.size();
+      nodeTypes.add((byte) type);
+      parents.add(parent);
+      firstChildren.add(NONE);
+      nextSiblings.add(NONE);
+      lastChildren.add(NONE);
+      names.add(type == ELEMENT ? intern(nameOrText) : nameOrText);
+      namespaces.add(intern(namespace));
+      firstAttributes.add(attributeNames.size());
+
+      if (parent != NONE) {
+        int previousSibling = lastChildren.get(parent);
+        if (previousSibling == NONE) {
+          firstChildren.set(parent, node);
+        } else {
+          nextSiblings.set(previousSibling, node);
+        }
+        lastChildren.set(parent, node);
+      }
+      return node;
+    }
+
+    /**
+     * Appends to the last child of the given element if that's text of the same type, as a DOM does with text
+     * separated by comments; returns false if there's no such text.
+     */
+    boolean appendText(int type, int parent, String text) {
+      int lastChild = lastChildren.get(parent);
+      if (lastChild == NONE || lastChild != nodeTypes.size() - 1 || nodeTypes.get(lastChild) != type) return false;
+      names.set(lastChild, names.get(lastChild) + text);
+      return true;
+    }
+
+    void addAttribute(String name, String localName, String namespace, String value) {
+      attributeNames.add(intern(name));
+      attributeLocalNames.add(intern(localName));
+      attributeNamespaces.add(intern(namespace));
+      attributeValues.add(intern(value));
+    }
+
+    private String intern(String string) {
+      if (string == null) return null;
+      String interned = strings.get(string);
+      if (interned == null) strings.put(string, interned = string);
+      return interned;
+    }
+
+    XmlBlock build() {
+      return new XmlBlock(this);
+    }
+  }
+
+  private static class VtdTokenizer {
+    private final VTDNav vtdNav;
+    private final Builder builder = new Builder();
+    private final List<Integer> openElements = new ArrayList<Integer>();
+    private final List<Integer> openElementDepths = new ArrayList<Integer>();
+    private final List<Map<String, String>> namespaceScopes = new ArrayList<Map<String, String>>();
+
+    VtdTokenizer(VTDNav vtdNav) {
+      this.vtdNav = vtdNav;
+    }
+
+    XmlBlock tokenize() throws NavException {
+      int tokenCount = vtdNav.getTokenCount();
+      int i = 0;
+      while (i < tokenCount) {
+        int tokenType = vtdNav.getTokenType(i);
+        int depth = vtdNav.getTokenDepth(i);
+        if (tokenType == VTDNav.TOKEN_STARTING_TAG) {
+          closeElementsDeeperThan(depth - 1);
+          i = addElement(i, depth);
+          continue;
+        }
+
+        if (depth >= 0 && (tokenType == VTDNav.TOKEN_CHARACTER_DATA || tokenType == VTDNav.TOKEN_CDATA_VAL)) {
+          closeElementsDeeperThan(depth);
+          int type = tokenType == VTDNav.TOKEN_CDATA_VAL ? CDATA : TEXT;
+          String text = type == CDATA ? vtdNav.toRawString(i) : vtdNav.toString(i);
+          int parent = openElements.get(openElements.size() - 1);
+          if (!builder.appendText(type, parent, text)) {
+            builder.addNode(type, parent, text, null);
+          }
+        }
+        i++;
+      }
+      return builder.build();
+    }
+
+    private int addElement(int tagIndex, int depth) throws NavException {
+      List<String[]> attributes = new ArrayList<String[]>();
+      Map<String, String> namespaceScope = new HashMap<String, String>(
+          namespaceScopes.isEmpty() ? new HashMap<String, String>() : namespaceScopes.get(namespaceScopes.size() - 1));
+
+      int i = tagIndex + 1;
+      int tokenCount = vtdNav.getTokenCount();
+      while (i + 1 < tokenCount) {
+        int tokenType = vtdNav.getTokenType(i);
+        if (tokenType != VTDNav.TOKEN_ATTR_NAME && tokenType != VTDNav.TOKEN_ATTR_NS) break;
+
+        String name = vtdNav.toRawString(i);
+        String value = resolveReferences(normalizeAttributeValue(vtdNav.toRawString(i + 1)));
+        if (tokenType == VTDNav.TOKEN_ATTR_NS) {
+          namespaceScope.put(name.equals("xmlns") ? "" : localName(name), value);
+        }
+        attributes.add(new String[] {name, value});
+        i += 2;
+      }
+      namespaceScopes.add(namespaceScope);
+
+      String name = vtdNav.toRawString(tagIndex);
+      int parent = openElements.isEmpty() ? NONE : openElements.get(openElements.size() - 1);
+      int element = builder.addNode(ELEMENT, parent, name, namespaceScope.get(prefix(name, "")));
+
+      // DOMs list attributes sorted by name
+      Collections.sort(attributes, ATTRIBUTE_NAME_ORDER);
+      for (String[] attribute : attributes) {
+        String attributeName = attribute[0];
+        String namespace;
+        if (attributeName.equals("xmlns") || attributeName.startsWith("xmlns:")) {
+          namespace = XMLNS_NS;
+        } else if (attributeName.startsWith("xml:")) {
+          namespace = XML_NS;
+        } else {
+          String prefix = prefix(attributeName, null);
+          namespace = prefix == null ? null : namespaceScope.get(prefix);
+        }
+        builder.addAttribute(attributeName, localName(attributeName), namespace, attribute[1]);
+      }
+
+      openElements.add(element);
+      openElementDepths.add(depth);
+      return i;
+    }
+
+    private void closeElementsDeeperThan(int depth) {
+      while (!openElements.isEmpty() && openElementDepths.get(openElementDepths.size() - 1) > depth) {
+        openElements.remove(openElements.size() - 1);
+        openElementDepths.remove(openElementDepths.size() - 1);
+        namespaceScopes.remove(namespaceScopes.size() - 1);
+      }
+    }
+
+    private static String prefix(String qualifiedName, String defaultPrefix) {
+      int colon = qualifiedName.indexOf(':');
+      return colon == -1 ? defaultPrefix : qualifiedName.substring(0, colon);
+    }
+
+    private static String localName(String qualifiedName) {
+      return qualifiedName.substring(qualifiedName.indexOf(':') + 1);
+    }
+
+    /**
+     * Turns literal tabs and line breaks into spaces, as XML parsers must. Only call this on the raw value, since
+     * whitespace written as a character reference is kept.
+     */
+    private static String normalizeAttributeValue(String value) {
+      if (value.indexOf('\n') == -1 && value.indexOf('\r') == -1 && value.indexOf('\t') == -1) return value;
+      return value.replace("\r\n", " ").replace('\r', ' ').replace('\n', ' ').replace('\t', ' ');
+    }
+
+    /**
+     * Replaces character references and the predefined entity references with what they stand for.
+     */
+    private static String resolveReferences(String value) {
+      int ampersand = value.indexOf('&');
+      if (ampersand == -1) return value;
+
+      StringBuilder buf = new StringBuilder(value.length());
+      int start = 0;
+      while (ampersand != -1) {
+        int semicolon = value.indexOf(';', ampersand);
+        if (semicolon == -1) throw new IllegalStateException("unterminated reference in attribute value " + value);
+
+        buf.append(value, start, ampersand);
+        String reference = value.substring(ampersand + 1, semicolon);
+        if (reference.startsWith("#x")) {
+          buf.appendCodePoint(Integer.parseInt(reference.substring(2), 16));
+        } else if (reference.startsWith("#")) {
+          buf.appendCodePoint(Integer.parseInt(reference.substring(1)));
+        } else if (reference.equals("lt")) {
+          buf.append('<');
+        } else if (reference.equals("gt")) {
+          buf.append('>');
+        } else if (reference.equals("amp")) {
+          buf.append('&');
+        } else if (reference.equals("quot")) {
+          buf.append('"');
+        } else if (reference.equals("apos")) {
+          buf.append('\'');
+        } else {
+          throw new IllegalStateException("unknown entity &" + reference + "; in attribute value " + value);
+        }
+        start = semicolon + 1;
+        ampersand = value.indexOf('&', start);
+      }
+      return buf.append(value, start, value.length()).toString();
+    }
+  }
+
+  @Override public String toString() {
+    return "XmlBlock{" + (nodeTypes.length == 0 ? "" : names[0]) + ", " + nodeTypes.length + " nodes}";
+  }
+}
@@ -27,11 +27,23 @@ public abstract class XpathResourceXmlLoader extends XmlLoader {
 
   public static class XmlNode {
     private final VTDNav vtdNav;
+    private XmlBlock xmlBlock;
 
     public XmlNode(VTDNav vtdNav) {
       this.vtdNav = vtdNav;
     }
 
+    /**
+     * Returns the whole document as an {@link XmlBlock}, tokenizing it on first use; loaders handed the same
+     * node for a file share the block.
+     */
+    public XmlBlock getXmlBlock() {
+      if (xmlBlock == null) {
+        xmlBlock = XmlBlock.create(vtdNav);
+      }
+      return xmlBlock;
+    }
+
     public String getElementName() {
       try {
         return vtdNav.toString(vtdNav.getCurrentIndex());
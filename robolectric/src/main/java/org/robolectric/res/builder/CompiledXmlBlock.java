@@ -0,0 +1,129 @@
+package org.robolectric.res.builder;
+
+import org.robolectric.res.Attribute;
+import org.robolectric.res.ResName;
+import org.robolectric.res.ResourceIndex;
+import org.robolectric.res.XmlBlock;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * An {@link XmlBlock} bound to the package and resource index it's read with, which remembers each attribute's
+ * qualified value and resource ids once they've been worked out, so inflating the same layout again doesn't need
+ * to parse attribute values or look up ids.
+ *
+ * Results are filled in lazily, in the order they're asked for, so lookups never happen that a plain parse wouldn't
+ * have done. Parsers on different threads may share an instance; results are immutable, so a race at worst works
+ * one out twice.
+ */
+class CompiledXmlBlock {
+  private static final ResName FAKE_RES_NAME = new ResName("_robolectric_", "attr", "_fake_");
+  private static final String NO_VALUE = new String("");
+
+  final XmlBlock xmlBlock;
+  final String fileName;
+  final String packageName;
+  // weak, since compiled blocks are cached; whoever reads the block holds on to the index
+  private final WeakReference<ResourceIndex> resourceIndex;
+
+  private final String[] qualifiedValues;
+  private final Integer[] nameResources;
+  private final Integer[] valueResources;
+  private final Integer[] styleAttributes;
+
+  CompiledXmlBlock(XmlBlock xmlBlock, String fileName, String packageName, ResourceIndex resourceIndex) {
+    this.xmlBlock = xmlBlock;
+    this.fileName = fileName;
+    this.packageName = packageName;
+    this.resourceIndex = new WeakReference<ResourceIndex>(resourceIndex);
+    qualifiedValues = new String[xmlBlock.getAttributeCount()];
+    nameResources = new Integer[xmlBlock.getAttributeCount()];
+    valueResources = new Integer[xmlBlock.getAttributeCount()];
+    styleAttributes = new Integer[xmlBlock.getNodeCount()];
+  }
+
+  String getQualifiedValue(int node, int index) {
+    int attributeIndex = xmlBlock.getAttributeIndex(node, index);
+    String qualifiedValue = qualifiedValues[attributeIndex];
+    if (qualifiedValue == null) {
+      qualifiedValue = qualify(xmlBlock.getAttributeValue(node, index));
+      qualifiedValues[attributeIndex] = qualifiedValue == null ? NO_VALUE : qualifiedValue;
+    }
+    return qualifiedValue == NO_VALUE ? null : qualifiedValue;
+  }
+
+  /**
+   * Returns the id of the attr an attribute sets, given its name as the parser reports it.
+   */
+  int getNameResource(int node, int index, String attributeName) {
+    int attributeIndex = xmlBlock.getAttributeIndex(node, index);
+    Integer resourceId = nameResources[attributeIndex];
+    if (resourceId == null) {
+      nameResources[attributeIndex] = resourceId = getResourceId(attributeName, packageName, "attr");
+    }
+    return resourceId;
+  }
+
+  /**
+   * Returns the id of the resource an attribute's value refers to, or 0.
+   */
+  int getValueResource(int node, int index) {
+    int attributeIndex = xmlBlock.getAttributeIndex(node, index);
+    Integer resourceId = valueResources[attributeIndex];
+    if (resourceId == null) {
+      String attributeValue = getQualifiedValue(node, index);
+      resourceId = attributeValue != null && attributeValue.startsWith("@")
+          ? getResourceId(attributeValue.substring(1), packageName, null)
+          : 0;
+      valueResources[attributeIndex] = resourceId;
+    }
+    return resourceId;
+  }
+
+  /**
+   * Returns the id of the style an element's {@code style} attribute refers to, or 0.
+   */
+  int getStyleAttribute(int node) {
+    Integer resourceId = styleAttributes[node];
+    if (resourceId == null) {
+      int index = xmlBlock.findAttribute(node, null, "style");
+      resourceId = index == XmlBlock.NONE ? 0 : getResourceId(xmlBlock.getAttributeValue(node, index), packageName, "style");
+      styleAttributes[node] = resourceId;
+    }
+    return resourceId;
+  }
+
+  String qualify(String value) {
+    Attribute attribute = asAttribute(value);
+    if (attribute == null) return null;
+    return attribute.qualifiedValue();
+  }
+
+  int getResourceId(String possiblyQualifiedResourceName, String defaultPackageName, String defaultType) {
+    ResourceIndex resourceIndex = this.resourceIndex.get();
+    Attribute attribute = asAttribute(possiblyQualifiedResourceName);
+
+    if (attribute.isNull()) return 0;
+
+    if (attribute.isStyleReference()) {
+      Integer resourceId = resourceIndex.getResourceId(attribute.getStyleReference());
+      return resourceId == null ? 0 : resourceId;
+    }
+
+    if (attribute.isResourceReference()) {
+      Integer resourceId = resourceIndex.getResourceId(attribute.getResourceReference());
+      return resourceId == null ? 0 : resourceId;
+    }
+    if (possiblyQualifiedResourceName.startsWith("@")) {
+      possiblyQualifiedResourceName = possiblyQualifiedResourceName.substring(1);
+    }
+    ResName resName = ResName.qualifyResName(possiblyQualifiedResourceName, defaultPackageName, defaultType);
+    Integer resourceId = resourceIndex.getResourceId(resName);
+    return resourceId == null ? 0 : resourceId;
+  }
+
+  private Attribute asAttribute(String value) {
+    if (value == null) return null;
+    return new Attribute(FAKE_RES_NAME, value, packageName);
+  }
+}
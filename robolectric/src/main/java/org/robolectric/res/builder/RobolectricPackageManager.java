@@ -17,12 +17,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
 import org.robolectric.AndroidManifest;
 import org.robolectric.Robolectric;
 import org.robolectric.manifest.ActivityData;
@@ -91,6 +93,12 @@ public class RobolectricPackageManager extends StubPackageManager {
     }
   }
 
+  // package state derived from a manifest only depends on the manifest and the resources it was read with, so it's
+  // built once and each package manager gets its own copy to modify. Each SDK loads its own copy of this class, so
+  // a PackageInfo here is always one this SDK can use; entries go away with the resource loader they were built with.
+  private static final Map<ResourceLoader, Map<AndroidManifest, PackageInfo>> manifestPackages =
+      new WeakHashMap<ResourceLoader, Map<AndroidManifest, PackageInfo>>();
+
   private final Map<String, AndroidManifest> androidManifests = new LinkedHashMap<String, AndroidManifest>();
   private final Map<String, PackageInfo> packageInfos = new LinkedHashMap<String, PackageInfo>();
   private Map<Intent, List<ResolveInfo>> resolveInfoForIntent = new TreeMap<Intent, List<ResolveInfo>>(new IntentComparator());
@@ -361,6 +369,25 @@ public class RobolectricPackageManager extends StubPackageManager {
 
   public void addManifest(AndroidManifest androidManifest, ResourceLoader loader) {
     androidManifests.put(androidManifest.getPackageName(), androidManifest);
+
+    PackageInfo packageInfo;
+    synchronized (manifestPackages) {
+      Map<AndroidManifest, PackageInfo> packagesForLoader = manifestPackages.get(loader);
+      if (packagesForLoader == null) {
+        packagesForLoader = new IdentityHashMap<AndroidManifest, PackageInfo>();
+        manifestPackages.put(loader, packagesForLoader);
+      }
+      PackageInfo manifestPackageInfo = packagesForLoader.get(androidManifest);
+      if (manifestPackageInfo == null) {
+        manifestPackageInfo = createPackageInfo(androidManifest, loader);
+        packagesForLoader.put(androidManifest, manifestPackageInfo);
+      }
+      packageInfo = copyPackageInfo(manifestPackageInfo);
+    }
+    addPackage(packageInfo);
+  }
+
+  private PackageInfo createPackageInfo(AndroidManifest androidManifest, ResourceLoader loader) {
     ResourceIndex resourceIndex = loader.getResourceIndex();
 
     // first opportunity to access a resource index for this manifest, use it to init the references
@@ -407,7 +434,41 @@ public class RobolectricPackageManager extends StubPackageManager {
 
     packageInfo.applicationInfo = applicationInfo;
     initApplicationInfo(applicationInfo);
-    addPackage(packageInfo);
+    return packageInfo;
+  }
+
+  private static PackageInfo copyPackageInfo(PackageInfo original) {
+    PackageInfo packageInfo = new PackageInfo();
+    packageInfo.packageName = original.packageName;
+    packageInfo.versionName = original.versionName;
+    packageInfo.versionCode = original.versionCode;
+    if (original.providers != null) {
+      packageInfo.providers = new ProviderInfo[original.providers.length];
+      for (int i = 0; i < original.providers.length; i++) {
+        ProviderInfo provider = new ProviderInfo(original.providers[i]);
+        if (provider.applicationInfo != null) {
+          provider.applicationInfo = copyApplicationInfo(provider.applicationInfo);
+        }
+        if (provider.metaData != null) {
+          provider.metaData = new Bundle(provider.metaData);
+        }
+        packageInfo.providers[i] = provider;
+      }
+    }
+    if (original.requestedPermissions != null) {
+      packageInfo.requestedPermissions = original.requestedPermissions.clone();
+    }
+
+    packageInfo.applicationInfo = copyApplicationInfo(original.applicationInfo);
+    return packageInfo;
+  }
+
+  private static ApplicationInfo copyApplicationInfo(ApplicationInfo original) {
+    ApplicationInfo applicationInfo = new ApplicationInfo(original);
+    if (original.metaData != null) {
+      applicationInfo.metaData = new Bundle(original.metaData);
+    }
+    return applicationInfo;
   }
 
   private void initApplicationInfo(ApplicationInfo applicationInfo) {
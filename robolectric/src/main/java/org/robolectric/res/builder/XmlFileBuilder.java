@@ -5,22 +5,26 @@ import android.content.res.XmlResourceParser;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.robolectric.res.Attribute;
 import org.robolectric.res.Fs;
 import org.robolectric.res.FsFile;
-import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceIndex;
-import org.robolectric.res.XmlFileLoader;
+import org.robolectric.res.XmlBlock;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xmlpull.v1.XmlPullParserException;
 
 public class XmlFileBuilder {
+  private static final int MAX_CACHED_FILES = 1000;
+
+  // resource files don't change while tests run, so each file is only tokenized once per package and resource index;
+  // neither the keys nor the compiled files keep the index itself alive, the parsers made from them do
+  private static final Map<FileKey, CompiledXmlBlock> compiledFiles = new CompiledFileCache();
+
   /**
    * All the parser features currently supported by Android.
    */
@@ -53,47 +57,79 @@ public class XmlFileBuilder {
   }
 
   public static XmlResourceParser getXmlResourceParser(String file, String packageName, ResourceIndex resourceIndex) {
-    FsFile fsFile = Fs.fileFromPath(file);
-    Document document = new XmlFileLoader(null, "xml").parse(fsFile);
-    if (document == null) {
-      throw new Resources.NotFoundException("couldn't find resource " + fsFile.getPath());
+    FileKey fileKey = new FileKey(file, packageName, resourceIndex);
+    CompiledXmlBlock compiledXmlBlock;
+    synchronized (compiledFiles) {
+      compiledXmlBlock = compiledFiles.get(fileKey);
     }
-    replaceResAutoNamespace(document, packageName);
-    return new XmlFileBuilder().getXml(document, fsFile.getPath(), packageName, resourceIndex);
+
+    if (compiledXmlBlock == null) {
+      FsFile fsFile = Fs.fileFromPath(file);
+      if (!fsFile.exists()) {
+        throw new Resources.NotFoundException("couldn't find resource " + fsFile.getPath());
+      }
+      XmlBlock xmlBlock = XmlBlock.create(fsFile)
+          .replaceAttributeNamespace(Attribute.RES_AUTO_NS_URI, Attribute.ANDROID_RES_NS_PREFIX + packageName);
+      compiledXmlBlock = new CompiledXmlBlock(xmlBlock, fsFile.getPath(), packageName, resourceIndex);
+      synchronized (compiledFiles) {
+        compiledFiles.put(fileKey, compiledXmlBlock);
+      }
+    }
+    return new XmlResourceParserImpl(compiledXmlBlock, resourceIndex);
   }
 
-  public XmlResourceParser getXml(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
-    return new XmlResourceParserImpl(document, fileName, packageName, resourceIndex);
+  public XmlResourceParser getXml(XmlBlock xmlBlock, String fileName, String packageName, ResourceIndex resourceIndex) {
+    return new XmlResourceParserImpl(xmlBlock, fileName, packageName, resourceIndex);
   }
 
-  /**
-   * Replaces all instances of "http://schemas.android.com/apk/res-auto" with 
-   * "http://schemas.android.com/apk/res/packageName" in the given Document.
-   */
-  private static void replaceResAutoNamespace(Document document, String packageName) {
-    String autoNs = Attribute.RES_AUTO_NS_URI;
-    String newNs = Attribute.ANDROID_RES_NS_PREFIX + packageName;
-    replaceAttributeNamespace(document, document.getDocumentElement(), autoNs, newNs);
+  public XmlResourceParser getXml(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
+    return getXml(XmlBlock.create(document), fileName, packageName, resourceIndex);
   }
 
-  private static void replaceAttributeNamespace(Document document, Node n, String oldNs, String newNs) {
-    NamedNodeMap attrs = n.getAttributes();
-    if (attrs != null) {
-      for (int i = 0; i < attrs.getLength(); i++) {
-        replaceNamespace(document, attrs.item(i), oldNs, newNs);
-      }
+  private static class FileKey {
+    private final String file;
+    private final String packageName;
+    // weak, so the cache doesn't keep the indexes of resource loaders that are gone
+    private final WeakReference<ResourceIndex> resourceIndex;
+    private final int resourceIndexHash;
+
+    FileKey(String file, String packageName, ResourceIndex resourceIndex) {
+      this.file = file;
+      this.packageName = packageName;
+      this.resourceIndex = resourceIndex == null ? null : new WeakReference<ResourceIndex>(resourceIndex);
+      this.resourceIndexHash = System.identityHashCode(resourceIndex);
     }
-    if (n.hasChildNodes()) {
-      NodeList list = n.getChildNodes();
-      for (int i = 0; i < list.getLength(); i++) {
-        replaceAttributeNamespace(document, list.item(i), oldNs, newNs);
-      }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof FileKey)) return false;
+      FileKey that = (FileKey) o;
+      return file.equals(that.file) && packageName.equals(that.packageName) && isSameIndex(that);
+    }
+
+    private boolean isSameIndex(FileKey that) {
+      if (resourceIndex == null || that.resourceIndex == null) return resourceIndex == that.resourceIndex;
+      ResourceIndex index = resourceIndex.get();
+      return index != null && index == that.resourceIndex.get();
+    }
+
+    @Override public int hashCode() {
+      int result = file.hashCode();
+      result = 31 * result + packageName.hashCode();
+      result = 31 * result + resourceIndexHash;
+      return result;
     }
   }
 
-  private static void replaceNamespace(Document document, Node n, String oldNs, String newNs) {
-    if (oldNs.equals(n.getNamespaceURI())) {
-      document.renameNode(n, newNs, n.getNodeName());
+  private static class CompiledFileCache extends LinkedHashMap<FileKey, CompiledXmlBlock> {
+    private static final long serialVersionUID = 1L;
+
+    CompiledFileCache() {
+      super(16, 0.75f, true);
+    }
+
+    @Override protected boolean removeEldestEntry(Map.Entry<FileKey, CompiledXmlBlock> eldest) {
+      return size() > MAX_CACHED_FILES;
     }
   }
 
@@ -101,8 +137,8 @@ public class XmlFileBuilder {
    * Concrete implementation of the {@link XmlResourceParser}.
    * <p/>
    * <p>Clients expects a pull parser while the resource loader
-   * initialise this object with a {@link Document}.
-   * This implementation navigates the dom and emulates a pull
+   * initialise this object with an {@link XmlBlock}.
+   * This implementation navigates the block and emulates a pull
    * parser by raising all the opportune events.
    * <p/>
    * <p>Note that the original android implementation is based on
@@ -114,25 +150,35 @@ public class XmlFileBuilder {
   public static class XmlResourceParserImpl
       implements XmlResourceParser {
 
-    private static final ResName FAKE_RES_NAME = new ResName("_robolectric_", "attr", "_fake_");
-
-    private final Document document;
+    private final CompiledXmlBlock compiledXmlBlock;
+    // the compiled block only refers to the index weakly
+    @SuppressWarnings("unused")
+    private final ResourceIndex resourceIndex;
+    private final XmlBlock xmlBlock;
     private final String fileName;
     private final String packageName;
-    private final ResourceIndex resourceIndex;
 
-    private Node currentNode;
+    private int currentNode = XmlBlock.NONE;
 
     private boolean mStarted = false;
     private boolean mDecNextDepth = false;
     private int mDepth = 0;
     private int mEventType = START_DOCUMENT;
 
-    public XmlResourceParserImpl(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
-      this.document = document;
-      this.fileName = fileName;
-      this.packageName = packageName;
+    public XmlResourceParserImpl(XmlBlock xmlBlock, String fileName, String packageName, ResourceIndex resourceIndex) {
+      this(new CompiledXmlBlock(xmlBlock, fileName, packageName, resourceIndex), resourceIndex);
+    }
+
+    XmlResourceParserImpl(CompiledXmlBlock compiledXmlBlock, ResourceIndex resourceIndex) {
+      this.compiledXmlBlock = compiledXmlBlock;
       this.resourceIndex = resourceIndex;
+      this.xmlBlock = compiledXmlBlock.xmlBlock;
+      this.fileName = compiledXmlBlock.fileName;
+      this.packageName = compiledXmlBlock.packageName;
+    }
+
+    public XmlResourceParserImpl(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
+      this(XmlBlock.create(document), fileName, packageName, resourceIndex);
     }
 
     public void setFeature(String name, boolean state)
@@ -215,10 +261,10 @@ public class XmlFileBuilder {
     }
 
     public String getText() {
-      if (currentNode == null) {
+      if (currentNode == XmlBlock.NONE) {
         return "";
       }
-      return currentNode.getTextContent();
+      return xmlBlock.getText(currentNode);
     }
 
     public int getLineNumber() {
@@ -265,10 +311,10 @@ public class XmlFileBuilder {
     }
 
     public String getNamespace() {
-      if (currentNode == null) {
+      if (currentNode == XmlBlock.NONE) {
         return "";
       }
-      String namespace = currentNode.getNamespaceURI();
+      String namespace = xmlBlock.getNamespace(currentNode);
       if (namespace == null) {
         return "";
       }
@@ -276,49 +322,49 @@ public class XmlFileBuilder {
     }
 
     public String getName() {
-      if (currentNode == null) {
+      if (currentNode == XmlBlock.NONE) {
         return "";
       }
-      return currentNode.getNodeName();
+      switch (xmlBlock.getNodeType(currentNode)) {
+        // text gets the same names the DOM gave it
+        case XmlBlock.TEXT:
+          return "#text";
+        case XmlBlock.CDATA:
+          return "#cdata-section";
+        default:
+          return xmlBlock.getName(currentNode);
+      }
     }
 
-    Node getAttributeAt(int index) {
-      if (currentNode == null) {
-        throw new IndexOutOfBoundsException(String.valueOf(index));
-      }
-      NamedNodeMap map = currentNode.getAttributes();
-      if (index >= map.getLength()) {
+    private int getAttributeAt(int index) {
+      if (currentNode == XmlBlock.NONE || index < 0 || index >= getAttributeCount()) {
         throw new IndexOutOfBoundsException(String.valueOf(index));
       }
-      return map.item(index);
+      return index;
     }
 
     public String getAttribute(String namespace, String name) {
-      if (currentNode == null) {
+      if (currentNode == XmlBlock.NONE || xmlBlock.getNodeType(currentNode) != XmlBlock.ELEMENT) {
         return null;
       }
 
-      Element element = (Element) currentNode;
-      if (element.hasAttributeNS(namespace, name)) {
-        return element.getAttributeNS(namespace, name);
+      int index = xmlBlock.findAttribute(currentNode, namespace, name);
+      if (index != XmlBlock.NONE) {
+        return xmlBlock.getAttributeValue(currentNode, index);
       }
       return null;
     }
 
     public String getAttributeNamespace(int index) {
-      Node attr = getAttributeAt(index);
-      if (attr == null) {
-        return null;
-      }
-      return attr.getNamespaceURI();
+      return xmlBlock.getAttributeNamespace(currentNode, getAttributeAt(index));
     }
 
     public String getAttributeName(int index) {
       try {
-        Node attr = getAttributeAt(index);
-        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(attr.getNamespaceURI()) ?
-          attr.getLocalName() :
-          attr.getNodeName();
+        int attr = getAttributeAt(index);
+        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(xmlBlock.getAttributeNamespace(currentNode, attr)) ?
+          xmlBlock.getAttributeLocalName(currentNode, attr) :
+          xmlBlock.getAttributeName(currentNode, attr);
       } catch (IndexOutOfBoundsException ex) {
         return null;
       }
@@ -335,25 +381,14 @@ public class XmlFileBuilder {
     }
 
     public int getAttributeCount() {
-      if (currentNode == null) {
+      if (currentNode == XmlBlock.NONE) {
         return -1;
       }
-      return currentNode.getAttributes().getLength();
+      return xmlBlock.getAttributeCount(currentNode);
     }
 
     public String getAttributeValue(int index) {
-      return qualify(getAttributeAt(index).getNodeValue());
-    }
-
-    private String qualify(String value) {
-      Attribute attribute = asAttribute(value);
-      if (attribute == null) return null;
-      return attribute.qualifiedValue();
-    }
-
-    private Attribute asAttribute(String value) {
-      if (value == null) return null;
-      return new Attribute(FAKE_RES_NAME, value, packageName);
+      return compiledXmlBlock.getQualifiedValue(currentNode, getAttributeAt(index));
     }
 
     public String getAttributeType(int index) {
@@ -372,7 +407,12 @@ public class XmlFileBuilder {
     }
 
     public String getAttributeValue(String namespace, String name) {
-      return qualify(getAttribute(namespace, name));
+      if (currentNode == XmlBlock.NONE || xmlBlock.getNodeType(currentNode) != XmlBlock.ELEMENT) {
+        return null;
+      }
+
+      int index = xmlBlock.findAttribute(currentNode, namespace, name);
+      return index == XmlBlock.NONE ? null : compiledXmlBlock.getQualifiedValue(currentNode, index);
     }
 
     public int next() throws XmlPullParserException, IOException {
@@ -448,14 +488,14 @@ public class XmlFileBuilder {
               "PROCESSING_INSTRUCTION");
         }
         case (START_DOCUMENT): {
-          currentNode = document.getDocumentElement();
+          currentNode = xmlBlock.getRoot();
           return START_TAG;
         }
         case (START_TAG): {
-          if (currentNode.hasChildNodes()) {
+          if (xmlBlock.getFirstChild(currentNode) != XmlBlock.NONE) {
             // The node has children, navigate down
             return processNextNodeType(
-                currentNode.getFirstChild());
+                xmlBlock.getFirstChild(currentNode));
           } else {
             // The node has no children
             return END_TAG;
@@ -474,45 +514,18 @@ public class XmlFileBuilder {
 
     }
 
-    /*protected*/ int processNextNodeType(Node node)
+    /*protected*/ int processNextNodeType(int node)
         throws XmlPullParserException {
-      switch (node.getNodeType()) {
-        case (Node.ATTRIBUTE_NODE): {
-          throw new IllegalArgumentException("ATTRIBUTE_NODE");
-        }
-        case (Node.CDATA_SECTION_NODE): {
-          return navigateToNextNode(node);
-        }
-        case (Node.COMMENT_NODE): {
+      switch (xmlBlock.getNodeType(node)) {
+        case (XmlBlock.CDATA): {
           return navigateToNextNode(node);
         }
-        case (Node.DOCUMENT_FRAGMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
-        }
-        case (Node.DOCUMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_NODE");
-        }
-        case (Node.DOCUMENT_TYPE_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.ELEMENT_NODE): {
+        case (XmlBlock.ELEMENT): {
           currentNode = node;
           return START_TAG;
         }
-        case (Node.ENTITY_NODE): {
-          throw new IllegalArgumentException("ENTITY_NODE");
-        }
-        case (Node.ENTITY_REFERENCE_NODE): {
-          throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
-        }
-        case (Node.NOTATION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.PROCESSING_INSTRUCTION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.TEXT_NODE): {
-          if (isWhitespace(node.getNodeValue())) {
+        case (XmlBlock.TEXT): {
+          if (isWhitespace(xmlBlock.getText(node))) {
             // Skip whitespaces
             return navigateToNextNode(node);
           } else {
@@ -523,7 +536,7 @@ public class XmlFileBuilder {
         default: {
           throw new RuntimeException(
               "Robolectric -> Unknown node type: " +
-                  node.getNodeType() + ".");
+                  xmlBlock.getNodeType(node) + ".");
         }
       }
     }
@@ -544,19 +557,19 @@ public class XmlFileBuilder {
      * @throws XmlPullParserException if the parser fails to
      *                                parse the next node.
      */
-    int navigateToNextNode(Node node)
+    int navigateToNextNode(int node)
         throws XmlPullParserException {
-      Node nextNode = node.getNextSibling();
-      if (nextNode != null) {
+      int nextNode = xmlBlock.getNextSibling(node);
+      if (nextNode != XmlBlock.NONE) {
         // Move to the next siblings
         return processNextNodeType(nextNode);
       } else {
         // Goes back to the parent
-        if (document.getDocumentElement().equals(node)) {
-          currentNode = null;
+        if (node == xmlBlock.getRoot()) {
+          currentNode = XmlBlock.NONE;
           return END_DOCUMENT;
         }
-        currentNode = node.getParentNode();
+        currentNode = xmlBlock.getParent(node);
         return END_TAG;
       }
     }
@@ -609,7 +622,7 @@ public class XmlFileBuilder {
     }
 
     public int getAttributeNameResource(int index) {
-      return getResourceId(getAttributeName(index), packageName, "attr");
+      return compiledXmlBlock.getNameResource(currentNode, index, getAttributeName(index));
     }
 
     public int getAttributeListValue(String namespace, String attribute,
@@ -704,14 +717,8 @@ public class XmlFileBuilder {
     }
 
     public int getAttributeResourceValue(int idx, int defaultValue) {
-      String attributeValue = getAttributeValue(idx);
-      if (attributeValue != null && attributeValue.startsWith("@")) {
-        int resourceId = getResourceId(attributeValue.substring(1), packageName, null);
-        if (resourceId != 0) {
-          return resourceId;
-        }
-      }
-      return defaultValue;
+      int resourceId = compiledXmlBlock.getValueResource(currentNode, getAttributeAt(idx));
+      return resourceId != 0 ? resourceId : defaultValue;
     }
 
     public int getAttributeIntValue(int idx, int defaultValue) {
@@ -763,11 +770,10 @@ public class XmlFileBuilder {
     }
 
     public int getStyleAttribute() {
-      String attr = getAttribute(null, "style");
-      if (attr == null) {
+      if (currentNode == XmlBlock.NONE || xmlBlock.getNodeType(currentNode) != XmlBlock.ELEMENT) {
         return 0;
       }
-      return getResourceId(attr, packageName, "style");
+      return compiledXmlBlock.getStyleAttribute(currentNode);
     }
 
     public void close() {
@@ -779,25 +785,7 @@ public class XmlFileBuilder {
     }
 
     private int getResourceId(String possiblyQualifiedResourceName, String defaultPackageName, String defaultType) {
-      Attribute attribute = asAttribute(possiblyQualifiedResourceName);
-
-      if (attribute.isNull()) return 0;
-
-      if (attribute.isStyleReference()) {
-        Integer resourceId = resourceIndex.getResourceId(attribute.getStyleReference());
-        return resourceId == null ? 0 : resourceId;
-      }
-
-      if (attribute.isResourceReference()) {
-        Integer resourceId = resourceIndex.getResourceId(attribute.getResourceReference());
-        return resourceId == null ? 0 : resourceId;
-      }
-      if (possiblyQualifiedResourceName.startsWith("@")) {
-        possiblyQualifiedResourceName = possiblyQualifiedResourceName.substring(1);
-      }
-      ResName resName = ResName.qualifyResName(possiblyQualifiedResourceName, defaultPackageName, defaultType);
-      Integer resourceId = resourceIndex.getResourceId(resName);
-      return resourceId == null ? 0 : resourceId;
+      return compiledXmlBlock.getResourceId(possiblyQualifiedResourceName, defaultPackageName, defaultType);
     }
   }
 }
@@ -47,7 +47,7 @@ public class ShadowAccountManager {
   private AccountManagerCallback<Bundle> pendingAddCallback;
   private RoboAccountManagerFuture pendingAddFuture;
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     synchronized (lock) {
       instance = null;
@@ -20,6 +20,7 @@ import org.robolectric.Robolectric;
 import org.robolectric.Shadows;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
 import org.robolectric.internal.HiddenApi;
 import org.robolectric.res.Attribute;
 import org.robolectric.res.DrawableNode;
@@ -54,6 +55,16 @@ public final class ShadowAssetManager {
 
   private static Map<Integer, List<OverlayedStyle>> appliedThemeStyles = new HashMap<Integer, List<OverlayedStyle>>();
 
+  // resolved styles are shared by all the views of a test, and dropped after it so they don't pin its resource loader
+  private static final Map<StyleKey, StyleResolver> styleResolvers = new HashMap<StyleKey, StyleResolver>();
+
+  @Resetter
+  public static void reset() {
+    synchronized (styleResolvers) {
+      styleResolvers.clear();
+    }
+  }
+
   static AssetManager bind(AssetManager assetManager, AndroidManifest androidManifest, ResourceLoader resourceLoader) {
     ShadowAssetManager shadowAssetManager = shadowOf(assetManager);
     if (shadowAssetManager.appManifest != null) throw new RuntimeException("ResourceLoader already set!");
@@ -301,10 +312,23 @@ public final class ShadowAssetManager {
   }
 
   static Style resolveStyle(ResourceLoader resourceLoader, Style appTheme, @NotNull ResName themeStyleName, String qualifiers) {
+    StyleKey styleKey = new StyleKey(resourceLoader, appTheme, themeStyleName, qualifiers);
+    synchronized (styleResolvers) {
+      StyleResolver styleResolver = styleResolvers.get(styleKey);
+      if (styleResolver != null) return styleResolver;
+    }
+
     TypedResource themeStyleResource = resourceLoader.getValue(themeStyleName, qualifiers);
     if (themeStyleResource == null) return null;
     StyleData themeStyleData = (StyleData) themeStyleResource.getData();
-    return new StyleResolver(resourceLoader, themeStyleData, appTheme, themeStyleName, qualifiers);
+    StyleResolver styleResolver = new StyleResolver(resourceLoader, themeStyleData, appTheme, themeStyleName, qualifiers);
+
+    synchronized (styleResolvers) {
+      StyleResolver existing = styleResolvers.get(styleKey);
+      if (existing != null) return existing;
+      styleResolvers.put(styleKey, styleResolver);
+    }
+    return styleResolver;
   }
 
   TypedResource getAndResolve(int resId, String qualifiers, boolean resolveRefs) {
@@ -368,12 +392,48 @@ public final class ShadowAssetManager {
     this.qualifiers = qualifiers;
   }
 
+  /**
+   * Identifies a resolved style; themes are compared by identity, since they're resolved styles themselves.
+   */
+  private static class StyleKey {
+    private final ResourceLoader resourceLoader;
+    private final Style theme;
+    private final ResName styleName;
+    private final String qualifiers;
+
+    StyleKey(ResourceLoader resourceLoader, Style theme, ResName styleName, String qualifiers) {
+      this.resourceLoader = resourceLoader;
+      this.theme = theme;
+      this.styleName = styleName;
+      this.qualifiers = qualifiers;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof StyleKey)) return false;
+      StyleKey that = (StyleKey) o;
+      return resourceLoader == that.resourceLoader
+          && theme == that.theme
+          && styleName.equals(that.styleName)
+          && (qualifiers == null ? that.qualifiers == null : qualifiers.equals(that.qualifiers));
+    }
+
+    @Override public int hashCode() {
+      int result = System.identityHashCode(resourceLoader);
+      result = 31 * result + System.identityHashCode(theme);
+      result = 31 * result + styleName.hashCode();
+      result = 31 * result + (qualifiers == null ? 0 : qualifiers.hashCode());
+      return result;
+    }
+  }
+
   static class StyleResolver implements Style {
     private final ResourceLoader resourceLoader;
     private final List<StyleData> styles = new ArrayList<StyleData>();
     private final Style theme;
     private final ResName myResName;
     private final String qualifiers;
+    private final Map<ResName, Attribute> attrValues = new HashMap<ResName, Attribute>();
 
     public StyleResolver(ResourceLoader resourceLoader, StyleData styleData,
         Style theme, ResName myResName, String qualifiers) {
@@ -384,7 +444,16 @@ public final class ShadowAssetManager {
       styles.add(styleData);
     }
 
-    @Override public Attribute getAttrValue(ResName resName) {
+    @Override public synchronized Attribute getAttrValue(ResName resName) {
+      Attribute value = attrValues.get(resName);
+      if (value == null && !attrValues.containsKey(resName)) {
+        value = findAttrValue(resName);
+        attrValues.put(resName, value);
+      }
+      return value;
+    }
+
+    private Attribute findAttrValue(ResName resName) {
       resName.mustBe("attr");
       for (StyleData style : styles) {
         Attribute value = style.getAttrValue(resName);
@@ -47,7 +47,7 @@ public class ShadowBinder {
     ShadowBinder.callingUid = uid;
   }
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     ShadowBinder.callingPid = null;
     ShadowBinder.callingUid = null;
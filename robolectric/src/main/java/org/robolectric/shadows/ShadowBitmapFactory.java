@@ -184,7 +184,7 @@ public class ShadowBitmapFactory {
     return Join.join(", ", opts);
   }
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     widthAndHeightMap.clear();
   }
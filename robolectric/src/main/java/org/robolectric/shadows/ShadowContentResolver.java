@@ -60,7 +60,7 @@ public class ShadowContentResolver {
   private static final Map<String, ContentProvider> providers = new HashMap<String, ContentProvider>();
   private static boolean masterSyncAutomatically;
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     syncableAccounts.clear();
     providers.clear();
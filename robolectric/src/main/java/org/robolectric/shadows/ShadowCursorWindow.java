@@ -8,8 +8,7 @@ import com.almworks.sqlite4java.SQLiteStatement;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,15 +29,16 @@ public class ShadowCursorWindow {
 
   @Implementation
   public static byte[] nativeGetBlob(int windowPtr, int row, int column) {
-    Value value = WINDOW_DATA.get(windowPtr).value(row, column);
+    Data data = WINDOW_DATA.get(windowPtr);
+    Column col = data.column(row, column);
 
-    switch (value.type) {
+    switch (col.types[row]) {
       case Cursor.FIELD_TYPE_NULL:
         return null;
       case Cursor.FIELD_TYPE_BLOB:
-        return (byte[])value.value;
+        return col.blobs[row];
       case Cursor.FIELD_TYPE_STRING:
-        return ((String)value.value).getBytes();
+        return col.strings[row].getBytes();
       default:
         throw new android.database.sqlite.SQLiteException("Getting blob when column is non-blob. Row " + row + ", col " + column);
     }
@@ -46,27 +46,54 @@ public class ShadowCursorWindow {
 
   @Implementation
   public static String nativeGetString(int windowPtr, int row, int column) {
-    Value val = WINDOW_DATA.get(windowPtr).value(row, column);
-    if (val.type == Cursor.FIELD_TYPE_BLOB) {
-      throw new android.database.sqlite.SQLiteException("Getting string when column is blob. Row " + row + ", col " + column);
+    Column col = WINDOW_DATA.get(windowPtr).column(row, column);
+
+    switch (col.types[row]) {
+      case Cursor.FIELD_TYPE_NULL:
+        return null;
+      case Cursor.FIELD_TYPE_INTEGER:
+        return String.valueOf(col.longs[row]);
+      case Cursor.FIELD_TYPE_FLOAT:
+        return String.valueOf(col.doubles[row]);
+      case Cursor.FIELD_TYPE_STRING:
+        return col.strings[row];
+      default:
+        throw new android.database.sqlite.SQLiteException("Getting string when column is blob. Row " + row + ", col " + column);
     }
-    Object value = val.value;
-    return value == null ? null : String.valueOf(value);
   }
 
+  // https://github.com/android/platform_frameworks_base/blob/master/core/jni/android_database_CursorWindow.cpp#L364
   @Implementation
   public static long nativeGetLong(int windowPtr, int row, int column) {
-    return nativeGetNumber(windowPtr, row, column).longValue();
+    Column col = WINDOW_DATA.get(windowPtr).column(row, column);
+
+    switch (col.types[row]) {
+      case Cursor.FIELD_TYPE_INTEGER:
+        return col.longs[row];
+      case Cursor.FIELD_TYPE_FLOAT:
+        return (long) col.doubles[row];
+      default:
+        return (long) nonNumericValue(col, row, column);
+    }
   }
 
   @Implementation
   public static double nativeGetDouble(int windowPtr, int row, int column) {
-    return nativeGetNumber(windowPtr, row, column).doubleValue();
+    Column col = WINDOW_DATA.get(windowPtr).column(row, column);
+
+    switch (col.types[row]) {
+      case Cursor.FIELD_TYPE_INTEGER:
+        return col.longs[row];
+      case Cursor.FIELD_TYPE_FLOAT:
+        return col.doubles[row];
+      default:
+        return nonNumericValue(col, row, column);
+    }
   }
 
   @Implementation
   public static int nativeGetType(int windowPtr, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).value(row, column).type;
+    return WINDOW_DATA.get(windowPtr).column(row, column).types[row];
   }
 
   @Implementation
@@ -81,27 +108,27 @@ public class ShadowCursorWindow {
 
   @Implementation
   public static boolean nativePutBlob(int windowPtr, byte[] value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_BLOB), row, column);
+    return WINDOW_DATA.get(windowPtr).putBlob(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutString(int windowPtr, String value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_STRING), row, column);
+    return WINDOW_DATA.get(windowPtr).putString(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutLong(int windowPtr, long value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_INTEGER), row, column);
+    return WINDOW_DATA.get(windowPtr).putLong(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutDouble(int windowPtr, double value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_FLOAT), row, column);
+    return WINDOW_DATA.get(windowPtr).putDouble(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutNull(int windowPtr, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(null, Cursor.FIELD_TYPE_NULL), row, column);
+    return WINDOW_DATA.get(windowPtr).putNull(row, column);
   }
 
   @Implementation
@@ -109,6 +136,11 @@ public class ShadowCursorWindow {
     return WINDOW_DATA.get(windowPtr).allocRow();
   }
 
+  @Implementation
+  public static void nativeFreeLastRow(int windowPtr) {
+    WINDOW_DATA.get(windowPtr).freeLastRow();
+  }
+
   @Implementation
   public static boolean nativeSetNumColumns(int windowPtr, int columnNum) {
     return WINDOW_DATA.get(windowPtr).setNumColumns(columnNum);
@@ -119,135 +151,291 @@ public class ShadowCursorWindow {
     return WINDOW_DATA.get(windowPtr).getName();
   }
 
-  protected static int setData(int windowPtr, SQLiteStatement stmt) throws SQLiteException {
-    return WINDOW_DATA.setData(windowPtr, stmt);
+  /**
+   * Fills the window with the rows of the statement starting at {@code startPos}, until the window is full.
+   * Returns the position of the first row in the window in the upper 32 bits, and the number of rows counted in
+   * the lower 32 bits, just like the native implementation.
+   */
+  protected static long setData(int windowPtr, SQLiteStatement stmt, int startPos, int requiredPos, boolean countAllRows) throws SQLiteException {
+    return WINDOW_DATA.get(windowPtr).fillWith(stmt, startPos, requiredPos, countAllRows);
   }
 
-  // https://github.com/android/platform_frameworks_base/blob/master/core/jni/android_database_CursorWindow.cpp#L364
-  private static Number nativeGetNumber(int windowPtr, int row, int column) {
-    Value value = WINDOW_DATA.get(windowPtr).value(row, column);
-    switch (value.type) {
+  private static double nonNumericValue(Column col, int row, int column) {
+    switch (col.types[row]) {
       case Cursor.FIELD_TYPE_NULL:
-      case SQLiteConstants.SQLITE_NULL:
         return 0;
-      case Cursor.FIELD_TYPE_INTEGER:
-      case Cursor.FIELD_TYPE_FLOAT:
-        return (Number) value.value;
-      case Cursor.FIELD_TYPE_STRING: {
+      case Cursor.FIELD_TYPE_STRING:
         try {
-          return Double.parseDouble((String) value.value);
+          return Double.parseDouble(col.strings[row]);
         } catch (NumberFormatException e) {
           return 0;
         }
-      }
-      case Cursor.FIELD_TYPE_BLOB:
-        throw new android.database.sqlite.SQLiteException("could not convert "+value);
       default:
-        throw new android.database.sqlite.SQLiteException("unknown type: "+value.type);
+        throw new android.database.sqlite.SQLiteException("could not convert blob to number. Row " + row + ", col " + column);
+    }
+  }
+
+  /**
+   * Stores each column in primitive arrays indexed by row, allocating the array for a type only once a value of
+   * that type shows up in the column.
+   */
+  private static class Column {
+    private byte[] types;
+    private long[] longs;
+    private double[] doubles;
+    private String[] strings;
+    private byte[][] blobs;
+
+    public Column(int capacity) {
+      types = new byte[capacity];
+    }
+
+    public void ensureCapacity(int capacity) {
+      if (capacity <= types.length) return;
+
+      int newCapacity = Math.max(capacity, types.length * 2);
+      types = Arrays.copyOf(types, newCapacity);
+      if (longs != null) longs = Arrays.copyOf(longs, newCapacity);
+      if (doubles != null) doubles = Arrays.copyOf(doubles, newCapacity);
+      if (strings != null) strings = Arrays.copyOf(strings, newCapacity);
+      if (blobs != null) blobs = Arrays.copyOf(blobs, newCapacity);
+    }
+
+    public void putNull(int row) {
+      clearReferences(row);
+      types[row] = Cursor.FIELD_TYPE_NULL;
+    }
+
+    public void putLong(int row, long value) {
+      clearReferences(row);
+      if (longs == null) longs = new long[types.length];
+      longs[row] = value;
+      types[row] = Cursor.FIELD_TYPE_INTEGER;
+    }
+
+    public void putDouble(int row, double value) {
+      clearReferences(row);
+      if (doubles == null) doubles = new double[types.length];
+      doubles[row] = value;
+      types[row] = Cursor.FIELD_TYPE_FLOAT;
+    }
+
+    public void putString(int row, String value) {
+      clearReferences(row);
+      if (strings == null) strings = new String[types.length];
+      strings[row] = value;
+      types[row] = Cursor.FIELD_TYPE_STRING;
+    }
+
+    public void putBlob(int row, byte[] value) {
+      clearReferences(row);
+      if (blobs == null) blobs = new byte[types.length][];
+      blobs[row] = value;
+      types[row] = Cursor.FIELD_TYPE_BLOB;
+    }
+
+    private void clearReferences(int row) {
+      if (strings != null) strings[row] = null;
+      if (blobs != null) blobs[row] = null;
     }
   }
 
   private static class Data {
-    private final List<Row> rows;
+    // sizes of the row and field slots of a native window, used to decide when a window is full
+    private static final int ROW_SLOT_SIZE = 4;
+    private static final int FIELD_SLOT_SIZE = 12;
+    private static final int INITIAL_CAPACITY = 16;
+
     private final String name;
+    private final int size;
+    private Column[] columns = new Column[0];
     private int numColumns;
+    private int numRows;
+    private int capacity = INITIAL_CAPACITY;
+    private int usedBytes;
 
     public Data(String name, int cursorWindowSize) {
       this.name = name;
-      this.rows = new ArrayList<Row>(cursorWindowSize);
+      this.size = cursorWindowSize > 0 ? cursorWindowSize : Integer.MAX_VALUE;
     }
 
-    public Value value(int rowN, int colN) {
-      Row row = rows.get(rowN);
-      if (row == null) {
-        throw new IllegalArgumentException("Bad row number: " + rowN + ", count: " + rows.size());
+    public Column column(int rowN, int colN) {
+      if (rowN < 0 || rowN >= numRows || colN < 0 || colN >= numColumns) {
+        throw new IllegalStateException("Couldn't read row " + rowN + ", col " + colN + " from CursorWindow. " +
+            "The window has " + numRows + " rows and " + numColumns + " columns.");
       }
-      return row.get(colN);
+      return column(colN);
     }
 
-    public int numRows() {
-      return rows.size();
+    private Column column(int colN) {
+      Column column = columns[colN];
+      if (column == null) {
+        column = columns[colN] = new Column(capacity);
+      }
+      return column;
     }
 
-    public boolean putValue(Value value, int rowN, int colN) {
-      return rows.get(rowN).set(colN, value);
+    public int numRows() {
+      return numRows;
     }
 
-    public void fillWith(SQLiteStatement stmt) throws SQLiteException {
-      //Android caches results in the WindowedCursor to allow moveToPrevious() to function.
-      //Robolectric will have to cache the results too. In the rows list.
-      while (stmt.step()) {
-        rows.add(fillRowValues(stmt));
-      }
+    public boolean putNull(int rowN, int colN) {
+      column(rowN, colN).putNull(rowN);
+      return true;
     }
 
-    private static int cursorValueType(final int sqliteType) {
-      switch (sqliteType) {
-        case SQLiteConstants.SQLITE_NULL:    return Cursor.FIELD_TYPE_NULL;
-        case SQLiteConstants.SQLITE_INTEGER: return Cursor.FIELD_TYPE_INTEGER;
-        case SQLiteConstants.SQLITE_FLOAT:   return Cursor.FIELD_TYPE_FLOAT;
-        case SQLiteConstants.SQLITE_TEXT:    return Cursor.FIELD_TYPE_STRING;
-        case SQLiteConstants.SQLITE_BLOB:    return Cursor.FIELD_TYPE_BLOB;
-        default:
-          throw new IllegalArgumentException("Bad SQLite type " + sqliteType + ". See possible values in SQLiteConstants.");
-      }
+    public boolean putLong(long value, int rowN, int colN) {
+      column(rowN, colN).putLong(rowN, value);
+      return true;
     }
 
-    private static Row fillRowValues(SQLiteStatement stmt) throws SQLiteException {
-      final int columnCount = stmt.columnCount();
-      Row row = new Row(columnCount);
-      for (int index = 0; index < columnCount; index++) {
-        row.set(index, new Value(stmt.columnValue(index), cursorValueType(stmt.columnType(index))));
-      }
-      return row;
+    public boolean putDouble(double value, int rowN, int colN) {
+      column(rowN, colN).putDouble(rowN, value);
+      return true;
     }
 
-    public void clear() {
-      rows.clear();
-    }
+    public boolean putString(String value, int rowN, int colN) {
+      if (value == null) return putNull(rowN, colN);
 
-    public boolean allocRow() {
-      rows.add(new Row(numColumns));
+      column(rowN, colN).putString(rowN, value);
+      usedBytes += utf8Length(value) + 1;
       return true;
     }
 
-    public boolean setNumColumns(int numColumns) {
-      this.numColumns = numColumns;
+    public boolean putBlob(byte[] value, int rowN, int colN) {
+      if (value == null) return putNull(rowN, colN);
+
+      column(rowN, colN).putBlob(rowN, value);
+      usedBytes += value.length;
       return true;
     }
 
-    public String getName() {
-      return name;
+    /**
+     * Like the native implementation, skips the rows before {@code startPos}, and if the window fills up before
+     * reaching {@code requiredPos}, starts over with a window beginning at the row that didn't fit.
+     */
+    public long fillWith(SQLiteStatement stmt, int startPos, int requiredPos, boolean countAllRows) throws SQLiteException {
+      int numColumns = stmt.columnCount();
+      clear();
+      setNumColumns(numColumns);
+
+      int totalRows = 0;
+      int addedRows = 0;
+      boolean windowFull = false;
+      try {
+        while ((!windowFull || countAllRows) && stmt.step()) {
+          totalRows++;
+          if (startPos >= totalRows || windowFull) continue;
+
+          boolean copied = copyRow(stmt, numColumns);
+          if (!copied && startPos + addedRows <= requiredPos) {
+            // the required row wouldn't fit, so start a new window at this row
+            clear();
+            setNumColumns(numColumns);
+            startPos += addedRows;
+            addedRows = 0;
+            copied = copyRow(stmt, numColumns);
+          }
+
+          if (copied) {
+            addedRows++;
+          } else {
+            windowFull = true;
+          }
+        }
+      } finally {
+        stmt.reset(false);
+      }
+      return ((long) startPos << 32) | totalRows;
     }
-  }
 
-  private static class Row {
-    private final List<Value> values;
+    private boolean copyRow(SQLiteStatement stmt, int numColumns) throws SQLiteException {
+      int usedBytesBefore = usedBytes;
+      allocRow();
+      int rowN = numRows - 1;
+      for (int colN = 0; colN < numColumns; colN++) {
+        switch (stmt.columnType(colN)) {
+          case SQLiteConstants.SQLITE_NULL:
+            putNull(rowN, colN);
+            break;
+          case SQLiteConstants.SQLITE_INTEGER:
+            putLong(stmt.columnLong(colN), rowN, colN);
+            break;
+          case SQLiteConstants.SQLITE_FLOAT:
+            putDouble(stmt.columnDouble(colN), rowN, colN);
+            break;
+          case SQLiteConstants.SQLITE_TEXT:
+            putString(stmt.columnString(colN), rowN, colN);
+            break;
+          case SQLiteConstants.SQLITE_BLOB:
+            putBlob(stmt.columnBlob(colN), rowN, colN);
+            break;
+          default:
+            throw new IllegalArgumentException("Bad SQLite type " + stmt.columnType(colN) + ". See possible values in SQLiteConstants.");
+        }
+      }
 
-    public Row(int length) {
-      values = new ArrayList<Value>(length);
-      for (int i=0; i<length; i++) {
-        values.add(new Value(null, Cursor.FIELD_TYPE_NULL));
+      // a row always fits into an empty window, otherwise we'd never get past it
+      if (usedBytes > size && numRows > 1) {
+        freeLastRow();
+        usedBytes = usedBytesBefore;
+        return false;
       }
+      return true;
     }
 
-    public Value get(int n) {
-      return values.get(n);
+    public void clear() {
+      columns = new Column[numColumns];
+      numRows = 0;
+      capacity = INITIAL_CAPACITY;
+      usedBytes = 0;
     }
 
-    public boolean set(int colN, Value value) {
-      values.set(colN, value);
+    public boolean allocRow() {
+      if (numRows == capacity) {
+        capacity *= 2;
+        for (Column column : columns) {
+          if (column != null) column.ensureCapacity(capacity);
+        }
+      }
+      numRows++;
+      usedBytes += ROW_SLOT_SIZE + FIELD_SLOT_SIZE * numColumns;
+      return true;
+    }
+
+    public void freeLastRow() {
+      if (numRows == 0) return;
+
+      numRows--;
+      for (Column column : columns) {
+        if (column != null) column.putNull(numRows);
+      }
+      usedBytes -= ROW_SLOT_SIZE + FIELD_SLOT_SIZE * numColumns;
+    }
+
+    public boolean setNumColumns(int numColumns) {
+      if (numColumns != this.numColumns) {
+        columns = Arrays.copyOf(columns, numColumns);
+        this.numColumns = numColumns;
+      }
       return true;
     }
-  }
 
-  private static class Value {
-    final Object value;
-    final int type;
+    public String getName() {
+      return name;
+    }
 
-    public Value(final Object value, final int type) {
-      this.value = value;
-      this.type = type;
+    private static int utf8Length(String value) {
+      int length = value.length();
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c >= 0x800 && (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE)) {
+          length += 2;
+        } else if (c >= 0x80) {
+          length += 1;
+        }
+      }
+      return length;
     }
   }
 
@@ -263,12 +451,6 @@ public class ShadowCursorWindow {
       return data;
     }
 
-    public int setData(final int ptr, final SQLiteStatement stmt) throws SQLiteException {
-      Data data = get(ptr);
-      data.fillWith(stmt);
-      return data.numRows();
-    }
-
     public void close(final int ptr) {
       Data removed = dataMap.remove(ptr);
       if (removed == null) {
@@ -291,7 +473,6 @@ public class ShadowCursorWindow {
   /* TODO:
   private static native int nativeCreateFromParcel(Parcel parcel);
   private static native void nativeWriteToParcel(int windowPtr, Parcel parcel);
-  private static native void nativeFreeLastRow(int windowPtr);
   private static native void nativeCopyStringToBuffer(int windowPtr, int row, int column,
                                                       CharArrayBuffer buffer);
    */
@@ -42,7 +42,7 @@ public class ShadowDialog {
   private static final ArrayList<Dialog> shownDialogs = new ArrayList<Dialog>();
   private boolean isCancelableOnTouchOutside;
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     setLatestDialog(null);
     shownDialogs.clear();
@@ -39,7 +39,10 @@ public class ShadowLooper {
   }
 
   private static Looper createLooper() {
-    return Robolectric.newInstanceOf(Looper.class);
+    Looper looper = Robolectric.newInstanceOf(Looper.class);
+    // the shadow records the thread it's created on, which has to be this one even if shadows are lazy
+    shadowOf(looper);
+    return looper;
   }
 
   @Resetter
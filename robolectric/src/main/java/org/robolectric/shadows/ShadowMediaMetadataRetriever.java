@@ -93,7 +93,7 @@ public class ShadowMediaMetadataRetriever {
     frames.get(dataSource).put(time, bitmap);
   }
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     metadata.clear();
     frames.clear();
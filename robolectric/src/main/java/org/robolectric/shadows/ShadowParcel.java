@@ -1,21 +1,14 @@
 package org.robolectric.shadows;
 
 import android.os.Parcel;
-import android.util.Pair;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
 import org.robolectric.internal.HiddenApi;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 @Implements(Parcel.class)
@@ -178,18 +171,34 @@ public class ShadowParcel {
     }
   }
 
+  /**
+   * Growable little-endian byte buffer laid out like a native Parcel: every value is padded to a multiple of
+   * four bytes, strings are UTF-16 with a length prefix and null terminator, and byte arrays are length-prefixed.
+   *
+   * Alongside the bytes we keep the type of the value written at each four-byte word, so that reading a value
+   * back as the wrong type fails fast with a {@link ClassCastException} instead of returning garbage.
+   */
   private static class ByteBuffer {
-
-    // List of elements where a pair is a piece of data and the sizeof that data
-    private List<Pair<Integer, ?>> buffer = new ArrayList<Pair<Integer, ?>>();
-    private int index;
+    private static final byte UNTYPED = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final String[] TYPE_NAMES = {"untyped", "int", "long", "float", "double", "String"};
+
+    private byte[] data = new byte[64];
+    private byte[] types = new byte[16];
+    private int size;
+    private int position;
 
     /**
      * Removes all elements from the byte buffer
      */
     public void clear() {
-      index = 0;
-      buffer.clear();
+      size = 0;
+      position = 0;
+      Arrays.fill(types, UNTYPED);
     }
 
     /**
@@ -197,110 +206,128 @@ public class ShadowParcel {
      */
     public byte[] readByteArray() {
       int length = readInt();
-      if (length == -1) {
+      if (length < 0) {
         return null;
       }
       byte[] array = new byte[length];
-      for (int i = 0; i < length; i++) {
-        array[i] = readByte();
+      if (position + length <= size) {
+        System.arraycopy(data, position, array, 0, length);
+        position += pad(length);
       }
       return array;
     }
 
-    /**
-     * Writes a byte to the byte buffer at the current data position
-     */
-    public void writeByte(byte b) {
-      writeValue(Byte.SIZE / 8, b);
-    }
-
     /**
      * Writes a byte array starting at offset for length bytes to the byte buffer at the current
      * data position
      */
     public void writeByteArray(byte[] b, int offset, int length) {
-      writeInt(b.length);
-      for (int i = offset; i < offset + length && i < b.length; i++) {
-        writeByte(b[i]);
-      }
-    }
-
-    /**
-     * Reads a byte from the byte buffer based on the current data position
-     */
-    public byte readByte() {
-      return readValue((byte) 0);
+      writeInt(length);
+      int start = prepareWrite(length, UNTYPED);
+      System.arraycopy(b, offset, data, start, length);
     }
 
     /**
      * Writes an int to the byte buffer at the current data position
      */
     public void writeInt(int i) {
-      writeValue(Integer.SIZE / 8, i);
+      putInt(prepareWrite(4, INT), i);
     }
 
     /**
      * Reads a int from the byte buffer based on the current data position
      */
     public int readInt() {
-      return readValue(0);
+      if (!prepareRead(4, INT)) return 0;
+      int value = getInt(position);
+      position += 4;
+      return value;
     }
 
     /**
      * Writes a long to the byte buffer at the current data position
      */
     public void writeLong(long l) {
-      writeValue(Long.SIZE / 8, l);
+      putLong(prepareWrite(8, LONG), l);
     }
 
     /**
      * Reads a long from the byte buffer based on the current data position
      */
     public long readLong() {
-      return readValue(0l);
+      if (!prepareRead(8, LONG)) return 0;
+      long value = getLong(position);
+      position += 8;
+      return value;
     }
 
     /**
      * Writes a float to the byte buffer at the current data position
      */
     public void writeFloat(float f) {
-      writeValue(Float.SIZE / 8, f);
+      putInt(prepareWrite(4, FLOAT), Float.floatToIntBits(f));
     }
 
     /**
      * Reads a float from the byte buffer based on the current data position
      */
     public float readFloat() {
-      return readValue(0f);
+      if (!prepareRead(4, FLOAT)) return 0;
+      float value = Float.intBitsToFloat(getInt(position));
+      position += 4;
+      return value;
     }
 
     /**
      * Writes a double to the byte buffer at the current data position
      */
     public void writeDouble(double d) {
-      writeValue(Double.SIZE / 8, d);
+      putLong(prepareWrite(8, DOUBLE), Double.doubleToLongBits(d));
     }
 
     /**
      * Reads a double from the byte buffer based on the current data position
      */
     public double readDouble() {
-      return readValue(0d);
+      if (!prepareRead(8, DOUBLE)) return 0;
+      double value = Double.longBitsToDouble(getLong(position));
+      position += 8;
+      return value;
     }
 
     /**
      * Writes a String to the byte buffer at the current data position
      */
     public void writeString(String s) {
-      int length = s == null ? Integer.SIZE / 8 : s.length();
-      writeValue(length, s);
+      if (s == null) {
+        putInt(prepareWrite(4, STRING), -1);
+        return;
+      }
+      int length = s.length();
+      int start = prepareWrite(4 + (length + 1) * 2, STRING);
+      putInt(start, length);
+      for (int i = 0; i < length; i++) {
+        putChar(start + 4 + i * 2, s.charAt(i));
+      }
+      putChar(start + 4 + length * 2, (char) 0);
     }
 
     /**
      * Reads a String from the byte buffer based on the current data position
      */
     public String readString() {
-      return readValue(null);
+      if (!prepareRead(4, STRING)) return null;
+      int length = getInt(position);
+      if (length < 0 || position + 4 + (length + 1) * 2 > size) {
+        position += 4;
+        return null;
+      }
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        chars[i] = getChar(position + 4 + i * 2);
+      }
+      position += pad(4 + (length + 1) * 2);
+      return new String(chars);
     }
 
     /**
@@ -312,13 +339,19 @@ public class ShadowParcel {
      * @param length number of bytes to copy
      */
     public void appendFrom(ByteBuffer other, int offset, int length) {
-      int otherIndex = other.toIndex(offset);
-      int otherEndIndex = other.toIndex(offset + length);
-      for (int i = otherIndex; i < otherEndIndex && i < other.buffer.size(); i++) {
-        int elementSize = other.buffer.get(i).first;
-        Object elementValue = other.buffer.get(i).second;
-        writeValue(elementSize, elementValue);
+      length = Math.min(length, other.size - offset);
+      if (length <= 0) return;
+
+      int start = position;
+      ensureCapacity(start + length);
+      System.arraycopy(other.data, offset, data, start, length);
+      if (start % 4 == 0 && offset % 4 == 0) {
+        System.arraycopy(other.types, offset >> 2, types, start >> 2, (length + 3) >> 2);
+      } else {
+        clearTypes(start, length);
       }
+      position = start + length;
+      size = Math.max(size, position);
     }
 
     /**
@@ -330,21 +363,10 @@ public class ShadowParcel {
      */
     public static ByteBuffer fromByteArray(byte[] array, int offset, int length) {
       ByteBuffer byteBuffer = new ByteBuffer();
-
-      try {
-        ByteArrayInputStream bis = new ByteArrayInputStream(array, offset,
-            length);
-        ObjectInputStream ois = new ObjectInputStream(bis);
-        int numElements = ois.readInt();
-        for (int i = 0; i < numElements; i++) {
-          int sizeOf = ois.readInt();
-          Object value = ois.readObject();
-          byteBuffer.buffer.add(Pair.create(sizeOf, value));
-        }
-        return byteBuffer;
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
+      byteBuffer.ensureCapacity(length);
+      System.arraycopy(array, offset, byteBuffer.data, 0, length);
+      byteBuffer.size = length;
+      return byteBuffer;
     }
 
     /**
@@ -352,19 +374,9 @@ public class ShadowParcel {
      * symmetrical with fromByteArray.
      */
     public byte[] toByteArray() {
-      try {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        int length = buffer.size();
-        oos.writeInt(length);
-        for (Pair<Integer, ?> element : buffer) {
-          oos.writeInt(element.first);
-          oos.writeObject(element.second);
-        }
-        return bos.toByteArray();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+      byte[] bytes = new byte[dataSize()];
+      System.arraycopy(data, 0, bytes, 0, Math.min(size, bytes.length));
+      return bytes;
     }
 
     /**
@@ -378,23 +390,21 @@ public class ShadowParcel {
      * Total buffer size in bytes of byte buffer included unused space.
      */
     public int dataCapacity() {
-      return dataSize();
+      return Math.max(data.length, dataSize());
     }
 
     /**
      * Current data position of byte buffer in bytes. Reads / writes are from this position.
      */
     public int dataPosition() {
-      return toDataPosition(index);
+      return position;
     }
 
     /**
      * Current amount of bytes currently written for ByteBuffer.
      */
     public int dataSize() {
-      int totalSize = totalSize();
-      int dataPosition = dataPosition();
-      return totalSize > dataPosition ? totalSize : dataPosition;
+      return size > position ? size : position;
     }
 
     /**
@@ -404,56 +414,112 @@ public class ShadowParcel {
      *          Desired position in bytes
      */
     public void setDataPosition(int pos) {
-      index = toIndex(pos);
+      position = pos;
     }
 
     public void setDataSize(int size) {
-      // TODO
+      ensureCapacity(size);
+      if (size < this.size) {
+        clearTypes(size, this.size - size);
+      }
+      this.size = size;
+      if (position > size) {
+        position = size;
+      }
     }
 
     public void setDataCapacity(int size) {
-      // TODO
+      ensureCapacity(size);
     }
 
-    private int totalSize() {
-      int size = 0;
-      for (Pair<Integer, ?> element : buffer) {
-        size += element.first;
-      }
-      return size;
+    private static int pad(int length) {
+      return (length + 3) & ~3;
     }
 
-    private <T extends Object> T readValue(T defaultValue) {
-      T value = (index < buffer.size()) ? (T) buffer.get(index++).second
-          : defaultValue;
-      return value;
+    /**
+     * Makes room for a value of the given length at the current position, records its type and advances past it.
+     * Returns the offset to write the value at.
+     */
+    private int prepareWrite(int length, byte type) {
+      int start = position;
+      int paddedLength = pad(length);
+      ensureCapacity(start + paddedLength);
+      clearTypes(start, paddedLength);
+      if (start % 4 == 0) {
+        types[start >> 2] = type;
+      }
+      for (int i = start + length; i < start + paddedLength; i++) {
+        data[i] = 0;
+      }
+      position = start + paddedLength;
+      size = Math.max(size, position);
+      return start;
     }
 
-    private void writeValue(int i, Object o) {
-      Pair<Integer, ?> value = Pair.create(i, o);
-      if (index < buffer.size()) {
-        buffer.set(index, value);
-      } else {
-        buffer.add(value);
+    /**
+     * Returns false if there isn't a value of the given length at the current position; throws if the value there
+     * was written as a different type.
+     */
+    private boolean prepareRead(int length, byte type) {
+      if (position < 0 || position + length > size) {
+        return false;
+      }
+      if (position % 4 == 0) {
+        byte writtenType = types[position >> 2];
+        if (writtenType != UNTYPED && writtenType != type) {
+          throw new ClassCastException("can't read " + TYPE_NAMES[type] + " at position " + position
+              + ", a " + TYPE_NAMES[writtenType] + " was written there");
+        }
       }
-      index++;
+      return true;
     }
 
-    private int toDataPosition(int index) {
-      int pos = 0;
-      for (int i = 0; i < index; i++) {
-        pos += buffer.get(i).first;
+    private void clearTypes(int start, int length) {
+      int firstWord = (start + 3) >> 2;
+      int endWord = Math.min((start + length + 3) >> 2, types.length);
+      for (int i = firstWord; i < endWord; i++) {
+        types[i] = UNTYPED;
       }
-      return pos;
     }
 
-    private int toIndex(int dataPosition) {
-      int calculatedPos = 0;
-      int i = 0;
-      for (; i < buffer.size() && calculatedPos < dataPosition; i++) {
-        calculatedPos += buffer.get(i).first;
+    private void ensureCapacity(int capacity) {
+      if (capacity > data.length) {
+        int newCapacity = Math.max(capacity, data.length * 2);
+        data = Arrays.copyOf(data, newCapacity);
+        types = Arrays.copyOf(types, (newCapacity + 3) >> 2);
       }
-      return i;
+    }
+
+    private void putInt(int offset, int value) {
+      data[offset] = (byte) value;
+      data[offset + 1] = (byte) (value >> 8);
+      data[offset + 2] = (byte) (value >> 16);
+      data[offset + 3] = (byte) (value >> 24);
+    }
+
+    private int getInt(int offset) {
+      return (data[offset] & 0xff)
+          | (data[offset + 1] & 0xff) << 8
+          | (data[offset + 2] & 0xff) << 16
+          | (data[offset + 3] & 0xff) << 24;
+    }
+
+    private void putLong(int offset, long value) {
+      putInt(offset, (int) value);
+      putInt(offset + 4, (int) (value >> 32));
+    }
+
+    private long getLong(int offset) {
+      return (getInt(offset) & 0xffffffffL) | ((long) getInt(offset + 4)) << 32;
+    }
+
+    private void putChar(int offset, char value) {
+      data[offset] = (byte) value;
+      data[offset + 1] = (byte) (value >> 8);
+    }
+
+    private char getChar(int offset) {
+      return (char) ((data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8);
     }
   }
 }
@@ -200,7 +200,7 @@ public class ShadowPendingIntent {
     return null;
   }
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     createdIntents.clear();
   }
@@ -20,7 +20,7 @@ public class ShadowProcess {
     ShadowProcess.pid = pid;
   }
   
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     ShadowProcess.pid = 0;
   }
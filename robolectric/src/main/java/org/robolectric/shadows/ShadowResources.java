@@ -20,8 +20,6 @@ import org.robolectric.internal.HiddenApi;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.res.*;
 import org.robolectric.res.builder.XmlFileBuilder;
-import org.robolectric.util.Util;
-import org.w3c.dom.Document;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -177,11 +175,13 @@ public class ShadowResources {
       defStyleFromRes = ShadowAssetManager.resolveStyle(resourceLoader, theme, resName, shadowAssetManager.getQualifiers());
     }
 
-    List<Attribute> attributes = new ArrayList<Attribute>();
     if (attrs == null) attrs = new int[0];
-    for (int attr : attrs) {
-      ResName attrName = tryResName(attr); // todo probably getResName instead here?
+    ResName[] attrNames = new ResName[attrs.length];
+    Attribute[] attributes = new Attribute[attrs.length];
+    for (int i = 0; i < attrs.length; i++) {
+      ResName attrName = tryResName(attrs[i]); // todo probably getResName instead here?
       if (attrName == null) continue;
+      attrNames[i] = attrName;
 
       Attribute attribute = findAttributeValue(attrName, set, styleAttrStyle, defStyleFromAttr, defStyleFromRes, theme, overlayedStyles);
       while (attribute != null && attribute.isStyleReference()) {
@@ -192,20 +192,30 @@ public class ShadowResources {
           attribute = new Attribute(attrName, attribute.value, attribute.contextPackageName);
         }
       }
-
-      if (attribute != null) {
-        Attribute.put(attributes, attribute);
-      }
+      attributes[i] = attribute;
     }
 
-    TypedArray typedArray = createTypedArray(attributes, attrs);
+    TypedArray typedArray = createTypedArray(attrNames, attributes, attrs);
     shadowOf(typedArray).positionDescription = set.getPositionDescription();
     return typedArray;
   }
 
   public TypedArray createTypedArray(List<Attribute> set, int[] attrs) {
+    ResourceIndex resourceIndex = getResourceLoader().getResourceIndex();
+    ResName[] attrNames = new ResName[attrs.length];
+    Attribute[] attributes = new Attribute[attrs.length];
+    for (int i = 0; i < attrs.length; i++) {
+      attrNames[i] = resourceIndex.getResName(attrs[i]);
+      if (attrNames[i] != null) attributes[i] = Attribute.find(set, attrNames[i]);
+    }
+    return createTypedArray(attrNames, attributes, attrs);
+  }
+
+  /**
+   * Fills in the typed array straight from the attribute found for each position in {@code attrs}, if any.
+   */
+  private TypedArray createTypedArray(ResName[] attrNames, Attribute[] attributes, int[] attrs) {
     ResourceLoader resourceLoader = getResourceLoader();
-    ResourceIndex resourceIndex = resourceLoader.getResourceIndex();
     String qualifiers = shadowOf(realResources.getAssets()).getQualifiers();
 
     CharSequence[] stringData = new CharSequence[attrs.length];
@@ -213,19 +223,17 @@ public class ShadowResources {
     int[] indices = new int[attrs.length + 1];
     int nextIndex = 0;
 
-    List<Integer> wantedAttrsList = Util.intArrayToList(attrs);
-
+    TypedValue typedValue = new TypedValue();
     for (int i = 0; i < attrs.length; i++) {
       int offset = i * ShadowAssetManager.STYLE_NUM_ENTRIES;
 
-      int attr = attrs[i];
-      ResName attrName = resourceIndex.getResName(attr);
+      ResName attrName = attrNames[i];
       if (attrName != null) {
-        Attribute attribute = Attribute.find(set, attrName);
-        TypedValue typedValue = new TypedValue();
-        Converter.convertAndFill(attribute, typedValue, resourceLoader, qualifiers, true);
-
+        Attribute attribute = findAttribute(attributes, i, attrName);
         if (attribute != null && !attribute.isNull()) {
+          clear(typedValue);
+          Converter.convertAndFill(attribute, typedValue, resourceLoader, qualifiers, true);
+
           //noinspection PointlessArithmeticExpression
           data[offset + ShadowAssetManager.STYLE_TYPE] = typedValue.type;
           data[offset + ShadowAssetManager.STYLE_DATA] = typedValue.type == TypedValue.TYPE_STRING ? i : typedValue.data;
@@ -246,6 +254,33 @@ public class ShadowResources {
     return ShadowTypedArray.create(realResources, attrs, data, indices, nextIndex, stringData);
   }
 
+  /**
+   * Attributes are normally found under their own attr name, but one that isn't applies to every position
+   * with that name instead; the last one wins, as if they'd been put in a list one by one.
+   */
+  private static Attribute findAttribute(Attribute[] attributes, int index, ResName attrName) {
+    Attribute attribute = attributes[index];
+    if (attribute != null && attrName.equals(attribute.resName)) return attribute;
+
+    for (int i = attributes.length - 1; i >= 0; i--) {
+      if (attributes[i] != null && attrName.equals(attributes[i].resName)) return attributes[i];
+    }
+    return null;
+  }
+
+  /**
+   * Resets a reused value to what a new TypedValue holds.
+   */
+  private static void clear(TypedValue typedValue) {
+    typedValue.type = 0;
+    typedValue.string = null;
+    typedValue.data = 0;
+    typedValue.assetCookie = 0;
+    typedValue.resourceId = 0;
+    typedValue.changingConfigurations = -1;
+    typedValue.density = 0;
+  }
+
   private Attribute findAttributeValue(ResName attrName, AttributeSet attributeSet, Style styleAttrStyle, Style defStyleFromAttr, Style defStyleFromRes, Style theme, List<ShadowAssetManager.OverlayedStyle> overlayedStyles) {
     String attrValue = attributeSet.getAttributeValue(attrName.getNamespaceUri(), attrName.name);
     if (attrValue != null) {
@@ -432,11 +467,11 @@ public class ShadowResources {
   @Implementation
   public XmlResourceParser getXml(int id) throws Resources.NotFoundException {
     ResName resName = getResName(id);
-    Document document = getResourceLoader().getXml(resName, getQualifiers());
-    if (document == null) {
+    XmlBlock xmlBlock = getResourceLoader().getXml(resName, getQualifiers());
+    if (xmlBlock == null) {
       throw new Resources.NotFoundException();
     }
-    return new XmlFileBuilder().getXml(document, resName.getFullyQualifiedName(), resName.packageName, getResourceLoader().getResourceIndex());
+    return new XmlFileBuilder().getXml(xmlBlock, resName.getFullyQualifiedName(), resName.packageName, getResourceLoader().getResourceIndex());
   }
 
   @HiddenApi @Implementation
@@ -27,6 +27,15 @@ public class ShadowSQLiteConnection {
 
   private static final String IN_MEMORY_PATH = ":memory:";
 
+  /**
+   * When this system property is true, connections are confined to the thread that opens them and sqlite4java is
+   * called directly on that thread, instead of handing every call to a shared database thread. This is much faster
+   * for tests that hit the database heavily, but such connections can't be used from any other thread. They can still
+   * be closed from any thread, e.g. by the finalizer; the owning thread disposes them the next time it opens or closes
+   * a connection.
+   */
+  public static final String DIRECT_MODE_PROPERTY = "robolectric.sqlite.direct";
+
   private static final Connections CONNECTIONS = new Connections();
 
   // indicates an ignored statement
@@ -44,7 +53,7 @@ public class ShadowSQLiteConnection {
     return CONNECTIONS.getStatement(connectionPtr, pointer);
   }
 
-  private static void rethrow(final String message, final SQLiteException e) {
+  private static RuntimeException rethrow(final String message, final SQLiteException e) {
     throw new android.database.sqlite.SQLiteException(message + ", base error code: " + e.getBaseErrorCode(), e);
   }
 
@@ -71,6 +80,13 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static int nativeGetParameterCount(final int connectionPtr, final int statementPtr) {
     if (statementPtr == IGNORED_REINDEX_STMT) { return 0; } // TODO
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        return stmt(connectionPtr, statementPtr).getBindParameterCount();
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot get parameters count in prepared statement", e);
+      }
+    }
     return CONNECTIONS.execute("get parameters count in prepared statement", new Callable<Integer>() {
       @Override
       public Integer call() throws SQLiteException {
@@ -83,6 +99,13 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static boolean nativeIsReadOnly(final int connectionPtr, final int statementPtr) {
     if (statementPtr == IGNORED_REINDEX_STMT) { return true; } // TODO
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        return stmt(connectionPtr, statementPtr).isReadOnly();
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot call isReadOnly", e);
+      }
+    }
     return CONNECTIONS.execute("call isReadOnly", new Callable<Boolean>() {
       @Override
       public Boolean call() throws SQLiteException {
@@ -94,6 +117,17 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static long nativeExecuteForLong(final int connectionPtr, final int statementPtr) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
+        if (!stmt.step()) {
+          throw new SQLiteDoneException();
+        }
+        return stmt.columnLong(0);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot execute for long", e);
+      }
+    }
     return CONNECTIONS.execute("execute for long", new Callable<Long>() {
       @Override
       public Long call() throws SQLiteException {
@@ -109,6 +143,14 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static void nativeExecute(final int connectionPtr, final int statementPtr) {
     if (statementPtr == IGNORED_REINDEX_STMT) { return; } // TODO
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).stepThrough();
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot execute", e);
+      }
+      return;
+    }
     CONNECTIONS.execute("execute", new Callable<Object>() {
       @Override
       public Object call() throws SQLiteException {
@@ -121,6 +163,17 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static String nativeExecuteForString(final int connectionPtr, final int statementPtr) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
+        if (!stmt.step()) {
+          throw new SQLiteDoneException();
+        }
+        return stmt.columnString(0);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot execute for string", e);
+      }
+    }
     return CONNECTIONS.execute("execute for string", new Callable<String>() {
       @Override
       public String call() throws SQLiteException {
@@ -135,6 +188,13 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static int nativeGetColumnCount(final int connectionPtr, final int statementPtr) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        return stmt(connectionPtr, statementPtr).columnCount();
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot get columns count", e);
+      }
+    }
     return CONNECTIONS.execute("get columns count", new Callable<Integer>() {
       @Override
       public Integer call() throws SQLiteException {
@@ -146,6 +206,13 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static String nativeGetColumnName(final int connectionPtr, final int statementPtr, final int index) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        return stmt(connectionPtr, statementPtr).getColumnName(index);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot get column name at index " + index, e);
+      }
+    }
     return CONNECTIONS.execute("get column name at index " + index, new Callable<String>() {
       @Override
       public String call() throws SQLiteException {
@@ -157,6 +224,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindNull(final int connectionPtr, final int statementPtr, final int index) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).bindNull(index);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot bind null at index " + index, e);
+      }
+      return;
+    }
     CONNECTIONS.execute("bind null at index " + index, new Callable<Object>() {
       @Override
       public Object call() throws Exception {
@@ -169,6 +244,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindLong(final int connectionPtr, final int statementPtr, final int index, final long value) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).bind(index, value);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot bind long at index " + index + " with value " + value, e);
+      }
+      return;
+    }
     CONNECTIONS.execute("bind long at index " + index + " with value " + value, new Callable<Object>() {
       @Override
       public Object call() throws Exception {
@@ -181,6 +264,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindDouble(final int connectionPtr, final int statementPtr, final int index, final double value) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).bind(index, value);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot bind double at index " + index + " with value " + value, e);
+      }
+      return;
+    }
     CONNECTIONS.execute("bind double at index " + index + " with value " + value, new Callable<Object>() {
       @Override
       public Object call() throws Exception {
@@ -193,6 +284,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindString(final int connectionPtr, final int statementPtr, final int index, final String value) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).bind(index, value);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot bind string at index " + index, e);
+      }
+      return;
+    }
     CONNECTIONS.execute("bind string at index " + index, new Callable<Object>() {
       @Override
       public Object call() throws Exception {
@@ -205,6 +304,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindBlob(final int connectionPtr, final int statementPtr, final int index, final byte[] value) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).bind(index, value);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot bind blob at index " + index, e);
+      }
+      return;
+    }
     CONNECTIONS.execute("bind blob at index " + index, new Callable<Object>() {
       @Override
       public Object call() throws Exception {
@@ -224,6 +331,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static int nativeExecuteForChangedRowCount(final int connectionPtr, final int statementPtr) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).stepThrough();
+        return connection(connectionPtr).getChanges();
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot execute for changed row count", e);
+      }
+    }
     return CONNECTIONS.execute("execute for changed row count", new Callable<Integer>() {
       @Override
       public Integer call() throws Exception {
@@ -236,6 +351,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static long nativeExecuteForLastInsertedRowId(final int connectionPtr, final int statementPtr) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).stepThrough();
+        return connection(connectionPtr).getLastInsertId();
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot execute for last inserted row ID", e);
+      }
+    }
     return CONNECTIONS.execute("execute for last inserted row ID", new Callable<Long>() {
       @Override
       public Long call() throws Exception {
@@ -249,12 +372,18 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static long nativeExecuteForCursorWindow(final int connectionPtr, final int statementPtr, final int windowPtr,
                                                   final int startPos, final int requiredPos, final boolean countAllRows) {
-
-    return CONNECTIONS.execute("execute for cursor window", new Callable<Integer>() {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        return ShadowCursorWindow.setData(windowPtr, stmt(connectionPtr, statementPtr), startPos, requiredPos, countAllRows);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot execute for cursor window", e);
+      }
+    }
+    return CONNECTIONS.execute("execute for cursor window", new Callable<Long>() {
       @Override
-      public Integer call() throws Exception {
+      public Long call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
-        return ShadowCursorWindow.setData(windowPtr, stmt);
+        return ShadowCursorWindow.setData(windowPtr, stmt, startPos, requiredPos, countAllRows);
       }
     });
 
@@ -262,6 +391,14 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeResetStatementAndClearBindings(final int connectionPtr, final int statementPtr) {
+    if (CONNECTIONS.isDirect(connectionPtr)) {
+      try {
+        stmt(connectionPtr, statementPtr).reset(true);
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot reset statement", e);
+      }
+      return;
+    }
     CONNECTIONS.execute("reset statement", new Callable<Object>() {
       @Override
       public Object call() throws Exception {
@@ -306,6 +443,10 @@ public class ShadowSQLiteConnection {
 
     private final Map<Integer, SQLiteStatement> statementsMap = new ConcurrentHashMap<Integer, SQLiteStatement>();
     private final Map<Integer, SQLiteConnection> connectionsMap = new ConcurrentHashMap<Integer, SQLiteConnection>();
+    // threads that own connections opened in direct mode
+    private final Map<Integer, Thread> connectionOwners = new ConcurrentHashMap<Integer, Thread>();
+    // direct mode connections closed away from their owners, waiting for the owner to dispose them
+    private final Map<SQLiteConnection, Thread> orphanedConnections = new ConcurrentHashMap<SQLiteConnection, Thread>();
 
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
 
@@ -332,9 +473,24 @@ public class ShadowSQLiteConnection {
       return stmt;
     }
 
-    public int open(final String path) {
+    /**
+     * Returns true if the given connection was opened in direct mode by the current thread, in which case
+     * sqlite4java should be called right here rather than through the executor.
+     */
+    public boolean isDirect(final int connectionPtr) {
+      Thread owner = connectionOwners.get(connectionPtr);
+      if (owner == null) {
+        return false;
+      }
+      if (owner != Thread.currentThread()) {
+        throw new IllegalStateException("SQLite connection " + connectionPtr + " was opened on " + owner
+            + " and can't be used from " + Thread.currentThread() + " when " + DIRECT_MODE_PROPERTY + " is set");
+      }
+      return true;
+    }
 
-      SQLiteConnection dbConnection = execute("open SQLite connection", new Callable<SQLiteConnection>() {
+    public int open(final String path) {
+      Callable<SQLiteConnection> openConnection = new Callable<SQLiteConnection>() {
         @Override
         public SQLiteConnection call() throws Exception {
           SQLiteConnection connection = IN_MEMORY_PATH.equals(path)
@@ -345,10 +501,22 @@ public class ShadowSQLiteConnection {
 
           return connection;
         }
-      });
+      };
+
+      boolean direct = Boolean.getBoolean(DIRECT_MODE_PROPERTY);
+      SQLiteConnection dbConnection;
+      if (direct) {
+        disposeOrphanedConnections();
+        dbConnection = call("open SQLite connection", openConnection);
+      } else {
+        dbConnection = execute("open SQLite connection", openConnection);
+      }
 
       int ptr = pointerCounter.incrementAndGet();
       connectionsMap.put(ptr, dbConnection);
+      if (direct) {
+        connectionOwners.put(ptr, Thread.currentThread());
+      }
       return ptr;
     }
 
@@ -358,13 +526,22 @@ public class ShadowSQLiteConnection {
         return IGNORED_REINDEX_STMT;
       }
 
-      SQLiteStatement stmt = execute("prepare statement", new Callable<SQLiteStatement>() {
-        @Override
-        public SQLiteStatement call() throws Exception {
-          SQLiteConnection connection = getConnection(connectionPtr);
-          return connection.prepare(sql);
+      SQLiteStatement stmt;
+      if (isDirect(connectionPtr)) {
+        try {
+          stmt = getConnection(connectionPtr).prepare(sql);
+        } catch (SQLiteException e) {
+          throw rethrow("Cannot prepare statement", e);
         }
-      });
+      } else {
+        stmt = execute("prepare statement", new Callable<SQLiteStatement>() {
+          @Override
+          public SQLiteStatement call() throws Exception {
+            SQLiteConnection connection = getConnection(connectionPtr);
+            return connection.prepare(sql);
+          }
+        });
+      }
 
       int pointer = pointerCounter.incrementAndGet();
       statementsMap.put(pointer, stmt);
@@ -372,35 +549,84 @@ public class ShadowSQLiteConnection {
     }
 
     public void close(final int ptr) {
-      execute("close connection", new Callable<Object>() {
-        @Override
-        public Object call() throws Exception {
-          SQLiteConnection connection = getConnection(ptr);
+      Thread owner = connectionOwners.get(ptr);
+      if (owner == null) {
+        execute("close connection", new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            SQLiteConnection connection = getConnection(ptr);
+            connection.dispose();
+            return null;
+          }
+        });
+        return;
+      }
+
+      try {
+        SQLiteConnection connection = getConnection(ptr);
+        if (owner == Thread.currentThread()) {
           connection.dispose();
-          return null;
+          disposeOrphanedConnections();
+        } else if (owner.isAlive()) {
+          // e.g. the finalizer closing a connection a test leaked; sqlite4java only disposes a connection on the
+          // thread that opened it, so leave that to the owner
+          orphanedConnections.put(connection, owner);
         }
-      });
+      } finally {
+        connectionOwners.remove(ptr);
+      }
     }
 
     public void finalizeStmt(final int connectionPtr, final int statementPtr) {
       if (statementPtr == IGNORED_REINDEX_STMT) {
         return;
       }
-      execute("finalize statement", new Callable<Object>() {
-        @Override
-        public Object call() throws Exception {
-          SQLiteStatement stmt = getStatement(connectionPtr, statementPtr);
-          statementsMap.remove(statementPtr);
-          stmt.dispose();
-          return null;
+
+      Thread owner = connectionOwners.get(connectionPtr);
+      if (owner == null) {
+        execute("finalize statement", new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            SQLiteStatement stmt = getStatement(connectionPtr, statementPtr);
+            statementsMap.remove(statementPtr);
+            stmt.dispose();
+            return null;
+          }
+        });
+      } else if (owner == Thread.currentThread()) {
+        SQLiteStatement stmt = getStatement(connectionPtr, statementPtr);
+        statementsMap.remove(statementPtr);
+        stmt.dispose();
+      } else {
+        // off the owner's thread the statement is only forgotten; disposing its connection disposes it too
+        statementsMap.remove(statementPtr);
+      }
+    }
+
+    /**
+     * Disposes connections that were opened in direct mode on the current thread but closed from another one, and
+     * forgets those whose owner is gone, since sqlite4java can't dispose them anywhere else.
+     */
+    private void disposeOrphanedConnections() {
+      if (orphanedConnections.isEmpty()) {
+        return;
+      }
+      Thread currentThread = Thread.currentThread();
+      for (Map.Entry<SQLiteConnection, Thread> entry : orphanedConnections.entrySet()) {
+        Thread owner = entry.getValue();
+        if (owner == currentThread) {
+          entry.getKey().dispose();
+          orphanedConnections.remove(entry.getKey());
+        } else if (!owner.isAlive()) {
+          orphanedConnections.remove(entry.getKey());
         }
-      });
+      }
     }
 
     public void cancel(int connectionPtr) {
       getConnection(connectionPtr); // check connection
 
-      execute("cancel", new Callable<Object>() {
+      Callable<Object> cancelStatement = new Callable<Object>() {
         @Override
         public Object call() throws Exception {
           SQLiteStatement statement = statementsMap.get(pointerCounter.get());
@@ -409,7 +635,26 @@ public class ShadowSQLiteConnection {
           }
           return null;
         }
-      });
+      };
+
+      if (connectionOwners.containsKey(connectionPtr)) {
+        // cancellation comes from other threads by design, and sqlite4java allows it from any thread
+        call("cancel", cancelStatement);
+      } else {
+        execute("cancel", cancelStatement);
+      }
+    }
+
+    private <T> T call(final String comment, final Callable<T> work) {
+      try {
+        return work.call();
+      } catch (SQLiteException e) {
+        throw rethrow("Cannot " + comment, e);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
     }
 
     public <T> T execute(final String comment, final Callable<T> work) {
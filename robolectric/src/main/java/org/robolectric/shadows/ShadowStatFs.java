@@ -56,7 +56,7 @@ public class ShadowStatFs {
     stats.put(path, new Stats(blockCount, freeBlocks, availableBlocks));
   }
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   public static void reset() {
     stats.clear();
   }
@@ -36,7 +36,7 @@ public class ShadowTypeface {
     return fontDesc.familyName;
   }
 
-  @Resetter
+  @Resetter(onlyIfTouched = true)
   synchronized public static void reset() {
     // Don't need to reset cache, because native Typeface itself has a cache of font instance,
     // so this class should be consistent with it. 
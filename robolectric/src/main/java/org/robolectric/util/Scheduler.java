@@ -1,12 +1,17 @@
 package org.robolectric.util;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeSet;
 
 public class Scheduler {
-  private List<PostedRunnable> postedRunnables = new ArrayList<PostedRunnable>();
+  // ordered by scheduled time, then by the order they were posted in
+  private final TreeSet<PostedRunnable> postedRunnables = new TreeSet<PostedRunnable>();
+  private final Map<Runnable, List<PostedRunnable>> postedRunnablesByRunnable = new IdentityHashMap<Runnable, List<PostedRunnable>>();
+  private long nextSequence = 0;
+  private long nextFrontOfQueueSequence = -1;
   private long currentTime = 0;
   private boolean paused = false;
   private Thread associatedThread = Thread.currentThread();
@@ -32,7 +37,7 @@ public class Scheduler {
 
   public synchronized void postDelayed(Runnable runnable, long delayMillis) {
     if ((!isConstantlyIdling && (paused || delayMillis > 0)) || Thread.currentThread() != associatedThread) {
-      queueRunnableAndSort(runnable, currentTime + delayMillis);
+      queueRunnable(runnable, currentTime + delayMillis);
     } else {
       runOrQueueRunnable(runnable, currentTime + delayMillis);
     }
@@ -40,7 +45,7 @@ public class Scheduler {
 
   private void runOrQueueRunnable(Runnable runnable, long scheduledTime) {
     if (isExecutingRunnable) {
-      queueRunnableAndSort(runnable, scheduledTime);
+      queueRunnable(runnable, scheduledTime);
       return;
     }
     isExecutingRunnable = true;
@@ -51,9 +56,28 @@ public class Scheduler {
     }
   }
 
-  private void queueRunnableAndSort(Runnable runnable, long scheduledTime) {
-    postedRunnables.add(new PostedRunnable(runnable, scheduledTime));
-    Collections.sort(postedRunnables);
+  private void queueRunnable(Runnable runnable, long scheduledTime) {
+    add(new PostedRunnable(runnable, scheduledTime, nextSequence++));
+  }
+
+  private void add(PostedRunnable postedRunnable) {
+    postedRunnables.add(postedRunnable);
+    List<PostedRunnable> forRunnable = postedRunnablesByRunnable.get(postedRunnable.runnable);
+    if (forRunnable == null) {
+      forRunnable = new ArrayList<PostedRunnable>(1);
+      postedRunnablesByRunnable.put(postedRunnable.runnable, forRunnable);
+    }
+    forRunnable.add(postedRunnable);
+  }
+
+  private PostedRunnable pollFirst() {
+    PostedRunnable postedRunnable = postedRunnables.pollFirst();
+    List<PostedRunnable> forRunnable = postedRunnablesByRunnable.get(postedRunnable.runnable);
+    forRunnable.remove(postedRunnable);
+    if (forRunnable.isEmpty()) {
+      postedRunnablesByRunnable.remove(postedRunnable.runnable);
+    }
+    return postedRunnable;
   }
 
   public synchronized void post(Runnable runnable) {
@@ -62,18 +86,17 @@ public class Scheduler {
 
   public synchronized void postAtFrontOfQueue(Runnable runnable) {
     if (paused || Thread.currentThread() != associatedThread) {
-      postedRunnables.add(0, new PostedRunnable(runnable, currentTime));
+      add(new PostedRunnable(runnable, currentTime, nextFrontOfQueueSequence--));
     } else {
       runOrQueueRunnable(runnable, currentTime);
     }
   }
 
   public synchronized void remove(Runnable runnable) {
-    ListIterator<PostedRunnable> iterator = postedRunnables.listIterator();
-    while (iterator.hasNext()) {
-      PostedRunnable next = iterator.next();
-      if (next.runnable == runnable) {
-        iterator.remove();
+    List<PostedRunnable> forRunnable = postedRunnablesByRunnable.remove(runnable);
+    if (forRunnable != null) {
+      for (PostedRunnable postedRunnable : forRunnable) {
+        postedRunnables.remove(postedRunnable);
       }
     }
   }
@@ -83,7 +106,7 @@ public class Scheduler {
       return false;
     }
 
-    return advanceTo(postedRunnables.get(postedRunnables.size() - 1).scheduledTime);
+    return advanceTo(postedRunnables.last().scheduledTime);
   }
 
   public synchronized boolean advanceToNextPostedRunnable() {
@@ -91,7 +114,7 @@ public class Scheduler {
       return false;
     }
 
-    return advanceTo(postedRunnables.get(0).scheduledTime);
+    return advanceTo(postedRunnables.first().scheduledTime);
   }
 
   public synchronized boolean advanceBy(long intervalMs) {
@@ -120,7 +143,7 @@ public class Scheduler {
       return false;
     }
 
-    PostedRunnable postedRunnable = postedRunnables.remove(0);
+    PostedRunnable postedRunnable = pollFirst();
     currentTime = postedRunnable.scheduledTime;
     postedRunnable.run();
     return true;
@@ -132,7 +155,7 @@ public class Scheduler {
     }
 
     while (howMany > 0) {
-      PostedRunnable postedRunnable = postedRunnables.remove(0);
+      PostedRunnable postedRunnable = pollFirst();
       currentTime = postedRunnable.scheduledTime;
       postedRunnable.run();
       howMany--;
@@ -150,6 +173,7 @@ public class Scheduler {
 
   public synchronized void reset() {
     postedRunnables.clear();
+    postedRunnablesByRunnable.clear();
     paused = false;
     isConstantlyIdling = false;
   }
@@ -165,15 +189,23 @@ public class Scheduler {
   class PostedRunnable implements Comparable<PostedRunnable> {
     Runnable runnable;
     long scheduledTime;
+    long sequence;
 
-    PostedRunnable(Runnable runnable, long scheduledTime) {
+    PostedRunnable(Runnable runnable, long scheduledTime, long sequence) {
       this.runnable = runnable;
       this.scheduledTime = scheduledTime;
+      this.sequence = sequence;
     }
 
     @Override
     public int compareTo(PostedRunnable postedRunnable) {
-      return (int) (scheduledTime - postedRunnable.scheduledTime);
+      if (scheduledTime != postedRunnable.scheduledTime) {
+        return scheduledTime < postedRunnable.scheduledTime ? -1 : 1;
+      }
+      if (sequence != postedRunnable.sequence) {
+        return sequence < postedRunnable.sequence ? -1 : 1;
+      }
+      return 0;
     }
 
     public void run() {
@@ -187,6 +219,6 @@ public class Scheduler {
   }
 
   private boolean nextTaskIsScheduledBefore(long endingTime) {
-    return enqueuedTaskCount() > 0 && postedRunnables.get(0).scheduledTime <= endingTime;
+    return enqueuedTaskCount() > 0 && postedRunnables.first().scheduledTime <= endingTime;
   }
 }
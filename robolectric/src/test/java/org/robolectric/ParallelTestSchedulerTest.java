@@ -0,0 +1,143 @@
+package org.robolectric;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.bytecode.Setup;
+import org.robolectric.res.FsFile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.robolectric.util.TestUtil.resourceFile;
+
+public class ParallelTestSchedulerTest {
+  public static class StateHolder {
+    public static final Map<Thread, ClassLoader> classLoadersByThread = new HashMap<Thread, ClassLoader>();
+    public static boolean sameClassLoaderEachTime = true;
+    public static final List<Thread> classFixtureThreads = new ArrayList<Thread>();
+    public static final List<Thread> testThreads = new ArrayList<Thread>();
+
+    public static synchronized void record(ClassLoader classLoader) {
+      ClassLoader previous = classLoadersByThread.put(Thread.currentThread(), classLoader);
+      if (previous != null && previous != classLoader) sameClassLoaderEachTime = false;
+    }
+  }
+
+  @Test
+  public void shouldRunEachTestOnAWorkerWithAnEnvironmentOfItsOwn() throws Exception {
+    Runner runner = new Runner(SeveralTests.class);
+    runner.setScheduler(new ParallelTestScheduler(2));
+
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    runner.run(notifier);
+
+    assertThat(result.getFailures()).isEmpty();
+    assertThat(result.getRunCount()).isEqualTo(6);
+    assertThat(runner.allStateIsCleared()).isTrue();
+    assertThat(StateHolder.sameClassLoaderEachTime).isTrue();
+    for (Thread thread : StateHolder.classLoadersByThread.keySet()) {
+      assertThat(thread.getName()).startsWith("robolectric-worker-");
+    }
+    assertThat(new HashSet<ClassLoader>(StateHolder.classLoadersByThread.values()))
+        .hasSize(StateHolder.classLoadersByThread.size());
+  }
+
+  @Test
+  public void shouldRunClassesWithClassFixturesSerially() throws Exception {
+    System.setProperty(ParallelTestScheduler.THREADS_PROPERTY, "2");
+    Runner runner;
+    try {
+      runner = new Runner(WithClassFixtures.class);
+    } finally {
+      System.clearProperty(ParallelTestScheduler.THREADS_PROPERTY);
+    }
+
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    runner.run(notifier);
+
+    assertThat(result.getFailures()).isEmpty();
+    assertThat(result.getRunCount()).isEqualTo(3);
+    assertThat(StateHolder.classFixtureThreads).containsExactly(Thread.currentThread(), Thread.currentThread());
+    assertThat(StateHolder.testThreads).containsOnly(Thread.currentThread());
+  }
+
+  @Test
+  public void shouldRefuseToRunInParallelWhileMockitosClassCacheIsOn() throws Exception {
+    System.setProperty(ParallelTestScheduler.THREADS_PROPERTY, "2");
+    try {
+      new Runner(SeveralTests.class);
+      fail("expected InitializationError");
+    } catch (InitializationError e) {
+      assertThat(e.getCauses().get(0).getMessage()).contains("enableClassCache()");
+    } finally {
+      System.clearProperty(ParallelTestScheduler.THREADS_PROPERTY);
+    }
+  }
+
+  @Test
+  public void isWorkerThread_shouldBeFalseOutsideTheWorkers() throws Exception {
+    assertThat(ParallelTestScheduler.isWorkerThread()).isFalse();
+  }
+
+  public static class SeveralTests {
+    @Test public void test1() { record(); }
+    @Test public void test2() { record(); }
+    @Test public void test3() { record(); }
+    @Test public void test4() { record(); }
+    @Test public void test5() { record(); }
+    @Test public void test6() { record(); }
+
+    private void record() {
+      assertThat(Robolectric.application).isNotNull();
+      StateHolder.record(Robolectric.application.getClass().getClassLoader());
+    }
+  }
+
+  public static class WithClassFixtures {
+    @BeforeClass public static void setUpClass() { record(StateHolder.classFixtureThreads); }
+    @AfterClass public static void tearDownClass() { record(StateHolder.classFixtureThreads); }
+
+    @Test public void test1() { record(StateHolder.testThreads); }
+    @Test public void test2() { record(StateHolder.testThreads); }
+    @Test public void test3() { record(StateHolder.testThreads); }
+
+    private static void record(List<Thread> threads) {
+      synchronized (threads) {
+        threads.add(Thread.currentThread());
+      }
+    }
+  }
+
+  public static class Runner extends RobolectricTestRunner {
+    public Runner(Class<?> testClass) throws InitializationError {
+      super(testClass);
+    }
+
+    @Override public Setup createSetup() {
+      return new Setup() {
+        @Override public boolean shouldAcquire(String name) {
+          if (name.startsWith(StateHolder.class.getName())) return false;
+          return super.shouldAcquire(name);
+        }
+      };
+    }
+
+    @Override
+    protected AndroidManifest createAppManifest(FsFile manifestFile, FsFile resDir, FsFile assetsDir) {
+      return new AndroidManifest(resourceFile("TestAndroidManifest.xml"), resourceFile("res"), resourceFile("assets"));
+    }
+  }
+}
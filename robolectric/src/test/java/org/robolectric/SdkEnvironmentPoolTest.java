@@ -0,0 +1,148 @@
+package org.robolectric;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SdkEnvironmentPoolTest {
+  private int created;
+
+  @Test
+  public void shouldReuseEnvironmentsForTheSameSdk() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(2);
+
+    SdkEnvironment environment = pool.get(new SdkConfig(18), factoryFor(18));
+    assertThat(pool.get(new SdkConfig(18), factoryFor(18))).isSameAs(environment);
+
+    assertThat(created).isEqualTo(1);
+    assertThat(pool.getHits()).isEqualTo(1);
+    assertThat(pool.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldEvictTheLeastRecentlyUsedEnvironmentWhenFull() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(2);
+
+    SdkEnvironment sdk16 = pool.get(new SdkConfig(16), factoryFor(16));
+    SdkEnvironment sdk17 = pool.get(new SdkConfig(17), factoryFor(17));
+    pool.get(new SdkConfig(16), factoryFor(16));
+    pool.get(new SdkConfig(18), factoryFor(18));
+
+    assertThat(pool.size()).isEqualTo(2);
+    assertThat(pool.getEvictions()).isEqualTo(1);
+    assertThat(pool.get(new SdkConfig(16), factoryFor(16))).isSameAs(sdk16);
+    assertThat(pool.get(new SdkConfig(17), factoryFor(17))).isNotSameAs(sdk17);
+    assertThat(created).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldLetItsEvictionPolicyChooseWhatToEvict() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(1, new SdkEnvironmentPool.EvictionPolicy() {
+      @Override public void used(SdkConfig sdkConfig) {
+      }
+
+      @Override public SdkConfig chooseEviction(Collection<SdkConfig> candidates) {
+        return candidates.contains(new SdkConfig(18)) ? new SdkConfig(18) : null;
+      }
+
+      @Override public void evicted(SdkConfig sdkConfig) {
+      }
+    });
+
+    SdkEnvironment sdk17 = pool.get(new SdkConfig(17), factoryFor(17));
+    pool.get(new SdkConfig(18), factoryFor(18));
+    assertThat(pool.size()).isEqualTo(2);
+    assertThat(pool.getEvictions()).isEqualTo(0);
+
+    pool.get(new SdkConfig(16), factoryFor(16));
+    assertThat(pool.size()).isEqualTo(2);
+    assertThat(pool.getEvictions()).isEqualTo(1);
+    assertThat(pool.get(new SdkConfig(17), factoryFor(17))).isSameAs(sdk17);
+  }
+
+  @Test
+  public void shouldCreateEnvironmentsWithoutHoldingUpOtherSdks() throws Exception {
+    final SdkEnvironmentPool pool = new SdkEnvironmentPool(2);
+    final CountDownLatch creating = new CountDownLatch(1);
+    final CountDownLatch finishCreating = new CountDownLatch(1);
+    final AtomicInteger slowCreations = new AtomicInteger();
+    final SdkEnvironment.Factory slowFactory = new SdkEnvironment.Factory() {
+      @Override public SdkEnvironment create() {
+        slowCreations.incrementAndGet();
+        creating.countDown();
+        try {
+          finishCreating.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return new SdkEnvironment(new SdkConfig(18), null);
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Callable<SdkEnvironment> getSlowly = new Callable<SdkEnvironment>() {
+        @Override public SdkEnvironment call() throws Exception {
+          return pool.get(new SdkConfig(18), slowFactory);
+        }
+      };
+      Future<SdkEnvironment> first = executor.submit(getSlowly);
+      assertThat(creating.await(5, TimeUnit.SECONDS)).isTrue();
+      Future<SdkEnvironment> second = executor.submit(getSlowly);
+
+      assertThat(pool.get(new SdkConfig(17), factoryFor(17))).isNotNull();
+      assertThat(second.isDone()).isFalse();
+
+      finishCreating.countDown();
+      assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+      assertThat(slowCreations.get()).isEqualTo(1);
+    } finally {
+      finishCreating.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldTryAgainAfterAFailedCreation() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(2);
+
+    try {
+      pool.get(new SdkConfig(18), new SdkEnvironment.Factory() {
+        @Override public SdkEnvironment create() {
+          throw new IllegalStateException("can't create");
+        }
+      });
+      fail("expected an exception");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("can't create");
+    }
+
+    assertThat(pool.size()).isEqualTo(0);
+    assertThat(pool.get(new SdkConfig(18), factoryFor(18))).isNotNull();
+    assertThat(created).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptyPools() throws Exception {
+    new SdkEnvironmentPool(0);
+  }
+
+  private SdkEnvironment.Factory factoryFor(final int apiLevel) {
+    return new SdkEnvironment.Factory() {
+      @Override public SdkEnvironment create() {
+        created++;
+        return new SdkEnvironment(new SdkConfig(apiLevel), null);
+      }
+    };
+  }
+}
@@ -1,8 +1,38 @@
 package org.robolectric.bytecode;
 
 import org.junit.Test;
+import org.robolectric.bytecode.testing.AChild;
+import org.robolectric.bytecode.testing.AClassToForget;
+import org.robolectric.bytecode.testing.AClassToRemember;
+import org.robolectric.bytecode.testing.AClassWithFunnyConstructors;
+import org.robolectric.bytecode.testing.AClassWithInnerClasses;
+import org.robolectric.bytecode.testing.AClassWithMethodReturningArray;
+import org.robolectric.bytecode.testing.AClassWithNativeMethod;
+import org.robolectric.bytecode.testing.AClassWithNoDefaultConstructor;
+import org.robolectric.bytecode.testing.AClassWithStaticMethod;
+import org.robolectric.bytecode.testing.AFinalClass;
+import org.robolectric.bytecode.testing.AnEnum;
+import org.robolectric.bytecode.testing.AnExampleClass;
+import org.robolectric.bytecode.testing.AnInstrumentedChild;
 import org.robolectric.util.Transcript;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 public class AsmInstrumentingClassLoaderTest extends InstrumentingClassLoaderTestBase {
   protected ClassLoader createClassLoader(Setup setup) throws ClassNotFoundException {
     return new AsmInstrumentingClassLoader(setup);
@@ -32,4 +62,102 @@ public class AsmInstrumentingClassLoaderTest extends InstrumentingClassLoaderTes
 
     transcript.assertEventsSoFar("find foo.AClass");
   }
+
+  @Test public void shouldFindEachClassOnceWhenLoadedConcurrently() throws Exception {
+    final ConcurrentHashMap<String, AtomicInteger> findCounts = new ConcurrentHashMap<String, AtomicInteger>();
+    final AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup()) {
+      @Override
+      protected Class<?> findClass(String className) throws ClassNotFoundException {
+        findCounts.putIfAbsent(className, new AtomicInteger());
+        findCounts.get(className).incrementAndGet();
+        return super.findClass(className);
+      }
+    };
+    final String[] classNames = {AnExampleClass.class.getName(), AClassWithStaticMethod.class.getName()};
+
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Class<?>[]>> futures = new ArrayList<Future<Class<?>[]>>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executorService.submit(new Callable<Class<?>[]>() {
+          @Override public Class<?>[] call() throws Exception {
+            Class<?>[] classes = new Class<?>[classNames.length];
+            for (int j = 0; j < classNames.length; j++) {
+              classes[j] = classLoader.loadClass(classNames[j]);
+            }
+            return classes;
+          }
+        }));
+      }
+
+      Class<?>[] expected = futures.get(0).get();
+      for (Future<Class<?>[]> future : futures) {
+        assertThat(future.get()).isEqualTo(expected);
+      }
+    } finally {
+      executorService.shutdown();
+    }
+
+    for (String className : classNames) {
+      assertThat(findCounts.get(className).get()).isEqualTo(1);
+    }
+  }
+
+  @Test public void shouldDefineEachClassOnceWhenThreadsRaceToLoadIt() throws Exception {
+    final List<String> sharedClassNames = Arrays.asList(AnExampleClass.class.getName(), AClassWithStaticMethod.class.getName(),
+        AChild.class.getName(), AnEnum.class.getName(), AClassWithInnerClasses.class.getName());
+    final List<String> perThreadClassNames = Arrays.asList(AClassToForget.class.getName(), AClassToRemember.class.getName(),
+        AFinalClass.class.getName(), AClassWithNativeMethod.class.getName(), AnInstrumentedChild.class.getName(),
+        AClassWithMethodReturningArray.class.getName(), AClassWithFunnyConstructors.class.getName(),
+        AClassWithNoDefaultConstructor.class.getName());
+    final int threadCount = perThreadClassNames.size();
+
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    try {
+      for (int round = 0; round < 10; round++) {
+        final AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Class<?>>>> futures = new ArrayList<Future<Map<String, Class<?>>>>();
+        for (int i = 0; i < threadCount; i++) {
+          // every thread loads the shared classes, its own class, and its neighbour's, each in its own order
+          final List<String> classNames = new ArrayList<String>(sharedClassNames);
+          classNames.add(perThreadClassNames.get(i));
+          classNames.add(perThreadClassNames.get((i + 1) % threadCount));
+          Collections.shuffle(classNames, new Random(round * threadCount + i));
+
+          futures.add(executorService.submit(new Callable<Map<String, Class<?>>>() {
+            @Override public Map<String, Class<?>> call() throws Exception {
+              start.await();
+              Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+              for (String className : classNames) {
+                try {
+                  classes.put(className, classLoader.loadClass(className));
+                } catch (LinkageError e) {
+                  throw new AssertionError("got " + e + " loading " + className);
+                }
+              }
+              return classes;
+            }
+          }));
+        }
+        start.countDown();
+
+        Map<String, Class<?>> loadedClasses = new HashMap<String, Class<?>>();
+        for (Future<Map<String, Class<?>>> future : futures) {
+          for (Map.Entry<String, Class<?>> entry : future.get().entrySet()) {
+            Class<?> loadedClass = entry.getValue();
+            assertThat(loadedClass.getClassLoader()).isSameAs(classLoader);
+            if (loadedClasses.containsKey(entry.getKey())) {
+              assertThat(loadedClass).isSameAs(loadedClasses.get(entry.getKey()));
+            } else {
+              loadedClasses.put(entry.getKey(), loadedClass);
+            }
+          }
+        }
+        assertThat(loadedClasses).hasSize(sharedClassNames.size() + perThreadClassNames.size());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
 }
@@ -0,0 +1,156 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.bytecode.testing.AClassWithInnerClasses;
+import org.robolectric.bytecode.testing.AnEnum;
+import org.robolectric.bytecode.testing.AnExampleClass;
+import org.robolectric.bytecode.testing.AnUninstrumentedParent;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentedClassCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File baseDir;
+
+  @Before
+  public void setUp() throws Exception {
+    baseDir = temporaryFolder.newFolder("instrumented-classes");
+  }
+
+  @Test
+  public void shouldReturnStoredBytesForTheSameOriginalBytes() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(baseDir, new Setup());
+    cache.put("some.Class", bytes(1, 2, 3), bytes(4, 5, 6));
+
+    assertThat(cache.get("some.Class", bytes(1, 2, 3))).isEqualTo(bytes(4, 5, 6));
+    assertThat(new InstrumentedClassCache(baseDir, new Setup()).get("some.Class", bytes(1, 2, 3))).isEqualTo(bytes(4, 5, 6));
+  }
+
+  @Test
+  public void shouldMissWhenOriginalBytesHaveChanged() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(baseDir, new Setup());
+    cache.put("some.Class", bytes(1, 2, 3), bytes(4, 5, 6));
+
+    assertThat(cache.get("some.Class", bytes(1, 2, 4))).isNull();
+    assertThat(cache.get("other.Class", bytes(1, 2, 3))).isNull();
+  }
+
+  @Test
+  public void shouldKeepEntriesForDifferentConfigurationsApart() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(baseDir, new Setup());
+    InstrumentedClassCache otherSetupCache = new InstrumentedClassCache(baseDir, new Setup() {
+      @Override public boolean shouldUseInvokeDynamic() {
+        return true;
+      }
+    });
+    InstrumentedClassCache otherJarsCache = new InstrumentedClassCache(baseDir, new Setup(), new URL("file:/some/android-all.jar"));
+
+    assertThat(otherSetupCache.getDirectory()).isNotEqualTo(cache.getDirectory());
+    assertThat(otherJarsCache.getDirectory()).isNotEqualTo(cache.getDirectory());
+
+    cache.put("some.Class", bytes(1, 2, 3), bytes(4, 5, 6));
+    assertThat(otherSetupCache.get("some.Class", bytes(1, 2, 3))).isNull();
+    assertThat(otherJarsCache.get("some.Class", bytes(1, 2, 3))).isNull();
+  }
+
+  @Test
+  public void shouldDefineInstrumentedClassesFromTheCache() throws Exception {
+    Setup setup = new Setup();
+    InstrumentedClassCache cache = new InstrumentedClassCache(baseDir, setup);
+
+    new AsmInstrumentingClassLoader(setup, cache).loadClass(AnExampleClass.class.getName());
+    assertThat(cache.getDirectory().list()).hasSize(1);
+
+    Class<?> exampleClass = new AsmInstrumentingClassLoader(setup, cache).loadClass(AnExampleClass.class.getName());
+    assertThat(exampleClass.getDeclaredMethod(AsmInstrumentingClassLoader.GET_ROBO_DATA_METHOD_NAME)).isNotNull();
+  }
+
+  @Test
+  public void shouldNotLookUpClassesThatAreNotInstrumented() throws Exception {
+    Setup setup = new Setup();
+    final List<String> lookedUp = new ArrayList<String>();
+    InstrumentedClassCache cache = new InstrumentedClassCache(baseDir, setup) {
+      @Override public byte[] get(String className, byte[] origClassBytes) {
+        lookedUp.add(className);
+        return super.get(className, origClassBytes);
+      }
+    };
+
+    new AsmInstrumentingClassLoader(setup, cache).loadClass(AnUninstrumentedParent.class.getName());
+    assertThat(lookedUp).isEmpty();
+    assertThat(cache.getDirectory().exists()).isFalse();
+  }
+
+  @Test
+  public void shouldCacheAnonymousAndSyntheticClassesThatAreInstrumented() throws Exception {
+    Setup setup = new Setup() {
+      @Override public boolean shouldInstrument(ClassInfo classInfo) {
+        return super.shouldInstrument(classInfo) || classInfo.getName().startsWith(AClassWithInnerClasses.class.getName());
+      }
+    };
+    final List<String> hits = new ArrayList<String>();
+    InstrumentedClassCache cache = new InstrumentedClassCache(baseDir, setup) {
+      @Override public byte[] get(String className, byte[] origClassBytes) {
+        byte[] bytes = super.get(className, origClassBytes);
+        if (bytes != null) hits.add(className);
+        return bytes;
+      }
+    };
+
+    loadInnerClasses(new AsmInstrumentingClassLoader(setup, cache));
+    assertThat(hits).isEmpty();
+
+    loadInnerClasses(new AsmInstrumentingClassLoader(setup, cache));
+    String outerClassName = AClassWithInnerClasses.class.getName();
+    assertThat(hits).containsOnly(outerClassName, outerClassName + "$1", outerClassName + "$2", AnEnum.class.getName());
+  }
+
+  @Test
+  public void shouldMissWhenAJarIsRewrittenWithTheSameLengthAndModificationTime() throws Exception {
+    File jar = temporaryFolder.newFile("android-all.jar");
+    write(jar, bytes(1, 2, 3));
+    long lastModified = jar.lastModified();
+    InstrumentedClassCache cache = new InstrumentedClassCache(baseDir, new Setup(), jar.toURI().toURL());
+
+    write(jar, bytes(1, 2, 4));
+    assertThat(jar.setLastModified(lastModified)).isTrue();
+
+    assertThat(new InstrumentedClassCache(baseDir, new Setup(), jar.toURI().toURL()).getDirectory())
+        .isNotEqualTo(cache.getDirectory());
+  }
+
+  private static void loadInnerClasses(ClassLoader classLoader) throws Exception {
+    String outerClassName = AClassWithInnerClasses.class.getName();
+    for (String className : Arrays.asList(outerClassName, outerClassName + "$1", outerClassName + "$2", AnEnum.class.getName())) {
+      classLoader.loadClass(className);
+    }
+  }
+
+  private static void write(File file, byte[] bytes) throws Exception {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+}
@@ -4,11 +4,14 @@ import android.os.Build;
 import org.junit.Test;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.bytecode.testing.*;
+import org.robolectric.util.ShadowedObject;
+import org.robolectric.util.StaticStateTracker;
 import org.robolectric.util.Transcript;
 import org.robolectric.util.Util;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.*;
@@ -39,6 +42,53 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
     transcript.assertNoEventsSoFar();
   }
 
+  @Test
+  public void shouldMakeInstrumentedClassesImplementShadowedObject() throws Exception {
+    Class<?> clazz = loadClass(AClassWithNoDefaultConstructor.class);
+    assertTrue(ShadowedObject.class.isAssignableFrom(clazz));
+    Object instance = clazz.getConstructor().newInstance();
+    assertSame(((ShadowedObject) instance).$$robo$getData(), shadowOf_(instance));
+  }
+
+  @Test
+  public void whenInitializingDefersTheShadow_shouldCreateItOnFirstUse() throws Exception {
+    classHandler.deferShadows = true;
+    Object instance = loadClass(AClassWithNoDefaultConstructor.class).getConstructor().newInstance();
+    transcript.assertNoEventsSoFar();
+
+    assertThat(shadowOf_(instance)).isEqualTo("a lazy shadow!");
+    assertThat(shadowOf_(instance)).isEqualTo("a lazy shadow!");
+    transcript.assertEventsSoFar("createShadowFor: AClassWithNoDefaultConstructor");
+  }
+
+  @Test
+  public void whenInitializingDefersTheShadow_shouldCreateOnlyOneShadowForThreadsRacingToUseIt() throws Exception {
+    classHandler.deferShadows = true;
+    final Object instance = loadClass(AClassWithNoDefaultConstructor.class).getConstructor().newInstance();
+
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Object>> shadows = new ArrayList<Future<Object>>();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (int i = 0; i < 8; i++) {
+        shadows.add(executor.submit(new Callable<Object>() {
+          @Override public Object call() throws Exception {
+            start.await();
+            return shadowOf_(instance);
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Object> shadow : shadows) {
+        assertThat(shadow.get()).isSameAs(shadows.get(0).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(shadowOf_(instance)).isSameAs(shadows.get(0).get());
+    transcript.assertEventsSoFar("createShadowFor: AClassWithNoDefaultConstructor");
+  }
+
   @Test
   public void shouldDelegateToHandlerForConstructors() throws Exception {
     Class<?> clazz = loadClass(AClassWithNoDefaultConstructor.class);
@@ -73,6 +123,23 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
     }
   }
 
+  @Test
+  public void shouldTrackWhetherClassesWithTouchTrackedResettersHaveBeenTouched() throws Exception {
+    ClassLoader classLoader = createClassLoader(new MySetup(true, false));
+    Class<?> clazz = classLoader.loadClass(AClassWithTouchTrackedResetter.class.getName());
+    assertFalse(StaticStateTracker.isTouched(clazz));
+
+    clazz.getMethod("reset").invoke(null);
+    assertFalse(StaticStateTracker.isTouched(clazz));
+
+    clazz.getMethod("setValue", String.class).invoke(null, "value");
+    assertTrue(StaticStateTracker.isTouched(clazz));
+
+    StaticStateTracker.clearTouched(clazz);
+    assertFalse(StaticStateTracker.isTouched(clazz));
+    assertTrue(StaticStateTracker.isTouched(classLoader.loadClass(AnUninstrumentedClass.class.getName())));
+  }
+
   @Test
   public void shouldPerformClassLoadAndInstrumentLoadForInstrumentedClasses() throws Exception {
     ClassLoader classLoader = createClassLoader(new MySetup(true, true));
@@ -477,6 +544,7 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
     private Transcript transcript;
     private Object valueToReturn = GENERATE_YOUR_OWN_VALUE;
     private Object valueToReturnFromIntercept = null;
+    private boolean deferShadows = false;
 
     public MyClassHandler(Transcript transcript) {
       this.transcript = transcript;
@@ -487,7 +555,13 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
     }
 
     @Override public Object initializing(Object instance) {
-      return "a shadow!";
+      return deferShadows ? null : "a shadow!";
+    }
+
+    @Override public Object createShadowFor(Object instance) {
+      transcript.add("createShadowFor: " + instance.getClass().getSimpleName());
+      Thread.yield(); // give any other thread that wants the shadow a chance to make one too
+      return new String("a lazy shadow!");
     }
 
     public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable {
@@ -0,0 +1,12 @@
+package org.robolectric.bytecode;
+
+public class InvokeDynamicInstrumentingClassLoaderTest extends InstrumentingClassLoaderTestBase {
+  protected ClassLoader createClassLoader(Setup setup) throws ClassNotFoundException {
+    System.setProperty("robolectric.invokedynamic", "true");
+    try {
+      return new AsmInstrumentingClassLoader(setup);
+    } finally {
+      System.clearProperty("robolectric.invokedynamic");
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package org.robolectric.bytecode;
+
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MethodHandleInvokerTest {
+  @Test
+  public void shouldInvokeTheHandleWithItsArgument() throws Throwable {
+    MethodHandle handle = MethodHandles.lookup().findStatic(String.class, "valueOf", MethodType.methodType(String.class, Object.class))
+        .asType(MethodType.methodType(Object.class, Object.class));
+
+    assertThat(MethodHandleInvoker.INSTANCE.invokeExact(handle, 42)).isEqualTo("42");
+    assertThat(MethodHandleInvoker.INSTANCE.invokeExact(handle, null)).isEqualTo("null");
+  }
+
+  @Test
+  public void shouldPropagateWhatTheHandleThrows() throws Throwable {
+    MethodHandle handle = MethodHandles.lookup().findStatic(MethodHandleInvokerTest.class, "throwUnsupported", MethodType.methodType(Object.class, Object.class));
+
+    try {
+      MethodHandleInvoker.INSTANCE.invokeExact(handle, "boom");
+      fail("expected an exception");
+    } catch (UnsupportedOperationException e) {
+      assertThat(e.getMessage()).isEqualTo("boom");
+    }
+  }
+
+  @Test(expected = WrongMethodTypeException.class)
+  public void shouldOnlyInvokeHandlesOfTheExactType() throws Throwable {
+    MethodHandle handle = MethodHandles.lookup().findStatic(String.class, "valueOf", MethodType.methodType(String.class, Object.class));
+
+    MethodHandleInvoker.INSTANCE.invokeExact(handle, 42);
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private static Object throwUnsupported(Object message) {
+    throw new UnsupportedOperationException((String) message);
+  }
+}
@@ -0,0 +1,51 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShadowIndexTest {
+  private ShadowIndex shadowIndex;
+
+  @Before
+  public void setUp() throws Exception {
+    shadowIndex = ShadowIndex.read(new StringReader(
+        "com.example.ShadowBase com.example.Base java.lang.Object true false false false\n" +
+        "  baseMethod(int,java.lang.String[])\n" +
+        "com.example.ShadowDerived com.example.Derived com.example.ShadowBase false true false false\n" +
+        "  derivedMethod()\n" +
+        "com.example.ShadowOrphan com.example.Orphan com.example.UnindexedBase true false false false\n" +
+        "com.example.ShadowAbstract com.example.Abstract java.lang.Object true false false true\n"));
+  }
+
+  @Test
+  public void shouldReturnConfigOnlyForTheShadowedClass() throws Exception {
+    assertThat(shadowIndex.getShadowConfig("com.example.ShadowDerived", "com.example.Derived"))
+        .isEqualTo(new ShadowConfig("com.example.ShadowDerived", false, true, false));
+    assertThat(shadowIndex.getShadowConfig("com.example.ShadowDerived", "com.example.Base")).isNull();
+    assertThat(shadowIndex.getShadowConfig("com.example.ShadowUnknown", "com.example.Unknown")).isNull();
+  }
+
+  @Test
+  public void shouldFindMethodsDeclaredOnTheShadowOrItsIndexedSuperclasses() throws Exception {
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowDerived", "derivedMethod")).isTrue();
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowDerived", "baseMethod", "int", "java.lang.String[]")).isTrue();
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowDerived", "toString")).isTrue();
+  }
+
+  @Test
+  public void shouldRuleOutMethodsMissingFromAFullyIndexedHierarchy() throws Exception {
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowDerived", "baseMethod", "int")).isFalse();
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowBase", "derivedMethod")).isFalse();
+  }
+
+  @Test
+  public void shouldNotRuleOutMethodsWhenTheHierarchyIsNotFullyKnown() throws Exception {
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowUnknown", "anything")).isTrue();
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowOrphan", "anything")).isTrue();
+    assertThat(shadowIndex.mayHaveMethod("com.example.ShadowAbstract", "anything")).isTrue();
+  }
+}
@@ -4,6 +4,9 @@ import android.widget.CursorAdapter;
 import org.junit.Test;
 import org.robolectric.shadows.ShadowCursorAdapter;
 
+import java.io.StringReader;
+import java.util.Collections;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class ShadowMapTest {
@@ -17,6 +20,25 @@ public class ShadowMapTest {
     assertThat(map.get(CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
   }
 
+  @Test public void whenThereIsAnIndex_shouldNotLookUpShadowClassesMissingFromIt() throws Exception {
+    ShadowIndex shadowIndex = ShadowIndex.read(new StringReader("com.example.ShadowFoo com.example.Foo java.lang.Object true false false false\n"));
+    ShadowMap map = new ShadowMap(Collections.<String, ShadowConfig>emptyMap(), shadowIndex);
+    assertThat(map.get(CursorAdapter.class)).isNull();
+  }
+
+  @Test public void whenThereIsNoIndex_shouldLookUpShadowClassesByNamingConvention() throws Exception {
+    ShadowIndex shadowIndex = ShadowIndex.read(new StringReader(""));
+    ShadowMap map = new ShadowMap(Collections.<String, ShadowConfig>emptyMap(), shadowIndex);
+    assertThat(map.get(CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
+  }
+
+  @Test public void whenThereIsAnIndex_shouldStillFindShadowClassesRegisteredAtRuntime() throws Exception {
+    ShadowIndex shadowIndex = ShadowIndex.read(new StringReader("com.example.ShadowFoo com.example.Foo java.lang.Object true false false false\n"));
+    ShadowMap map = new ShadowMap(Collections.singletonMap(CursorAdapter.class.getName(),
+        new ShadowConfig(ShadowCursorAdapter.class.getName(), true, false, false)), shadowIndex);
+    assertThat(map.get(CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
+  }
+
   @Test public void equalsHashCode() throws Exception {
     ShadowMap a = new ShadowMap.Builder().addShadowClass("a", "b", true, false, false).build();
     ShadowMap b = new ShadowMap.Builder().addShadowClass("a", "b", true, false, false).build();
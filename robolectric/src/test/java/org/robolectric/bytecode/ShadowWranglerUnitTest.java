@@ -3,9 +3,13 @@ package org.robolectric.bytecode;
 import org.junit.Before;
 import org.junit.Test;
 import org.robolectric.SdkConfig;
+import org.robolectric.bytecode.testing.Foo;
+import org.robolectric.bytecode.testing.ShadowFoo;
 import org.robolectric.util.Function;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -63,4 +67,55 @@ public class ShadowWranglerUnitTest {
 
     assertThat(result).isNull();
   }
+
+  @Test
+  public void methodInvoked_shouldReturnTheSamePlanForRepeatedCalls() throws Exception {
+    ShadowMap shadowMap = new ShadowMap.Builder().addShadowClass(ShadowFoo.class).build();
+    shadowWrangler = new ShadowWrangler(shadowMap, SdkConfig.getDefaultSdk());
+
+    String signature = "org/robolectric/bytecode/testing/Foo/getName()Ljava/lang/String;";
+    ClassHandler.Plan plan = shadowWrangler.methodInvoked(signature, false, Foo.class);
+
+    assertThat(plan).isNotNull();
+    assertThat(shadowWrangler.methodInvoked(signature, false, Foo.class)).isSameAs(plan);
+  }
+
+  @Test
+  public void methodInvoked_whenThereIsNoShadow_shouldKeepReturningCallRealCodePlan() throws Exception {
+    String signature = "org/robolectric/bytecode/testing/Foo/getName()Ljava/lang/String;";
+
+    assertThat(shadowWrangler.methodInvoked(signature, false, Foo.class)).isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+    assertThat(shadowWrangler.methodInvoked(signature, false, Foo.class)).isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+  }
+
+  @Test
+  public void initializing_whenShadowsAreLazy_shouldLeaveCreatingTheShadowForLater() throws Exception {
+    shadowWrangler = new ShadowWrangler(ShadowMap.EMPTY, SdkConfig.getDefaultSdk(), true);
+    Object instance = new Object();
+
+    assertThat(shadowWrangler.initializing(instance)).isNull();
+    assertThat(shadowWrangler.createShadowFor(instance)).isNotNull();
+  }
+
+  @Test
+  public void intercept_shouldAskRegisteredInterceptorsForAHandlerOncePerSignature() throws Throwable {
+    final List<String> handled = new ArrayList<String>();
+    Interceptor interceptor = new Interceptor(new Setup.MethodRef("some.Class", "*")) {
+      @Override public Function<Object, Object> handle(final MethodSignature methodSignature) {
+        handled.add(methodSignature.methodName);
+        return new Function<Object, Object>() {
+          @Override public Object call(Class<?> theClass, Object value, Object[] params) {
+            return methodSignature.methodName + " on " + value;
+          }
+        };
+      }
+    };
+    shadowWrangler = new ShadowWrangler(ShadowMap.EMPTY, SdkConfig.getDefaultSdk(), new Interceptors(interceptor), false);
+
+    assertThat(shadowWrangler.intercept("some/Class/foo()V", "a", RobolectricInternals.NO_PARAMS, getClass())).isEqualTo("foo on a");
+    assertThat(shadowWrangler.intercept("some/Class/foo()V", "b", RobolectricInternals.NO_PARAMS, getClass())).isEqualTo("foo on b");
+    assertThat(shadowWrangler.intercept("some/Class/bar()V", "c", RobolectricInternals.NO_PARAMS, getClass())).isEqualTo("bar on c");
+    assertThat(shadowWrangler.intercept("other/Class/foo()V", "d", RobolectricInternals.NO_PARAMS, getClass())).isNull();
+    assertThat(handled).containsExactly("foo", "bar");
+  }
 }
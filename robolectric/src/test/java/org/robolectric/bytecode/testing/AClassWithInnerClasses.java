@@ -0,0 +1,24 @@
+package org.robolectric.bytecode.testing;
+
+import org.robolectric.internal.Instrument;
+
+@SuppressWarnings("UnusedDeclaration")
+@Instrument
+public class AClassWithInnerClasses {
+  public Runnable anonymousRunnable() {
+    return new Runnable() {
+      @Override public void run() {
+      }
+    };
+  }
+
+  // javac puts the switch map in a synthetic class
+  public String describe(AnEnum anEnum) {
+    switch (anEnum) {
+      case ONE:
+        return "one";
+      default:
+        return "more";
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package org.robolectric.bytecode.testing;
+
+import org.robolectric.annotation.Resetter;
+
+public class AClassWithTouchTrackedResetter {
+  private static String value;
+
+  public static void setValue(String value) {
+    AClassWithTouchTrackedResetter.value = value;
+  }
+
+  @Resetter(onlyIfTouched = true)
+  public static void reset() {
+    value = null;
+  }
+}
@@ -0,0 +1,62 @@
+package org.robolectric.res;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class DocumentLoaderTest {
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldHandFilesToLoadersInOrderWhenParsingInParallel() throws Exception {
+    RecordingLoader sequentialLoader = new RecordingLoader();
+    new DocumentLoader(testResources(), null).load("layout", sequentialLoader);
+
+    RecordingLoader parallelLoader = new RecordingLoader();
+    new DocumentLoader(testResources(), executor).load("layout", parallelLoader);
+
+    assertThat(sequentialLoader.events).hasSize(new DocumentLoader(testResources(), null).listFiles("layout").size());
+    assertThat(parallelLoader.events).isEqualTo(sequentialLoader.events);
+  }
+
+  @Test
+  public void shouldLoadTheSameValuesWhenParsingInParallel() throws Exception {
+    ResBunch sequentialData = new ResBunch();
+    new DocumentLoader(testResources(), null).load("values", new ValueResourceLoader(sequentialData, "/resources/string", "string", ResType.CHAR_SEQUENCE));
+
+    ResBunch parallelData = new ResBunch();
+    new DocumentLoader(testResources(), executor).load("values", new ValueResourceLoader(parallelData, "/resources/string", "string", ResType.CHAR_SEQUENCE));
+
+    ResName hello = new ResName("org.robolectric", "string", "hello");
+    assertThat(parallelData.size()).isEqualTo(sequentialData.size());
+    assertThat(parallelData.get(hello, "fr").asString()).isEqualTo(sequentialData.get(hello, "fr").asString());
+    assertThat(parallelData.get(hello, "").asString()).isEqualTo("Hello");
+  }
+
+  private static class RecordingLoader extends XmlLoader {
+    private final List<String> events = new ArrayList<String>();
+
+    @Override
+    protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
+      events.add(xmlFile.getPath() + ": " + xmlNode.getElementName());
+    }
+  }
+}
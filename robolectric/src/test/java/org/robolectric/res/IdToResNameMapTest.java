@@ -0,0 +1,42 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdToResNameMapTest {
+  @Test
+  public void shouldMapIdsToNamesAsItGrows() throws Exception {
+    IdToResNameMap map = new IdToResNameMap();
+    for (int i = 0; i < 1000; i++) {
+      map.put(0x7f010000 + i, new ResName("pkg", "id", "id" + i));
+    }
+    map.put(0x7f010005, new ResName("pkg", "id", "replaced"));
+
+    assertThat(map.size()).isEqualTo(1000);
+    assertThat(map.get(0x7f010000).name).isEqualTo("id0");
+    assertThat(map.get(0x7f010005).name).isEqualTo("replaced");
+    assertThat(map.get(0x7f0103e7).name).isEqualTo("id999");
+    assertThat(map.get(0x7f0103e8)).isNull();
+    assertThat(map.maxId()).isEqualTo(0x7f0103e7);
+  }
+
+  @Test
+  public void shouldKeepEntriesPutAfterFreezingApart() throws Exception {
+    IdToResNameMap map = new IdToResNameMap();
+    map.put(1, new ResName("pkg", "id", "one"));
+    map.freeze();
+    map.put(2, new ResName("pkg", "id", "two"));
+
+    assertThat(map.get(1).name).isEqualTo("one");
+    assertThat(map.get(2).name).isEqualTo("two");
+    assertThat(map.containsKey(3)).isFalse();
+    assertThat(map.size()).isEqualTo(2);
+    assertThat(map.maxId()).isEqualTo(2);
+
+    IdToResNameMap copy = new IdToResNameMap();
+    copy.putAll(map);
+    assertThat(copy.get(2).name).isEqualTo("two");
+    assertThat(new IdToResNameMap().maxId()).isEqualTo(0);
+  }
+}
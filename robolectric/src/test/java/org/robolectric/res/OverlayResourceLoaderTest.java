@@ -0,0 +1,46 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.*;
+
+public class OverlayResourceLoaderTest {
+  @Test
+  public void lazyLoader_shouldOnlyLoadResourcesThatAreLookedUp() {
+    PackageResourceLoader appLoader = new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), true);
+    PackageResourceLoader libLoader = new PackageResourceLoader(lib1Resources(), new ResourceExtractor(lib1Resources()), true);
+    OverlayResourceLoader overlayLoader = new OverlayResourceLoader(TEST_PACKAGE, Arrays.asList(appLoader, libLoader));
+
+    assertThat(overlayLoader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+    assertThat(appLoader.isInitialized).isFalse();
+    assertThat(libLoader.isInitialized).isFalse();
+    assertThat(appLoader.xmlDocuments.size()).isEqualTo(0);
+    assertThat(overlayLoader.data.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void lazyLoader_shouldFindTheSameValuesAsAnEagerOne() {
+    OverlayResourceLoader lazyLoader = createOverlayResourceLoader(true);
+    OverlayResourceLoader eagerLoader = createOverlayResourceLoader(false);
+
+    for (String name : Arrays.asList("in_all_libs", "only_in_lib1", "in_main_and_lib1", "hello")) {
+      ResName resName = new ResName(TEST_PACKAGE, "string", name);
+      assertThat(lazyLoader.getValue(resName, "").asString()).isEqualTo(eagerLoader.getValue(resName, "").asString());
+      assertThat(lazyLoader.getValue(resName, "").asString()).isEqualTo(eagerLoader.getValue(resName, "").asString());
+    }
+
+    ResName layoutResName = new ResName(TEST_PACKAGE, "layout", "different_screen_sizes");
+    assertThat(lazyLoader.getValue(layoutResName, "xlarge").asString()).isEqualTo(eagerLoader.getValue(layoutResName, "xlarge").asString());
+    assertThat(lazyLoader.getXml(layoutResName, "land")).isNotNull();
+    assertThat(lazyLoader.getValue(new ResName(TEST_PACKAGE, "string", "no_such_string"), "")).isNull();
+  }
+
+  private static OverlayResourceLoader createOverlayResourceLoader(boolean lazy) {
+    return new OverlayResourceLoader(TEST_PACKAGE, Arrays.asList(
+        new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), lazy),
+        new PackageResourceLoader(lib1Resources(), new ResourceExtractor(lib1Resources()), lazy)));
+  }
+}
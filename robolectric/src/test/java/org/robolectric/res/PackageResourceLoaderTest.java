@@ -1,6 +1,9 @@
 package org.robolectric.res;
 
 import org.junit.Test;
+
+import java.io.File;
+
 import static org.robolectric.util.TestUtil.*;
 import static org.assertj.core.api.Assertions.*;
 
@@ -53,4 +56,31 @@ public class PackageResourceLoaderTest {
     assertThat(value).describedAs("Item color from gradle output is not loaded").isNotNull();
     assertThat(value.asString()).isEqualTo("1.0");
   }
+
+  @Test
+  public void lazyLoader_shouldOnlyParseFilesForResourcesThatAreLookedUp() {
+    PackageResourceLoader loader = new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), true);
+
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+    assertThat(loader.xmlDocuments.size()).isEqualTo(0);
+
+    assertThat(loader.getXml(new ResName(TEST_PACKAGE, "layout", "different_screen_sizes"), "land")).isNotNull();
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "layout", "different_screen_sizes"), "xlarge").asString())
+        .endsWith("layout-xlarge" + File.separator + "different_screen_sizes.xml");
+    assertThat(loader.xmlDocuments.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void lazyLoader_shouldLoadEverythingElseWhenFullyInitialized() {
+    PackageResourceLoader loader = new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), true);
+    PackageResourceLoader eagerLoader = new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), false);
+
+    assertThat(loader.getMenuNode(new ResName(TEST_PACKAGE, "menu", "test"), "")).isNotNull();
+    loader.initialize();
+    eagerLoader.initialize();
+
+    assertThat(loader.xmlDocuments.size()).isEqualTo(eagerLoader.xmlDocuments.size());
+    assertThat(loader.menuData.size()).isEqualTo(eagerLoader.menuData.size());
+    assertThat(loader.data.size()).isEqualTo(eagerLoader.data.size());
+  }
 }
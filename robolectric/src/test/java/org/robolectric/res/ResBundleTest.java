@@ -3,6 +3,7 @@ package org.robolectric.res;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class ResBundleTest {
   @Test
@@ -17,6 +18,37 @@ public class ResBundleTest {
         "port-notouch-12key"), "en-GB-port-hdpi-notouch-12key").value);
   }
 
+  @Test
+  public void shouldMatchQualifiersAmongManyValues() throws Exception {
+    String[] qualifierses = new String[150];
+    qualifierses[0] = "";
+    for (int i = 1; i < qualifierses.length; i++) {
+      qualifierses[i] = "mcc" + i + (i % 2 == 0 ? "-land" : "-port");
+    }
+    assertEquals("mcc130-land", ResBundle.pick(asValues(qualifierses), "mcc130-land").value);
+    assertEquals("mcc131-port", ResBundle.pick(asValues(qualifierses), "mcc131-land").value);
+    assertEquals("mcc2-land", ResBundle.pick(asValues(qualifierses), "land").value);
+    assertEquals("", ResBundle.pick(asValues(qualifierses), "en").value);
+  }
+
+  @Test
+  public void getValueShouldSeeValuesPutAfterAnEarlierLookup() throws Exception {
+    ResBundle<String> resBundle = new ResBundle<String>();
+    ResName resName = new ResName("pkg", "string", "greeting");
+    assertNull(resBundle.get(resName, "fr-land"));
+
+    resBundle.put("string", "greeting", "hello", xmlContext("values"));
+    assertEquals("hello", resBundle.get(resName, "fr-land"));
+
+    resBundle.put("string", "greeting", "bonjour", xmlContext("values-fr"));
+    assertEquals("bonjour", resBundle.get(resName, "fr-land"));
+    assertEquals("hello", resBundle.get(resName, "en-land"));
+  }
+
+  private static XmlLoader.XmlContext xmlContext(String valuesDir) {
+    return new XmlLoader.XmlContext("pkg", Fs.fileFromPath("res/" + valuesDir + "/strings.xml"));
+  }
+
   private ResBundle.Values<String> asValues(String... qualifierses) {
     ResBundle.Values<String> values = new ResBundle.Values<String>();
     for (String qualifiers : qualifierses) {
@@ -0,0 +1,108 @@
+package org.robolectric.res;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.robolectric.util.TestUtil.TEST_PACKAGE;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class ResourceSnapshotTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File snapshotDir;
+
+  @Before
+  public void setUp() throws Exception {
+    snapshotDir = temporaryFolder.newFolder("resource-snapshots");
+    System.setProperty(ResourceSnapshot.DIR_PROPERTY, snapshotDir.getPath());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    System.clearProperty(ResourceSnapshot.DIR_PROPERTY);
+  }
+
+  @Test
+  public void shouldLoadTheSameValuesFromTheSnapshot() throws Exception {
+    PackageResourceLoader parsingLoader = new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), false);
+    parsingLoader.initialize();
+    assertThat(snapshotDir.list()).hasSize(1);
+
+    ResourceSnapshot snapshot = ResourceSnapshot.forValueFiles(TEST_PACKAGE, new DocumentLoader(testResources()).listFiles("values"));
+    ResBunch snapshotData = new ResBunch();
+    assertThat(snapshot.readTo(snapshotData, new ResBundle<PluralResourceLoader.PluralRules>())).isTrue();
+    assertThat(snapshotData.size()).isGreaterThan(0);
+
+    PackageResourceLoader snapshotLoader = new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), true);
+
+    assertThat(snapshotLoader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+    assertThat(snapshotLoader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "fr").asString()).isEqualTo("Bonjour");
+    TypedResource[] items = (TypedResource[]) snapshotLoader.getValue(new ResName(TEST_PACKAGE, "array", "items"), "").getData();
+    assertThat(items).hasSize(2);
+    assertThat(items[0].asString()).isEqualTo("foo");
+    assertThat(snapshotLoader.getPlural(new ResName(TEST_PACKAGE, "plurals", "beer"), 2, "").getString()).isEqualTo("Two beers");
+
+    AttrData attrData = (AttrData) snapshotLoader.getValue(new ResName(TEST_PACKAGE, "attr", "itemType"), "").getData();
+    AttrData parsedAttrData = (AttrData) parsingLoader.getValue(new ResName(TEST_PACKAGE, "attr", "itemType"), "").getData();
+    assertThat(attrData.toString()).isEqualTo(parsedAttrData.toString());
+    assertThat(attrData.getValueFor("ungulate")).isEqualTo("1");
+
+    StyleData styleData = (StyleData) snapshotLoader.getValue(new ResName(TEST_PACKAGE, "style", "Gastropod"), "").getData();
+    assertThat(styleData.getAttrValue(new ResName(TEST_PACKAGE, "attr", "aspectRatio")).value).isEqualTo("1.69");
+
+    snapshotLoader.initialize();
+    assertThat(snapshotLoader.data.size()).isEqualTo(parsingLoader.data.size());
+  }
+
+  @Test
+  public void shouldMissWhenValuesFilesChange() throws Exception {
+    List<FsFile> valueFiles = new DocumentLoader(testResources()).listFiles("values");
+    List<FsFile> fewerValueFiles = new ArrayList<FsFile>(valueFiles.subList(1, valueFiles.size()));
+
+    ResourceSnapshot snapshot = new ResourceSnapshot(snapshotDir, TEST_PACKAGE, valueFiles);
+    assertThat(new ResourceSnapshot(snapshotDir, TEST_PACKAGE, valueFiles).getFile()).isEqualTo(snapshot.getFile());
+    assertThat(new ResourceSnapshot(snapshotDir, TEST_PACKAGE, fewerValueFiles).getFile()).isNotEqualTo(snapshot.getFile());
+    assertThat(new ResourceSnapshot(snapshotDir, "other.package", valueFiles).getFile()).isNotEqualTo(snapshot.getFile());
+    assertThat(snapshot.readTo(new ResBunch(), new ResBundle<PluralResourceLoader.PluralRules>())).isFalse();
+  }
+
+  @Test
+  public void shouldReplaceACorruptSnapshot() throws Exception {
+    new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), false).initialize();
+    ResourceSnapshot snapshot = ResourceSnapshot.forValueFiles(TEST_PACKAGE, new DocumentLoader(testResources()).listFiles("values"));
+    long length = snapshot.getFile().length();
+    truncate(snapshot.getFile(), length / 2);
+
+    try {
+      snapshot.readTo(new ResBunch(), new ResBundle<PluralResourceLoader.PluralRules>());
+      fail("expected an IOException");
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains(snapshot.getFile().getName());
+    }
+
+    PackageResourceLoader loader = new PackageResourceLoader(testResources(), new ResourceExtractor(testResources()), false);
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+    assertThat(snapshot.getFile().length()).isEqualTo(length);
+    assertThat(snapshot.readTo(new ResBunch(), new ResBundle<PluralResourceLoader.PluralRules>())).isTrue();
+  }
+
+  private static void truncate(File file, long length) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(length);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+}
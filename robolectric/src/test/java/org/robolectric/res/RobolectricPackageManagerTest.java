@@ -285,6 +285,39 @@ public class RobolectricPackageManagerTest {
     assertThat(providers).isNull();
   }
 
+  @Test
+  @Config(manifest = "src/test/resources/TestAndroidManifestWithContentProviders.xml")
+  public void addManifest_shouldGiveEachPackageManagerItsOwnCopyOfThePackage() throws Exception {
+    ShadowApplication app = Robolectric.getShadowApplication();
+    RobolectricPackageManager otherRpm = new RobolectricPackageManager();
+    otherRpm.addManifest(app.getAppManifest(), app.getResourceLoader());
+    rpm.addManifest(app.getAppManifest(), app.getResourceLoader());
+
+    PackageInfo packageInfo = rpm.getPackageInfo(Robolectric.application.getPackageName(), PackageManager.GET_PROVIDERS);
+    PackageInfo otherPackageInfo = otherRpm.getPackageInfo(Robolectric.application.getPackageName(), PackageManager.GET_PROVIDERS);
+    assertThat(otherPackageInfo).isNotSameAs(packageInfo);
+    assertThat(otherPackageInfo.providers[0].authority).isEqualTo(packageInfo.providers[0].authority);
+
+    packageInfo.applicationInfo.flags = 0x1234;
+    packageInfo.providers[0].authority = "changed";
+    assertThat(otherPackageInfo.applicationInfo.flags).isNotEqualTo(0x1234);
+    assertThat(otherPackageInfo.providers[0].authority).isEqualTo("org.robolectric");
+  }
+
+  @Test
+  @Config(manifest = "src/test/resources/TestAndroidManifestWithAppMetaData.xml")
+  public void addManifest_shouldGiveEachPackageManagerItsOwnCopyOfTheMetaData() throws Exception {
+    ShadowApplication app = Robolectric.getShadowApplication();
+    RobolectricPackageManager otherRpm = new RobolectricPackageManager();
+    otherRpm.addManifest(app.getAppManifest(), app.getResourceLoader());
+    rpm.addManifest(app.getAppManifest(), app.getResourceLoader());
+
+    Bundle metaData = rpm.getApplicationInfo(Robolectric.application.getPackageName(), 0).metaData;
+    Bundle otherMetaData = otherRpm.getApplicationInfo(Robolectric.application.getPackageName(), 0).metaData;
+    metaData.putString("changed", "yes");
+    assertThat(otherMetaData.containsKey("changed")).isFalse();
+  }
+
   @Test
   @Config(manifest = "src/test/resources/TestAndroidManifestWithReceivers.xml")
   public void testReceiverInfo() throws Exception {
@@ -0,0 +1,136 @@
+package org.robolectric.res;
+
+import com.ximpleware.VTDGen;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class XmlBlockTest {
+  private static final String XML = "<?xml version=\"1.0\"?>\n" +
+      "<!-- comment -->\n" +
+      "<foo xmlns:bar=\"uri:bar\" z=\"1 &amp; 2\" bar:m=\"3\" a=\"x\ny\">\n" +
+      "  <bar:baz bar:q=\"q\">in<!-- comment -->side</bar:baz>\n" +
+      "  <![CDATA[cdata]]>tail\n" +
+      "</foo>";
+
+  @Test
+  public void shouldTokenizeElementsAttributesAndText() throws Exception {
+    XmlBlock xmlBlock = parse(XML);
+
+    int foo = xmlBlock.getRoot();
+    assertThat(xmlBlock.getName(foo)).isEqualTo("foo");
+    assertThat(xmlBlock.getNamespace(foo)).isNull();
+    assertThat(attributeNames(xmlBlock, foo)).containsExactly("a", "bar:m", "xmlns:bar", "z");
+    assertThat(xmlBlock.getAttributeValue(foo, 0)).isEqualTo("x y");
+    assertThat(xmlBlock.getAttributeNamespace(foo, 1)).isEqualTo("uri:bar");
+    assertThat(xmlBlock.getAttributeLocalName(foo, 1)).isEqualTo("m");
+    assertThat(xmlBlock.getAttributeValue(foo, 3)).isEqualTo("1 & 2");
+    assertThat(xmlBlock.findAttribute(foo, "uri:bar", "m")).isEqualTo(1);
+    assertThat(xmlBlock.findAttribute(foo, null, "m")).isEqualTo(XmlBlock.NONE);
+
+    int baz = xmlBlock.getFirstChild(foo);
+    assertThat(xmlBlock.getName(baz)).isEqualTo("bar:baz");
+    assertThat(xmlBlock.getNamespace(baz)).isEqualTo("uri:bar");
+    assertThat(xmlBlock.getParent(baz)).isEqualTo(foo);
+    assertThat(xmlBlock.getText(xmlBlock.getFirstChild(baz))).isEqualTo("inside");
+
+    int cdata = xmlBlock.getNextSibling(baz);
+    assertThat(xmlBlock.getNodeType(cdata)).isEqualTo(XmlBlock.CDATA);
+    assertThat(xmlBlock.getText(cdata)).isEqualTo("cdata");
+    assertThat(xmlBlock.getText(xmlBlock.getNextSibling(cdata)).trim()).isEqualTo("tail");
+    assertThat(xmlBlock.getText(foo).trim()).isEqualTo("insidecdatatail");
+  }
+
+  @Test
+  public void shouldMatchWhatADomHoldsForEveryResourceFile() throws Exception {
+    DocumentLoader documentLoader = new DocumentLoader(testResources());
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setIgnoringComments(true);
+
+    for (String folder : new String[] {"layout", "menu", "xml", "drawable", "anim", "color"}) {
+      for (FsFile file : documentLoader.listFiles(folder)) {
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(file.getBytes()));
+        assertThat(describe(XmlBlock.create(file))).as(file.getPath()).isEqualTo(describe(XmlBlock.create(document)));
+      }
+    }
+  }
+
+  @Test
+  public void shouldKeepWhitespaceFromCharacterReferencesInAttributes() throws Exception {
+    String xml = "<foo a=\"x&#10;y\" b=\"p&#9;q\" c=\"&#x41;&lt;&#x1F600;&apos;\" d=\"l\r\nm\"/>";
+    XmlBlock xmlBlock = parse(xml);
+
+    int foo = xmlBlock.getRoot();
+    assertThat(xmlBlock.getAttributeValue(foo, 0)).isEqualTo("x\ny");
+    assertThat(xmlBlock.getAttributeValue(foo, 1)).isEqualTo("p\tq");
+    assertThat(xmlBlock.getAttributeValue(foo, 2)).isEqualTo("A<\uD83D\uDE00'");
+    assertThat(xmlBlock.getAttributeValue(foo, 3)).isEqualTo("l m");
+
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    assertThat(describe(xmlBlock)).isEqualTo(describe(XmlBlock.create(document)));
+  }
+
+  @Test
+  public void shouldReplaceAttributeNamespaces() throws Exception {
+    XmlBlock xmlBlock = parse(XML);
+    XmlBlock replaced = xmlBlock.replaceAttributeNamespace("uri:bar", "uri:other");
+
+    assertThat(replaced.getAttributeNamespace(replaced.getRoot(), 1)).isEqualTo("uri:other");
+    assertThat(xmlBlock.getAttributeNamespace(xmlBlock.getRoot(), 1)).isEqualTo("uri:bar");
+    assertThat(xmlBlock.replaceAttributeNamespace("uri:none", "uri:other")).isSameAs(xmlBlock);
+  }
+
+  private static XmlBlock parse(String xml) throws Exception {
+    VTDGen vtdGen = new VTDGen();
+    vtdGen.setDoc(xml.getBytes("UTF-8"));
+    vtdGen.parse(true);
+    return XmlBlock.create(vtdGen.getNav());
+  }
+
+  private static List<String> attributeNames(XmlBlock xmlBlock, int node) {
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < xmlBlock.getAttributeCount(node); i++) {
+      names.add(xmlBlock.getAttributeName(node, i));
+    }
+    return names;
+  }
+
+  /**
+   * Describes elements, attributes and text, leaving out whitespace, which a DOM keeps but a block may not.
+   */
+  private static String describe(XmlBlock xmlBlock) {
+    StringBuilder buf = new StringBuilder();
+    describe(xmlBlock, xmlBlock.getRoot(), buf);
+    return buf.toString();
+  }
+
+  private static void describe(XmlBlock xmlBlock, int node, StringBuilder buf) {
+    if (xmlBlock.getNodeType(node) != XmlBlock.ELEMENT) {
+      String text = xmlBlock.getText(node).trim();
+      if (text.length() > 0) buf.append(xmlBlock.getNodeType(node)).append('[').append(text).append("]\n");
+      return;
+    }
+
+    buf.append('<').append(xmlBlock.getName(node)).append(' ').append(xmlBlock.getNamespace(node)).append('\n');
+    for (int i = 0; i < xmlBlock.getAttributeCount(node); i++) {
+      buf.append("  ").append(xmlBlock.getAttributeName(node, i))
+          .append(' ').append(xmlBlock.getAttributeLocalName(node, i))
+          .append(' ').append(xmlBlock.getAttributeNamespace(node, i))
+          .append('=').append(xmlBlock.getAttributeValue(node, i)).append('\n');
+    }
+    for (int child = xmlBlock.getFirstChild(node); child != XmlBlock.NONE; child = xmlBlock.getNextSibling(child)) {
+      describe(xmlBlock, child, buf);
+    }
+    buf.append(">\n");
+  }
+}
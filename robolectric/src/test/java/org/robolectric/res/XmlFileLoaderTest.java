@@ -21,6 +21,7 @@ import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -50,23 +51,24 @@ import static org.robolectric.util.TestUtil.testResources;
 public class XmlFileLoaderTest {
 
   public static final String XMLNS_NS = "http://www.w3.org/2000/xmlns/";
+  public static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
   private XmlFileLoader xmlFileLoader;
   private XmlFileBuilder xmlFileBuilder;
   private XmlResourceParserImpl parser;
-  private ResBundle<Document> resBundle;
+  private ResBundle<XmlBlock> resBundle;
   private ResourceIndex resourceIndex;
 
   @Before
   public void setUp() throws Exception {
-    resBundle = new ResBundle<Document>();
+    resBundle = new ResBundle<XmlBlock>();
     xmlFileLoader = new XmlFileLoader(resBundle, "xml");
     new DocumentLoader(testResources()).load("xml", xmlFileLoader);
     xmlFileBuilder = new XmlFileBuilder();
 
     ResName resName = new ResName(TEST_PACKAGE, "xml", "preferences");
-    Document document = resBundle.get(resName, "");
+    XmlBlock xmlBlock = resBundle.get(resName, "");
     resourceIndex = new MergedResourceIndex(new ResourceExtractor(testResources()), new ResourceExtractor());
-    parser = (XmlResourceParserImpl) xmlFileBuilder.getXml(document, resName.getFullyQualifiedName(), "packageName", resourceIndex);
+    parser = (XmlResourceParserImpl) xmlFileBuilder.getXml(xmlBlock, resName.getFullyQualifiedName(), "packageName", resourceIndex);
   }
 
   @After
@@ -731,4 +733,33 @@ public class XmlFileLoaderTest {
     assertThat(parser.getStyleAttribute()).isEqualTo(0);
   }
 
+  @Test
+  public void testGetXmlResourceParser_shouldResolveTheSameValuesEachTime() throws Exception {
+    String file = testResources().resourceBase.join("layout", "styles_button_with_style_layout.xml").getPath();
+    for (int i = 0; i < 2; i++) {
+      XmlResourceParser layoutParser = XmlFileBuilder.getXmlResourceParser(file, TEST_PACKAGE, resourceIndex);
+      while (layoutParser.next() != XmlResourceParser.START_TAG) ;
+
+      assertThat(layoutParser.getName()).isEqualTo("Button");
+      assertThat(layoutParser.getAttributeValue(ANDROID_NS, "id")).isEqualTo("@" + TEST_PACKAGE + ":id/button");
+      assertThat(layoutParser.getAttributeResourceValue(ANDROID_NS, "id", 0)).isEqualTo(R.id.button);
+      assertThat(layoutParser.getStyleAttribute()).isEqualTo(R.style.Sized);
+      layoutParser.close();
+    }
+  }
+
+  @Test
+  public void testGetXmlResourceParser_shouldNotKeepTheResourceIndexAlive() throws Exception {
+    String file = testResources().resourceBase.join("layout", "styles_button_with_style_layout.xml").getPath();
+    ResourceIndex otherResourceIndex = new MergedResourceIndex(new ResourceExtractor(testResources()), new ResourceExtractor());
+    XmlFileBuilder.getXmlResourceParser(file, TEST_PACKAGE, otherResourceIndex).close();
+
+    WeakReference<ResourceIndex> otherResourceIndexRef = new WeakReference<ResourceIndex>(otherResourceIndex);
+    otherResourceIndex = null;
+    for (int i = 0; i < 10 && otherResourceIndexRef.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertThat(otherResourceIndexRef.get()).isNull();
+  }
 }
@@ -1,13 +1,19 @@
 package org.robolectric.shadows;
 
+import android.database.Cursor;
 import android.database.CursorWindow;
 import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.TestRunners;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 @RunWith(TestRunners.WithDefaults.class)
 public class CursorWindowTest {
@@ -38,4 +44,69 @@ public class CursorWindowTest {
     assertThat(window.getInt(1, 0)).isEqualTo(34);
     assertThat(window.getFloat(1, 2)).isEqualTo(1.2f);
   }
+
+  @Test
+  public void shouldConvertBetweenTypes() throws Exception {
+    CursorWindow window = new CursorWindow("name");
+    MatrixCursor testCursor = new MatrixCursor(new String[] { "a", "b", "c", "d"});
+    testCursor.addRow(new Object[] { 12, "12.5", null, new byte[] {1, 2} });
+
+    DatabaseUtils.cursorFillWindow(testCursor, 0, window);
+
+    assertThat(window.getType(0, 0)).isEqualTo(Cursor.FIELD_TYPE_INTEGER);
+    assertThat(window.getString(0, 0)).isEqualTo("12");
+    assertThat(window.getDouble(0, 0)).isEqualTo(12.0);
+    assertThat(window.getLong(0, 1)).isEqualTo(12L);
+    assertThat(window.getDouble(0, 1)).isEqualTo(12.5);
+    assertThat(window.getBlob(0, 1)).isEqualTo("12.5".getBytes());
+    assertThat(window.getLong(0, 2)).isEqualTo(0L);
+    assertThat(window.isNull(0, 2)).isTrue();
+
+    try {
+      window.getLong(0, 3);
+      fail("expected exception");
+    } catch (SQLiteException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void shouldPageThroughQueriesThatDoNotFitInOneWindow() throws Exception {
+    SQLiteDatabase database = SQLiteDatabase.create(null);
+    try {
+      database.execSQL("CREATE TABLE rows (id INTEGER PRIMARY KEY, value TEXT);");
+      String padding = new String(new char[1024]).replace('\0', 'x');
+      database.beginTransaction();
+      try {
+        SQLiteStatement insert = database.compileStatement("INSERT INTO rows (id, value) VALUES (?, ?)");
+        for (int i = 0; i < 4000; i++) {
+          insert.bindLong(1, i);
+          insert.bindString(2, i + padding);
+          insert.executeInsert();
+        }
+        database.setTransactionSuccessful();
+      } finally {
+        database.endTransaction();
+      }
+
+      SQLiteCursor cursor = (SQLiteCursor) database.rawQuery("SELECT id, value FROM rows ORDER BY id", null);
+      try {
+        assertThat(cursor.getCount()).isEqualTo(4000);
+        assertThat(cursor.getWindow().getNumRows()).isLessThan(4000);
+
+        assertThat(cursor.moveToPosition(3999)).isTrue();
+        assertThat(cursor.getLong(0)).isEqualTo(3999L);
+        assertThat(cursor.getString(1)).isEqualTo(3999 + padding);
+        assertThat(cursor.getWindow().getStartPosition()).isGreaterThan(0);
+
+        assertThat(cursor.moveToPosition(1)).isTrue();
+        assertThat(cursor.getLong(0)).isEqualTo(1L);
+        assertThat(cursor.getString(1)).isEqualTo(1 + padding);
+      } finally {
+        cursor.close();
+      }
+    } finally {
+      database.close();
+    }
+  }
 }
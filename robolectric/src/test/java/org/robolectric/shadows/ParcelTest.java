@@ -514,4 +514,77 @@ public class ParcelTest {
     assertThat(parcel2.readFloat()).isEqualTo(1.25f);
     assertThat(parcel2.readByte()).isEqualTo((byte) 0xAF);
   }
+
+  @Test
+  public void testDataPositionAfterStringsAndByteArrays() {
+    parcel.writeString("hello");
+    assertThat(parcel.dataPosition()).isEqualTo(16);
+
+    parcel.writeString(null);
+    assertThat(parcel.dataPosition()).isEqualTo(20);
+
+    parcel.writeByteArray(new byte[] {1, 2, 3, 4, 5});
+    assertThat(parcel.dataPosition()).isEqualTo(32);
+  }
+
+  @Test
+  public void testWriteByteArrayWithOffsetAndLength() {
+    parcel.writeByteArray(new byte[] {1, 2, 3, 4, 5}, 1, 3);
+    parcel.writeInt(42);
+    parcel.setDataPosition(0);
+
+    assertTrue(Arrays.equals(new byte[] {2, 3, 4}, parcel.createByteArray()));
+    assertThat(parcel.readInt()).isEqualTo(42);
+  }
+
+  @Test
+  public void testOverwriteAtEarlierPosition() {
+    parcel.writeInt(0);
+    parcel.writeString("payload");
+    int end = parcel.dataPosition();
+    parcel.setDataPosition(0);
+    parcel.writeInt(end);
+    parcel.setDataPosition(end);
+    parcel.writeInt(7);
+
+    parcel.setDataPosition(0);
+    assertThat(parcel.readInt()).isEqualTo(end);
+    assertThat(parcel.readString()).isEqualTo("payload");
+    assertThat(parcel.readInt()).isEqualTo(7);
+    assertThat(parcel.dataSize()).isEqualTo(end + 4);
+  }
+
+  @Test
+  public void testSetDataPositionInLargeParcel() {
+    for (int i = 0; i < 10000; i++) {
+      parcel.writeInt(i);
+      parcel.writeLong(i);
+    }
+    assertThat(parcel.dataSize()).isEqualTo(120000);
+
+    parcel.setDataPosition(12 * 5000);
+    assertThat(parcel.readInt()).isEqualTo(5000);
+    assertThat(parcel.readLong()).isEqualTo(5000L);
+  }
+
+  @Test
+  public void testSetDataSizeTruncates() {
+    parcel.writeInt(1);
+    parcel.writeInt(2);
+    parcel.setDataSize(4);
+
+    assertThat(parcel.dataSize()).isEqualTo(4);
+    assertThat(parcel.dataPosition()).isEqualTo(4);
+    parcel.setDataPosition(0);
+    assertThat(parcel.readInt()).isEqualTo(1);
+    assertThat(parcel.readInt()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMarshallReturnsDataSizeBytes() {
+    parcel.writeInt(1);
+    parcel.writeString("hi");
+
+    assertThat(parcel.marshall().length).isEqualTo(parcel.dataSize());
+  }
 }
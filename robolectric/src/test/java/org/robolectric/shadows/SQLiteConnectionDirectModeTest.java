@@ -0,0 +1,147 @@
+package org.robolectric.shadows;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.TestRunners;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(TestRunners.WithDefaults.class)
+public class SQLiteConnectionDirectModeTest {
+  private SQLiteDatabase database;
+
+  @Before
+  public void setUp() throws Exception {
+    System.setProperty(ShadowSQLiteConnection.DIRECT_MODE_PROPERTY, "true");
+    database = SQLiteDatabase.create(null);
+    database.execSQL("CREATE TABLE person (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR, age INTEGER);");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    database.close();
+    System.clearProperty(ShadowSQLiteConnection.DIRECT_MODE_PROPERTY);
+  }
+
+  @Test
+  public void shouldInsertAndQueryOnTheCallingThread() throws Exception {
+    database.beginTransaction();
+    try {
+      SQLiteStatement insert = database.compileStatement("INSERT INTO person (name, age) VALUES (?, ?)");
+      for (int i = 0; i < 1000; i++) {
+        insert.bindString(1, "person" + i);
+        insert.bindLong(2, i);
+        assertThat(insert.executeInsert()).isEqualTo(i + 1L);
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+
+    Cursor cursor = database.rawQuery("SELECT name, age FROM person WHERE age >= ? ORDER BY age", new String[] {"990"});
+    try {
+      assertThat(cursor.getCount()).isEqualTo(10);
+      assertThat(cursor.moveToFirst()).isTrue();
+      assertThat(cursor.getString(0)).isEqualTo("person990");
+      assertThat(cursor.getInt(1)).isEqualTo(990);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Test
+  public void shouldUpdateAndDelete() throws Exception {
+    ContentValues values = new ContentValues();
+    values.put("name", "Chuck");
+    values.put("age", 70);
+    database.insert("person", null, values);
+
+    values.put("age", 71);
+    assertThat(database.update("person", values, "name = ?", new String[] {"Chuck"})).isEqualTo(1);
+    assertThat(database.compileStatement("SELECT age FROM person").simpleQueryForLong()).isEqualTo(71L);
+    assertThat(database.delete("person", null, null)).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldTranslateSqliteErrors() throws Exception {
+    try {
+      database.execSQL("INSERT INTO nowhere VALUES (1)");
+      fail("expected exception");
+    } catch (SQLiteException e) {
+      assertThat(e.getMessage()).contains("Cannot prepare statement");
+    }
+  }
+
+  @Test
+  public void shouldNotAllowUseFromAnotherThread() throws Exception {
+    final Throwable[] error = {null};
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          database.rawQuery("SELECT * FROM person", null).close();
+        } catch (Throwable e) {
+          error[0] = e;
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+
+    assertThat(error[0]).isInstanceOf(IllegalStateException.class);
+    assertThat(error[0].getMessage()).contains(ShadowSQLiteConnection.DIRECT_MODE_PROPERTY);
+  }
+
+  @Test
+  public void shouldCloseFromAnotherThreadOnceTheOwnerHasStopped() throws Exception {
+    final SQLiteDatabase[] opened = {null};
+    Thread owner = new Thread() {
+      @Override
+      public void run() {
+        opened[0] = SQLiteDatabase.create(null);
+        opened[0].execSQL("CREATE TABLE thing (id INTEGER PRIMARY KEY)");
+        opened[0].compileStatement("SELECT COUNT(*) FROM thing").simpleQueryForLong();
+      }
+    };
+    owner.start();
+    owner.join();
+
+    opened[0].close();
+    assertThat(opened[0].isOpen()).isFalse();
+  }
+
+  @Test
+  public void shouldCloseFromAnotherThreadWhileTheOwnerIsRunning() throws Exception {
+    SQLiteDatabase other = SQLiteDatabase.create(null);
+    other.execSQL("CREATE TABLE thing (id INTEGER PRIMARY KEY)");
+
+    final Throwable[] error = {null};
+    final SQLiteDatabase toClose = other;
+    Thread closer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          toClose.close();
+        } catch (Throwable e) {
+          error[0] = e;
+        }
+      }
+    };
+    closer.start();
+    closer.join();
+
+    assertThat(error[0]).isNull();
+    assertThat(other.isOpen()).isFalse();
+
+    // the owner disposes the orphaned connection when it opens the next one
+    SQLiteDatabase.create(null).close();
+  }
+}
@@ -134,6 +134,27 @@ public class ThemeTest {
         .isEqualTo("#ffff0000");
   }
 
+  @Test public void shouldReuseResolvedStylesForTheSameThemeAndQualifiers() throws Exception {
+    TestActivity activity = buildActivity(TestActivityWithAnotherTheme.class).create().get();
+    ResourceLoader resourceLoader = Shadows.shadowOf(activity.getResources()).getResourceLoader();
+    ResName themeName = new ResName(TestUtil.TEST_PACKAGE, "style", "Theme.AnotherTheme");
+    ResName styleName = new ResName(TestUtil.TEST_PACKAGE, "style", "IndirectButtonStyle");
+    Style theme = ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "");
+    Style style = ShadowAssetManager.resolveStyle(resourceLoader, theme, styleName, "");
+
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "")).isSameAs(theme);
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, theme, styleName, "")).isSameAs(style);
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, null, styleName, "")).isNotSameAs(style);
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, theme, styleName, "land")).isNotSameAs(style);
+
+    ResName background = new ResName("android", "attr", "background");
+    assertThat(style.getAttrValue(background).value).isEqualTo("#ffff0000");
+    assertThat(style.getAttrValue(background)).isSameAs(style.getAttrValue(background));
+
+    ShadowAssetManager.reset();
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "")).isNotSameAs(theme);
+  }
+
   public static class TestActivity extends Activity {
     @Override protected void onCreate(Bundle savedInstanceState) {
       super.onCreate(savedInstanceState);
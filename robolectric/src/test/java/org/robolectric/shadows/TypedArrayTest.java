@@ -56,6 +56,19 @@ public class TypedArrayTest {
     assertThat(typedArray.getInt(0, -1)).isEqualTo(0x33);
   }
 
+  @Test
+  public void shouldFillEachPositionFromItsOwnAttribute() throws Exception {
+    TypedArray typedArray = shadowOf(resources).createTypedArray(
+        asList(new Attribute("android:attr/gravity", "top|left", TestUtil.TEST_PACKAGE),
+            new Attribute("android:attr/id", "@+id/snippet_text", TestUtil.TEST_PACKAGE)),
+        new int[]{android.R.attr.id, android.R.attr.alpha, android.R.attr.gravity, android.R.attr.id});
+    assertThat(typedArray.getResourceId(0, -1)).isEqualTo(R.id.snippet_text);
+    assertThat(typedArray.hasValue(1)).isFalse();
+    assertThat(typedArray.getInt(2, -1)).isEqualTo(0x33);
+    assertThat(typedArray.getResourceId(3, -1)).isEqualTo(R.id.snippet_text);
+    assertThat(typedArray.getIndexCount()).isEqualTo(3);
+  }
+
   @Test
   public void getResourceId_shouldReturnDefaultValue() throws Exception {
     assertThat(context.obtainStyledAttributes(new int[]{android.R.attr.alpha}).getResourceId(0, -1)).isEqualTo(-1);
@@ -226,6 +226,52 @@ public class SchedulerTest {
     assertThat(runnablesThatWereRun).containsExactly(1, 2);
   }
 
+  @Test
+  public void postDelayed_shouldRunRunnablesPostedForTheSameTimeInPostingOrder() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      scheduler.postDelayed(new AddToTranscript("late" + i), 10);
+      scheduler.postDelayed(new AddToTranscript("early" + i), 5);
+    }
+
+    scheduler.advanceBy(10);
+
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 100; i++) expected.add("early" + i);
+    for (int i = 0; i < 100; i++) expected.add("late" + i);
+    transcript.assertEventsSoFar(expected.toArray(new String[expected.size()]));
+  }
+
+  @Test
+  public void postDelayed_shouldOrderDelaysThatDoNotFitInAnInt() throws Exception {
+    scheduler.postDelayed(new AddToTranscript("later"), 3L * Integer.MAX_VALUE);
+    scheduler.postDelayed(new AddToTranscript("sooner"), 1);
+
+    scheduler.runOneTask();
+    transcript.assertEventsSoFar("sooner");
+
+    scheduler.advanceToLastPostedRunnable();
+    transcript.assertEventsSoFar("later");
+    assertThat(scheduler.getCurrentTime()).isEqualTo(3L * Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void remove_shouldKeepTheOrderOfRemainingRunnables() throws Exception {
+    TestRunnable runnable = new TestRunnable();
+    scheduler.post(new AddToTranscript("one"));
+    scheduler.post(runnable);
+    scheduler.postDelayed(new AddToTranscript("two"), 10);
+    scheduler.postDelayed(runnable, 20);
+    scheduler.postAtFrontOfQueue(new AddToTranscript("zero"));
+
+    scheduler.remove(runnable);
+    assertThat(scheduler.size()).isEqualTo(3);
+
+    scheduler.advanceToLastPostedRunnable();
+    transcript.assertEventsSoFar("zero", "one", "two");
+    assertThat(runnable.wasRun).isFalse();
+    assertThat(scheduler.getCurrentTime()).isEqualTo(10);
+  }
+
   private class AddToTranscript implements Runnable {
     private String event;
 